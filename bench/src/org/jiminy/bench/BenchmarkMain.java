@@ -0,0 +1,31 @@
+package org.jiminy.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler switched on, so every result comes with its
+ * allocation rate (gc.alloc.rate.norm is bytes allocated per operation) as well as its
+ * throughput.  Any of the usual JMH command line options can be passed, e.g.
+ *
+ *    java -cp ... org.jiminy.bench.BenchmarkMain Evaluation -p numDecisionLists=1000
+ *
+ * The benchmark module is compiled separately from the engine: it needs src/ (or the
+ * jiminy jar), lib/jcuda-0.5.5.jar, jmh-core and, at compile time, the JMH annotation
+ * processor (jmh-generator-annprocess) on the classpath.
+ */
+public class BenchmarkMain {
+
+   public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+      Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+      new Runner(options).run();
+   }
+}
@@ -0,0 +1,61 @@
+package org.jiminy.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.jiminy.cuda.DecisionListKernel;
+import org.jiminy.cuda.WireFormat;
+import org.jiminy.domain.ResultMatrix;
+import org.jiminy.host.RuleProfile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Turning the per-node results the kernel returns back into one result per decision list.
+ * The node results are computed on the host in Workload, so this runs without a GPU.
+ * decodeFromListOffsets jumps from list to list with a table of offsets and packs the
+ * results into a ResultMatrix.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DecodingBenchmark {
+
+   @Benchmark
+   public ArrayList<Boolean> decodeResults(Workload workload) {
+      return DecisionListKernel.decodeResults(workload.decisionLists, workload.nodeResults);
+   }
+
+   @Benchmark
+   public boolean[] decodeBinaryResults(Workload workload) {
+      return WireFormat.decodeResults(workload.encodedLists, workload.nodeResults);
+   }
+
+   @State(Scope.Thread)
+   public static class ListOffsets {
+      public int[] listOffsets;
+      public ResultMatrix results;
+
+      @Setup(Level.Trial)
+      public void setup(Workload workload) {
+         listOffsets = RuleProfile.getListOffsets(workload.decisionLists);
+         results = new ResultMatrix(1, workload.decisionLists.size());
+      }
+   }
+
+   @Benchmark
+   public ResultMatrix decodeFromListOffsets(Workload workload, ListOffsets listOffsets) {
+      WireFormat.decodeResults(listOffsets.listOffsets, workload.nodeResults, listOffsets.results);
+      return listOffsets.results;
+   }
+}
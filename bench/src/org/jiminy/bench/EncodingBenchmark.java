@@ -0,0 +1,43 @@
+package org.jiminy.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.jiminy.cuda.WireFormat;
+import org.jiminy.domain.expression.DecisionListExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encoding every decision list in the workload for transmission to the GPU, in both of the
+ * text formats and the binary WireFormat.  One operation is one pass over all of the lists.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class EncodingBenchmark {
+
+   @Benchmark
+   public void encode(Workload workload, Blackhole blackhole) {
+      for (DecisionListExpression dl : workload.decisionLists)
+         blackhole.consume(dl.encode(workload.context));
+   }
+
+   @Benchmark
+   public void encode2(Workload workload, Blackhole blackhole) {
+      for (DecisionListExpression dl : workload.decisionLists)
+         blackhole.consume(dl.encode2(workload.context));
+   }
+
+   @Benchmark
+   public ByteBuffer encodeBinary(Workload workload) {
+      return WireFormat.encode(workload.decisionLists, workload.context);
+   }
+}
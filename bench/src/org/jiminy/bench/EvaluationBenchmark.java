@@ -0,0 +1,102 @@
+package org.jiminy.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.jiminy.cuda.CpuBackend;
+import org.jiminy.cuda.DecisionListKernel;
+import org.jiminy.cuda.StagingBufferPool;
+import org.jiminy.domain.expression.DecisionListExpression;
+import org.jiminy.host.IndexedInterpreter;
+import org.jiminy.host.Interpreter;
+import org.jiminy.host.ParallelEvaluator;
+import org.jiminy.host.SharedPredicateInterpreter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Host evaluation of every decision list in the workload: walking the expression trees
+ * (what JiminyProgram times as "Executing on host"), the compiled interpreter (plain, with
+ * shared predicates and with the per-variable predicate index), the parallel evaluator
+ * and the decision list kernel on the CPU backend, which includes encoding the lists and
+ * decoding the node results.  One operation is one pass over all of the lists.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class EvaluationBenchmark {
+
+   @State(Scope.Thread)
+   public static class Evaluators {
+      public Interpreter interpreter;
+      public SharedPredicateInterpreter sharedPredicateInterpreter;
+      public IndexedInterpreter indexedInterpreter;
+      public ParallelEvaluator parallelEvaluator;
+      public CpuBackend cpuBackend;
+      public StagingBufferPool stagingBuffers;
+      public boolean[] results;
+
+      @Setup(Level.Trial)
+      public void setup(Workload workload) {
+         interpreter = new Interpreter(workload.program);
+         interpreter.bind(workload.symbolTable);
+         sharedPredicateInterpreter = new SharedPredicateInterpreter(workload.program);
+         sharedPredicateInterpreter.bind(workload.symbolTable);
+         indexedInterpreter = new IndexedInterpreter(workload.program);
+         indexedInterpreter.bind(workload.symbolTable);
+         parallelEvaluator = new ParallelEvaluator(workload.program);
+         cpuBackend = new CpuBackend();
+         stagingBuffers = new StagingBufferPool();
+         results = new boolean[workload.program.getNumLists()];
+      }
+   }
+
+   @Benchmark
+   public void treeWalk(Workload workload, Blackhole blackhole) {
+      for (DecisionListExpression dl : workload.decisionLists)
+         blackhole.consume(dl.evaluate(workload.context));
+   }
+
+   @Benchmark
+   public boolean[] compiled(Evaluators evaluators) {
+      evaluators.interpreter.evaluateAll(evaluators.results);
+      return evaluators.results;
+   }
+
+   @Benchmark
+   public boolean[] sharedPredicates(Evaluators evaluators) {
+      evaluators.sharedPredicateInterpreter.evaluateAll(evaluators.results);
+      return evaluators.results;
+   }
+
+   @Benchmark
+   public boolean[] indexed(Evaluators evaluators) {
+      evaluators.indexedInterpreter.evaluateAll(evaluators.results);
+      return evaluators.results;
+   }
+
+   @Benchmark
+   public boolean[] parallel(Workload workload, Evaluators evaluators) {
+      evaluators.parallelEvaluator.evaluate(workload.symbolTable, evaluators.results);
+      return evaluators.results;
+   }
+
+   @Benchmark
+   public ArrayList<Boolean> cpuKernel(Workload workload, Evaluators evaluators) throws IOException {
+      DecisionListKernel kernel = new DecisionListKernel(workload.context, workload.decisionLists, evaluators.cpuBackend, evaluators.stagingBuffers);
+      kernel.executeKernel();
+      return kernel.getDecisionListResults();
+   }
+}
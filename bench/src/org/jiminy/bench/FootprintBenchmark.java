@@ -0,0 +1,61 @@
+package org.jiminy.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.jiminy.domain.expression.DecisionListExpression;
+import org.jiminy.host.CompiledRuleSet;
+import org.jiminy.host.RuleSetCompiler;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How much heap a rule set holds on to.  Each operation generates the workload's decision
+ * lists again and compiles them, and the growth in the live heap (after a full GC) is
+ * reported per node in the bytesPerNode and compiledBytesPerNode counters: the first for
+ * the expression trees, the second for the CompiledRuleSet.  The times are just the cost of
+ * generating and compiling.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+public class FootprintBenchmark {
+
+   @State(Scope.Thread)
+   @AuxCounters(AuxCounters.Type.EVENTS)
+   public static class Footprint {
+      public double bytesPerNode;
+      public double compiledBytesPerNode;
+   }
+
+   @Benchmark
+   public Object[] decisionLists(Workload workload, Footprint footprint) {
+      long start = getLiveHeap();
+      ArrayList<DecisionListExpression> decisionLists = workload.generator.generateDecisionLists(workload.symbolTable, workload.numDecisionLists);
+      long generated = getLiveHeap();
+      CompiledRuleSet program = RuleSetCompiler.compile(decisionLists, workload.symbolTable);
+      long compiled = getLiveHeap();
+
+      footprint.bytesPerNode = (double)(generated - start) / program.getNumNodes();
+      footprint.compiledBytesPerNode = (double)(compiled - generated) / program.getNumNodes();
+      return new Object[] { decisionLists, program };
+   }
+
+   private static long getLiveHeap() {
+      MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+      for (int i = 0; i < 3; i++)
+         memory.gc();
+      return memory.getHeapMemoryUsage().getUsed();
+   }
+}
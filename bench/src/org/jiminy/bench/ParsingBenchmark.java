@@ -0,0 +1,57 @@
+package org.jiminy.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.jiminy.domain.expression.DecisionListExpression;
+import org.jiminy.host.CompiledRuleSet;
+import org.jiminy.host.RuleSetParser;
+import org.jiminy.host.RuleSetWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading the workload's decision lists from the text RuleSetWriter writes: building the
+ * expressions, and compiling straight into a CompiledRuleSet.  One operation is one pass
+ * over the whole text.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ParsingBenchmark {
+
+   @State(Scope.Thread)
+   public static class RuleText {
+      public ByteBuffer text;
+
+      @Setup(Level.Trial)
+      public void setup(Workload workload) throws IOException {
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         RuleSetWriter.write(workload.decisionLists, out);
+         text = ByteBuffer.wrap(out.toByteArray());
+      }
+   }
+
+   @Benchmark
+   public ArrayList<DecisionListExpression> parse(RuleText ruleText) {
+      return new RuleSetParser(ruleText.text).parse();
+   }
+
+   @Benchmark
+   public CompiledRuleSet compile(Workload workload, RuleText ruleText) {
+      return new RuleSetParser(ruleText.text).compile(workload.symbolTable);
+   }
+}
@@ -0,0 +1,91 @@
+package org.jiminy.bench;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.jiminy.cuda.WireFormat;
+import org.jiminy.domain.DecisionListResult;
+import org.jiminy.domain.EvaluationContext;
+import org.jiminy.domain.SymbolTable;
+import org.jiminy.domain.Value;
+import org.jiminy.domain.expression.DecisionListExpression;
+import org.jiminy.host.CompiledRuleSet;
+import org.jiminy.host.RuleSetCompiler;
+import org.jiminy.host.WorkloadGenerator;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The data every benchmark runs against: a symbol table and a set of decision lists from
+ * WorkloadGenerator, sized and shaped by the parameters below.  The generator is seeded so
+ * every fork of every benchmark sees the same rule set.
+ */
+@State(Scope.Benchmark)
+public class Workload {
+   @Param({"100", "10000"})
+   public int numVariables;
+
+   @Param({"1000", "100000"})
+   public int numDecisionLists;
+
+   @Param({"3", "10"})
+   public int maxDLLength;
+
+   @Param({"0"})
+   public double variableSkew;
+
+   @Param({"0.25"})
+   public double matchProbability;
+
+   @Param({"42"})
+   public long seed;
+
+   public WorkloadGenerator generator;
+
+   public HashMap<String,Value> values;
+   public SymbolTable symbolTable;
+   public EvaluationContext context;
+   public ArrayList<DecisionListExpression> decisionLists;
+   public CompiledRuleSet program;
+   public int[] nodeResults;
+   public ByteBuffer encodedLists;
+
+   @Setup(Level.Trial)
+   public void setup() {
+      generator = new WorkloadGenerator(seed);
+      generator.setVariableSkew(variableSkew);
+      generator.setMatchProbability(matchProbability);
+      generator.setListLengths(1, maxDLLength, 1);
+      values = generator.generateValues(numVariables);
+      symbolTable = new SymbolTable(values);
+      decisionLists = generator.generateDecisionLists(symbolTable, numDecisionLists);
+
+      for (DecisionListExpression dl : decisionLists)
+         dl.bind(symbolTable);
+      context = new EvaluationContext(symbolTable);
+      program = RuleSetCompiler.compile(decisionLists, symbolTable);
+      nodeResults = computeNodeResults();
+      encodedLists = WireFormat.encode(decisionLists, context);
+   }
+
+   /**
+    * Works out on the host what the kernel would return for each node, so result decoding
+    * can be measured without a GPU.
+    */
+   private int[] computeNodeResults() {
+      int[] results = new int[program.getNumNodes()];
+      int index = 0;
+      for (DecisionListExpression dl : decisionLists) {
+         for (DecisionListExpression node = dl; node != null; node = node.getNextNode()) {
+            DecisionListResult result = DecisionListResult.IGNORE;
+            if (node.getCondition().evaluateBoolean(context))
+               result = node.getNodeTrueValue() ? DecisionListResult.TRUE : DecisionListResult.FALSE;
+            results[index++] = result.ordinal();
+         }
+      }
+      return results;
+   }
+}
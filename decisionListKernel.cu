@@ -13,6 +13,21 @@ typedef struct {
     int booleanValue;
 } Value;
 
+// One node of the binary encoding produced by WireFormat.java.  Operands hold ints directly,
+// floats as their raw bits, booleans as 0/1 and strings as an offset into the strings section.
+typedef struct {
+    unsigned char type;
+    unsigned char op;
+    unsigned char flags;
+    unsigned char unused;
+    int operand1;
+    int operand2;
+} EncodedNode;
+
+#define FLAG_TRUE       0x01
+#define FLAG_CONSTANT   0x02
+#define FLAG_LAST       0x04
+
 #define OFFSET_SAFETY_MAX 100
 
 __device__ int parseDecisionListNode(char *expression, DLNodeValue *value);
@@ -29,6 +44,9 @@ __device__ void evaluateIntegerComparison(int op1, Operator op, int op2, Value *
 __device__ void evaluateFloatComparison(float op1, Operator op, float op2, Value *value);
 __device__ void evaluateStringComparison(char *op1, Operator op, char *op2, Value *value);
 __device__ void evaluateBooleanComparison(int op1, Operator op, int op2, Value *value);
+__device__ int floatOrderKey(float f);
+__device__ DLNodeValue evaluateEncodedNode(EncodedNode *node, char *strings);
+__device__ void decodeOperand(int type, int operand, char *strings, Value *value);
 __device__ int dstrlen(char *str);
 __device__ int dstreql(char *str1, char *str2);
 
@@ -45,6 +63,62 @@ __global__ void processDecisionLists(int numExpressions, char **expressions, int
     }
 }
 
+extern "C"
+__global__ void processEncodedDecisionLists(int numNodes, EncodedNode *nodes, char *strings, int *output)
+{
+    const unsigned int idx = blockIdx.x * blockDim.x + threadIdx.x;
+    
+    if (idx < numNodes)
+        output[idx] = evaluateEncodedNode(&nodes[idx], strings);
+}
+
+/////////////////////////////////////////////////////////////////////
+// BINARY DECODING FUNCTIONS
+//
+// No parsing needed: every node is the same size and the operands are already binary.
+
+__device__ DLNodeValue evaluateEncodedNode(EncodedNode *node, char *strings) {
+    Value value;
+
+    if (node->flags & FLAG_CONSTANT) {
+        value.type = DT_BOOLEAN;
+        value.booleanValue = node->operand1;
+    } else {
+        Value operand1;
+        Value operand2;
+        decodeOperand(node->type, node->operand1, strings, &operand1);
+        decodeOperand(node->type, node->operand2, strings, &operand2);
+        evaluateBinaryExpression(&operand1, (Operator)node->op, &operand2, &value);
+    }
+
+    if (value.type != DT_BOOLEAN)
+        return DL_ERROR;
+    if (value.booleanValue == 0)
+        return DL_IGNORE;
+    return (node->flags & FLAG_TRUE) ? DL_TRUE : DL_FALSE;
+}
+
+__device__ void decodeOperand(int type, int operand, char *strings, Value *value) {
+    value->type = (DataType)type;
+    switch (type) {
+        case DT_INT:
+            value->intValue = operand;
+            break;
+        case DT_FLOAT:
+            value->floatValue = __int_as_float(operand);
+            break;
+        case DT_STRING:
+            value->stringValue = strings + operand;
+            break;
+        case DT_BOOLEAN:
+            value->booleanValue = operand;
+            break;
+        default:
+            value->type = DT_UNDEFINED;
+            break;
+    }
+}
+
 /////////////////////////////////////////////////////////////////////
 // PARSING FUNCTIONS
 //
@@ -363,6 +437,8 @@ __device__ void evaluateIntegerComparison(int op1, Operator op, int op2, Value *
     value->booleanValue = bv;
 }
 
+// Equality is IEEE (NaN != NaN, -0.0 == 0.0) but ordering follows Java's Float.compare(),
+// as the host does: see floatOrderKey()
 __device__ void evaluateFloatComparison(float op1, Operator op, float op2, Value *value) {
     value->type = DT_BOOLEAN;
     int bv = 0;  // assume comparison is false
@@ -371,16 +447,16 @@ __device__ void evaluateFloatComparison(float op1, Operator op, float op2, Value
             if (op1 == op2) bv = 1;
             break;
         case OP_GREATER_THAN:
-            if (op1 > op2) bv = 1;
+            if (floatOrderKey(op1) > floatOrderKey(op2)) bv = 1;
             break;
         case OP_GREATER_THAN_OR_EQUAL_TO:
-            if (op1 >= op2) bv = 1;
+            if (floatOrderKey(op1) >= floatOrderKey(op2)) bv = 1;
             break;
         case OP_LESS_THAN:
-            if (op1 < op2) bv = 1;
+            if (floatOrderKey(op1) < floatOrderKey(op2)) bv = 1;
             break;
         case OP_LESS_THAN_OR_EQUAL_TO:
-            if (op1 <= op2) bv = 1;
+            if (floatOrderKey(op1) <= floatOrderKey(op2)) bv = 1;
             break;
         case OP_LOGICAL_AND:
             bv = op1 && op2;
@@ -398,6 +474,14 @@ __device__ void evaluateFloatComparison(float op1, Operator op, float op2, Value
     value->booleanValue = bv;
 }
 
+// Maps a float to an int that orders the way Java's Float.compare() orders floats: every
+// NaN is equal and above everything else, and -0.0 is below 0.0.  Negative floats have
+// their magnitude bits flipped so that they order backwards as ints.
+__device__ int floatOrderKey(float f) {
+    int bits = isnan(f) ? 0x7fc00000 : __float_as_int(f);
+    return bits ^ (int)((unsigned int)(bits >> 31) >> 1);
+}
+
 __device__ void evaluateStringComparison(char *op1, Operator op, char *op2, Value *value) {
     // Because time is short, we'll have to skimp on the string comparisons
     // The greater than and less than operations require a lexical comparison,
@@ -427,13 +511,28 @@ __device__ void evaluateStringComparison(char *op1, Operator op, char *op2, Valu
     value->booleanValue = bv;
 }
 
+// As on the host, true is greater than false
 __device__ void evaluateBooleanComparison(int op1, Operator op, int op2, Value *value) {
     value->type = DT_BOOLEAN;
     int bv = 0;
+    op1 = (op1 != 0);
+    op2 = (op2 != 0);
     switch (op) {
         case OP_EQUAL_TO:
             if (op1 == op2) bv = 1;
             break;
+        case OP_GREATER_THAN:
+            if (op1 > op2) bv = 1;
+            break;
+        case OP_GREATER_THAN_OR_EQUAL_TO:
+            if (op1 >= op2) bv = 1;
+            break;
+        case OP_LESS_THAN:
+            if (op1 < op2) bv = 1;
+            break;
+        case OP_LESS_THAN_OR_EQUAL_TO:
+            if (op1 <= op2) bv = 1;
+            break;
         case OP_LOGICAL_AND:
             bv = op1 && op2;
             break;
@@ -444,10 +543,6 @@ __device__ void evaluateBooleanComparison(int op1, Operator op, int op2, Value *
             if (op1 != op2) bv = 1;
             break;
         default:
-        case OP_GREATER_THAN:
-        case OP_GREATER_THAN_OR_EQUAL_TO:
-        case OP_LESS_THAN:
-        case OP_LESS_THAN_OR_EQUAL_TO:
         case OP_UNDEFINED:
             break;
     }
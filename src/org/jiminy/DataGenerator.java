@@ -17,6 +17,13 @@ public class DataGenerator {
    
    static Random generator = new Random();
 
+   /**
+    * Reseeds the generator so that a run can be reproduced.
+    */
+   public static void setSeed(long seed) {
+      generator = new Random(seed);
+   }
+
    public static HashMap<String,Value> generateSymbolTable(int numVariables) {
       DataType[] types = DataType.values();
       
@@ -42,6 +49,11 @@ public class DataGenerator {
       
       // Get the set of operators
       Operator[] operators = Operator.values();
+
+      // Every list is bound to the same symbol table, and constants never change, so nodes
+      // that read the same variable or compare against the same constant share expressions
+      HashMap<String,VariableExpression> variables = new HashMap<String,VariableExpression>();
+      HashMap<String,ConstantExpression> constants = new HashMap<String,ConstantExpression>();
       
       // Create the specified number of expressions using the variables in the symbol table
       for (int i = 1; i <= numExpressions; i++) {
@@ -56,17 +68,19 @@ public class DataGenerator {
             // and a constant value.
             // Select a variable from the symbol table
             String varName = varNames[generator.nextInt(numVars)];
-            Expression operand1 = new VariableExpression(varName);
+            VariableExpression operand1 = variables.get(varName);
+            if (operand1 == null) {
+               operand1 = new VariableExpression(varName);
+               variables.put(varName, operand1);
+            }
             
             // Select a value to compare against.  For some percentage of the expressions, use 
             // the variable's actual value in the symbol table, for the rest generate a random value. 
             Value value = symbolTable.get(varName);
             DataType type = value.getType();
-            Expression operand2 = null;
-            if (generator.nextInt(10) < RANDOM_THRESHOLD)
-               operand2 = new ConstantExpression(value);
-            else
-               operand2 = new ConstantExpression(Value.generateRandomValue(generator, type));
+            if (generator.nextInt(10) >= RANDOM_THRESHOLD)
+               value = Value.generateRandomValue(generator, type);
+            Expression operand2 = getConstant(constants, value);
 
             // Select an operator from the enumeration of valid operators
             Operator operator = null;
@@ -91,7 +105,7 @@ public class DataGenerator {
          }
          
          // Add a default node to the end of the decision list
-         Expression defaultExpression = new ConstantExpression(new Value(true));
+         Expression defaultExpression = ConstantExpression.TRUE;
          boolean defaultValue = generator.nextBoolean();
          lastNode.setNextNode(new DecisionListExpression(defaultExpression, defaultValue));
 
@@ -102,6 +116,20 @@ public class DataGenerator {
       return decisionLists;
    }
 
+   /**
+    * Returns the constant expression for a value, shared with every other node that
+    * compares against an equal value.
+    */
+   private static ConstantExpression getConstant(HashMap<String,ConstantExpression> constants, Value value) {
+      String key = value.getType() + ":" + value.getStringValue();
+      ConstantExpression constant = constants.get(key);
+      if (constant == null) {
+         constant = ConstantExpression.valueOf(value);
+         constants.put(key, constant);
+      }
+      return constant;
+   }
+
    private static boolean isValidOperator(Operator operator, DataType type) {
       switch (type) {
          case BOOLEAN:
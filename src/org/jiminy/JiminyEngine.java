@@ -0,0 +1,111 @@
+package org.jiminy;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.jiminy.domain.RecordBatch;
+import org.jiminy.domain.ResultMatrix;
+import org.jiminy.domain.SymbolTable;
+import org.jiminy.domain.expression.DecisionListExpression;
+import org.jiminy.host.BatchEvaluator;
+import org.jiminy.host.CompiledRuleSet;
+import org.jiminy.host.Interpreter;
+import org.jiminy.host.RuleSetCompiler;
+
+/**
+ * A thread-safe front end for evaluating one rule set on behalf of many callers.  The rule
+ * set is compiled once and never changes afterwards; each request brings its own inputs
+ * (a copy of the symbol table, see newInputs(), or a RecordBatch) and gets its own
+ * evaluator, so requests share nothing mutable and can run concurrently.
+ *
+ * Asynchronous requests each run on their own virtual thread when the JVM supports them
+ * (Java 21 and later); on older JVMs they fall back to a cached thread pool.
+ */
+public class JiminyEngine {
+   private final SymbolTable layout;
+   private final CompiledRuleSet program;
+   private final ExecutorService executor;
+
+   public JiminyEngine(SymbolTable layout, ArrayList<DecisionListExpression> decisionLists) {
+      this(layout, RuleSetCompiler.compile(decisionLists, layout));
+   }
+
+   public JiminyEngine(SymbolTable layout, CompiledRuleSet program) {
+      program.checkLayout(layout);
+      this.layout = layout.copy();
+      this.program = program;
+      this.executor = createExecutor();
+   }
+
+   public CompiledRuleSet getProgram() {
+      return program;
+   }
+
+   /**
+    * Returns a private copy of the engine's symbol table for the caller to fill in with
+    * the inputs to a request.
+    */
+   public SymbolTable newInputs() {
+      return layout.copy();
+   }
+
+   /**
+    * Evaluates every list against the given inputs on the calling thread.  The inputs must
+    * not be modified until this returns.
+    */
+   public boolean[] evaluate(SymbolTable inputs) {
+      Interpreter interpreter = new Interpreter(program);
+      interpreter.bind(inputs);
+      boolean[] results = new boolean[program.getNumLists()];
+      interpreter.evaluateAll(results);
+      return results;
+   }
+
+   public ResultMatrix evaluate(RecordBatch batch) {
+      return new BatchEvaluator(program).evaluate(batch);
+   }
+
+   /**
+    * Queues a request.  The inputs must not be modified until the returned future completes.
+    */
+   public Future<boolean[]> submit(final SymbolTable inputs) {
+      return executor.submit(new Callable<boolean[]>() {
+         @Override
+         public boolean[] call() {
+            return evaluate(inputs);
+         }
+      });
+   }
+
+   public Future<ResultMatrix> submit(final RecordBatch batch) {
+      return executor.submit(new Callable<ResultMatrix>() {
+         @Override
+         public ResultMatrix call() {
+            return evaluate(batch);
+         }
+      });
+   }
+
+   /**
+    * Stops accepting requests.  Requests already submitted still run to completion.
+    */
+   public void shutdown() {
+      executor.shutdown();
+   }
+
+   private static ExecutorService createExecutor() {
+      // Virtual threads only exist from Java 21 on, so look the factory method up rather
+      // than linking against it
+      try {
+         Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+         return (ExecutorService)factory.invoke(null);
+      } catch (NoSuchMethodException e) {
+         return Executors.newCachedThreadPool();
+      } catch (Exception e) {
+         throw new JiminyException("Unable to create executor", e);
+      }
+   }
+}
@@ -3,34 +3,58 @@ package org.jiminy;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import org.jiminy.cuda.CpuBackend;
+import org.jiminy.cuda.CudaBackend;
 import org.jiminy.cuda.DecisionListKernel;
+import org.jiminy.cuda.KernelBackend;
+import org.jiminy.domain.EvaluationContext;
+import org.jiminy.domain.ResultMatrix;
+import org.jiminy.domain.SymbolTable;
 import org.jiminy.domain.Value;
 import org.jiminy.domain.expression.DecisionListExpression;
+import org.jiminy.host.CompiledRuleSet;
+import org.jiminy.host.Interpreter;
+import org.jiminy.host.ParallelEvaluator;
+import org.jiminy.host.RuleSetCompiler;
 
 public class JiminyProgram {
-   static JiminyProgram instance = null;
    private HashMap<String,Value> symbolTable = null;
+   private SymbolTable boundSymbolTable = null;
+   private EvaluationContext context = null;
    private ArrayList<DecisionListExpression> decisionLists = null;
-   private final int numVariables = 100;
-   private final int numDecisionLists = 1000;
-   private final int maxDLLength = 3;
+   private final int numVariables;
+   private final int numDecisionLists;
+   private final int maxDLLength;
+   private final KernelBackend backend;
    
-   private JiminyProgram() {}
+   public JiminyProgram() {
+      this(100, 1000, 3);
+   }
 
-   public static JiminyProgram createInstance() {
-      instance = new JiminyProgram();
-      return instance;
+   public JiminyProgram(int numVariables, int numDecisionLists, int maxDLLength) {
+      this(numVariables, numDecisionLists, maxDLLength, new CudaBackend());
    }
-   
-   public static JiminyProgram getInstance() {
-      if (instance == null)
-         createInstance();
-      return instance;
+
+   /**
+    * The backend runs the decision list kernel; a CpuBackend runs it without a GPU.
+    */
+   public JiminyProgram(int numVariables, int numDecisionLists, int maxDLLength, KernelBackend backend) {
+      this.numVariables = numVariables;
+      this.numDecisionLists = numDecisionLists;
+      this.maxDLLength = maxDLLength;
+      this.backend = backend;
    }
-   
+
    public HashMap<String,Value> getSymbolTable() {
       return symbolTable;
    }
+
+   /**
+    * Returns the slot-indexed symbol table the decision lists are bound to.
+    */
+   public SymbolTable getBoundSymbolTable() {
+      return boundSymbolTable;
+   }
    
    public void execute() throws JiminyException, IOException {
       System.out.println("Parameters: variables: " + numVariables + "; decision lists: " + numDecisionLists + "; max DL length: " + maxDLLength);
@@ -39,10 +63,16 @@ public class JiminyProgram {
       symbolTable = DataGenerator.generateSymbolTable(numVariables);
       decisionLists = DataGenerator.generateDecisionLists(symbolTable, numDecisionLists, maxDLLength);
 
-      System.out.println("Executing kernel...");
+      // Resolve variable names to slots once, up front
+      boundSymbolTable = new SymbolTable(symbolTable);
+      for (DecisionListExpression dl : decisionLists)
+         dl.bind(boundSymbolTable);
+      context = new EvaluationContext(boundSymbolTable);
+
+      System.out.println("Executing kernel on " + backend.getClass().getSimpleName() + "...");
       long start = System.nanoTime();
       
-      DecisionListKernel kernel = new DecisionListKernel(symbolTable, decisionLists);
+      DecisionListKernel kernel = new DecisionListKernel(context, decisionLists, backend);
       kernel.executeKernel();
       
       long stop = System.nanoTime();
@@ -51,16 +81,57 @@ public class JiminyProgram {
       System.out.println("Executing on host...");
       start = System.nanoTime();
       
-      for (DecisionListExpression dl : decisionLists)
-         dl.evaluate();
+      boolean[] hostResults = new boolean[decisionLists.size()];
+      for (int i = 0; i < decisionLists.size(); i++)
+         hostResults[i] = decisionLists.get(i).evaluate(context);
       
       stop = System.nanoTime();
       System.out.println("Host execution complete, time elapsed = " + (stop - start)/1000000 + " ms");
+
+      System.out.println("Compiling decision lists...");
+      CompiledRuleSet program = RuleSetCompiler.compile(decisionLists, boundSymbolTable);
+      Interpreter interpreter = new Interpreter(program);
+
+      System.out.println("Executing compiled program on host...");
+      start = System.nanoTime();
+
+      boolean[] compiledResults = new boolean[program.getNumLists()];
+      interpreter.bind(boundSymbolTable);
+      interpreter.evaluateAll(compiledResults);
+
+      stop = System.nanoTime();
+      System.out.println("Compiled host execution complete, time elapsed = " + (stop - start)/1000000 + " ms");
+
+      System.out.println("Executing compiled program on host in parallel...");
+      start = System.nanoTime();
+
+      boolean[] parallelResults = new boolean[program.getNumLists()];
+      new ParallelEvaluator(program).evaluate(boundSymbolTable, parallelResults);
+
+      stop = System.nanoTime();
+      System.out.println("Parallel host execution complete, time elapsed = " + (stop - start)/1000000 + " ms");
+
+      ResultMatrix kernelResults = kernel.getResultMatrix();
+      for (int i = 0; i < hostResults.length; i++) {
+         if (hostResults[i] != kernelResults.get(0, i))
+            throw new JiminyException("Kernel disagrees with host evaluation for decision list " + i);
+         if (hostResults[i] != compiledResults[i])
+            throw new JiminyException("Compiled program disagrees with host evaluation for decision list " + i);
+         if (hostResults[i] != parallelResults[i])
+            throw new JiminyException("Parallel evaluation disagrees with host evaluation for decision list " + i);
+      }
    }
    
    public static void main(String args[]) {
       try {
-         JiminyProgram program = JiminyProgram.createInstance();
+         // Optional arguments: <variables> <decision lists> <max DL length> [gpu|cpu]
+         JiminyProgram program = null;
+         if (args.length >= 4 && args[3].equalsIgnoreCase("cpu"))
+            program = new JiminyProgram(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), new CpuBackend());
+         else if (args.length >= 3)
+            program = new JiminyProgram(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+         else
+            program = new JiminyProgram();
          program.execute();
       } catch (Throwable e) {
          System.out.println("Error executing program: " + e.getMessage());
@@ -0,0 +1,90 @@
+package org.jiminy.cuda;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs kernels in Java instead of on a GPU.  Device memory is host memory, and each block
+ * of the grid becomes a fork/join task whose threads are run one after another by calling
+ * KernelEngine.executeThread().  As on a GPU, there's no ordering between threads, so a
+ * kernel must only write the output that belongs to its own thread.
+ */
+public class CpuBackend implements KernelBackend {
+   private final HostDeviceMemory deviceMemory = new HostDeviceMemory();
+   private final ForkJoinPool pool;
+
+   public CpuBackend() {
+      this(ForkJoinPool.commonPool());
+   }
+
+   public CpuBackend(ForkJoinPool pool) {
+      this.pool = pool;
+   }
+
+   @Override
+   public HostDeviceMemory getDeviceMemory() {
+      return deviceMemory;
+   }
+
+   @Override
+   public void execute(KernelEngine engine) {
+      launch(engine);
+   }
+
+   /**
+    * There's nothing to set up on this backend, so a session just launches.
+    */
+   @Override
+   public KernelSession open(KernelEngine engine) {
+      return new KernelSession() {
+         @Override
+         public void launch(KernelEngine engine) {
+            CpuBackend.this.launch(engine);
+         }
+
+         @Override
+         public void close() {}
+      };
+   }
+
+   private void launch(KernelEngine engine) {
+      try {
+         // Kernels read their parameters straight from device memory on this backend
+         engine.setupKernelParams();
+         pool.invoke(new BlockTask(engine, 0, engine.getNumBlocks(), engine.getThreadsPerBlock()));
+         engine.getResults();
+      } finally {
+         engine.cleanup();
+      }
+   }
+
+   private static class BlockTask extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+
+      private final KernelEngine engine;
+      private final int firstBlock;
+      private final int lastBlock;
+      private final int threadsPerBlock;
+
+      BlockTask(KernelEngine engine, int firstBlock, int lastBlock, int threadsPerBlock) {
+         this.engine = engine;
+         this.firstBlock = firstBlock;
+         this.lastBlock = lastBlock;
+         this.threadsPerBlock = threadsPerBlock;
+      }
+
+      @Override
+      protected void compute() {
+         if (lastBlock - firstBlock > 1) {
+            int middle = (firstBlock + lastBlock) >>> 1;
+            invokeAll(new BlockTask(engine, firstBlock, middle, threadsPerBlock),
+                      new BlockTask(engine, middle, lastBlock, threadsPerBlock));
+            return;
+         }
+         for (int block = firstBlock; block < lastBlock; block++) {
+            for (int thread = 0; thread < threadsPerBlock; thread++)
+               engine.executeThread(block, threadsPerBlock, thread);
+         }
+      }
+   }
+}
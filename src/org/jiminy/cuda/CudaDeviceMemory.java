@@ -0,0 +1,73 @@
+package org.jiminy.cuda;
+
+import java.nio.ByteBuffer;
+import org.jiminy.JiminyException;
+import jcuda.Pointer;
+import jcuda.driver.CUdeviceptr;
+import jcuda.driver.JCudaDriver;
+
+/**
+ * Device memory on the GPU through the JCuda driver API.  Needs a current CUDA context:
+ * CudaBackend creates one when it opens a session, and the session makes it current on the
+ * launching thread before calling setupKernelParams().
+ */
+public class CudaDeviceMemory implements DeviceMemory {
+
+   @Override
+   public DeviceBuffer allocate(long size) {
+      CUdeviceptr pointer = new CUdeviceptr();
+      JCudaDriver.cuMemAlloc(pointer, size);
+      return new CudaBuffer(pointer, size);
+   }
+
+   @Override
+   public void copyToDevice(DeviceBuffer buffer, long offset, ByteBuffer source) {
+      CudaBuffer cudaBuffer = check(buffer, offset, source.remaining());
+      JCudaDriver.cuMemcpyHtoD(cudaBuffer.pointer.withByteOffset(offset), Pointer.to(source.slice()), source.remaining());
+   }
+
+   @Override
+   public void copyFromDevice(DeviceBuffer buffer, long offset, ByteBuffer destination) {
+      CudaBuffer cudaBuffer = check(buffer, offset, destination.remaining());
+      JCudaDriver.cuMemcpyDtoH(Pointer.to(destination.slice()), cudaBuffer.pointer.withByteOffset(offset), destination.remaining());
+   }
+
+   @Override
+   public void free(DeviceBuffer buffer) {
+      CudaBuffer cudaBuffer = check(buffer, 0, 0);
+      JCudaDriver.cuMemFree(cudaBuffer.pointer);
+      cudaBuffer.freed = true;
+   }
+
+   private static CudaBuffer check(DeviceBuffer buffer, long offset, long length) {
+      if (!(buffer instanceof CudaBuffer))
+         throw new JiminyException("Not a CUDA device buffer: " + buffer);
+      CudaBuffer cudaBuffer = (CudaBuffer)buffer;
+      if (cudaBuffer.freed)
+         throw new JiminyException("Device buffer has been freed");
+      if (offset < 0 || length < 0 || offset + length > cudaBuffer.size)
+         throw new JiminyException("Access of " + length + " bytes at " + offset + " is outside device buffer of " + cudaBuffer.size + " bytes");
+      return cudaBuffer;
+   }
+
+   private static class CudaBuffer implements DeviceBuffer {
+      private CUdeviceptr pointer;
+      private long size;
+      private boolean freed = false;
+
+      public CudaBuffer(CUdeviceptr pointer, long size) {
+         this.pointer = pointer;
+         this.size = size;
+      }
+
+      @Override
+      public long getSize() {
+         return size;
+      }
+
+      @Override
+      public Pointer getPointer(long offset) {
+         return pointer.withByteOffset(offset);
+      }
+   }
+}
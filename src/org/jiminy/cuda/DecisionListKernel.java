@@ -1,38 +1,111 @@
 package org.jiminy.cuda;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
 import org.jiminy.JiminyException;
 import org.jiminy.domain.DecisionListResult;
-import org.jiminy.domain.Value;
+import org.jiminy.domain.EvaluationContext;
+import org.jiminy.domain.RecordBatch;
+import org.jiminy.domain.ResultMatrix;
 import org.jiminy.domain.expression.DecisionListExpression;
+import org.jiminy.host.RuleProfile;
 import jcuda.Pointer;
 import jcuda.Sizeof;
-import jcuda.driver.CUdeviceptr;
-import jcuda.driver.JCudaDriver;
 
 /**
  * This is the Java side of the call to the kernel code on the GPU
  * that evaluates the decision lists.
+ *
+ * The encoding and the node results are staged in buffers from a StagingBufferPool; a
+ * kernel can be executed again and again, and several kernels can share a pool, without
+ * allocating new staging buffers once the pool has seen the biggest batch.
  */
 public class DecisionListKernel extends KernelEngine {
-   private HashMap<String,Value> symbolTable;
+   private EvaluationContext context;
+   private RecordBatch batch = null;
    private ArrayList<DecisionListExpression> decisionLists;
-   private ArrayList<Boolean> decisionListResults = new ArrayList<Boolean>();
-   private CUdeviceptr dSymbolTable = null;
-   private CUdeviceptr dExpressionPointers = null;
-   private CUdeviceptr[] dExpressions = null;
-   private CUdeviceptr dResults = null;
+   private final StagingBufferPool stagingBuffers;
+   private final int[] listOffsets;
+   private ResultMatrix resultMatrix = null;
+   private boolean recordDecidingNodes = false;
+   private ArrayList<Boolean> decisionListResults = null;
+   private ByteBuffer encodedLists = null;
+   private PackedLayout layout = null;
+   private int encodedListsRegion;
+   private int resultsRegion;
+   private DeviceBuffer dBuffer = null;
+   private boolean retainDeviceMemory = false;
+   private boolean verbose = true;
+   private RuleProfile profile = null;
+   private ByteBuffer hostEncodedLists = null;
+   private ByteBuffer hostResults = null;
    private int numExpressions = 0;
    
-   public DecisionListKernel(HashMap<String,Value> symbolTable, ArrayList<DecisionListExpression> decisionLists) {
-      this.symbolTable = symbolTable;
+   public DecisionListKernel(EvaluationContext context, ArrayList<DecisionListExpression> decisionLists) {
+      this(context, decisionLists, new CudaBackend(), new StagingBufferPool());
+   }
+
+   public DecisionListKernel(EvaluationContext context, ArrayList<DecisionListExpression> decisionLists, KernelBackend backend) {
+      this(context, decisionLists, backend, new StagingBufferPool());
+   }
+
+   public DecisionListKernel(EvaluationContext context, ArrayList<DecisionListExpression> decisionLists, KernelBackend backend, StagingBufferPool stagingBuffers) {
+      super(backend);
+      this.context = context;
       this.decisionLists = decisionLists;
+      this.stagingBuffers = stagingBuffers;
+      this.listOffsets = RuleProfile.getListOffsets(decisionLists);
+   }
+
+   /**
+    * Evaluates the lists against the values in the context on the next execution.
+    */
+   public void setInputs(EvaluationContext context) {
+      this.context = context;
+      this.batch = null;
+   }
+
+   /**
+    * Evaluates the lists against every record of the batch on the next execution, in a
+    * single launch.  getResultMatrix().get(r, l) is list l's result for record r.
+    */
+   public void setInputs(RecordBatch batch) {
+      this.batch = batch;
+   }
+
+   /**
+    * Turns the progress messages on each execution on or off.
+    */
+   public void setVerbose(boolean verbose) {
+      this.verbose = verbose;
+   }
+
+   /**
+    * Records which node decides each list in getResults() from now on, or stops recording
+    * if profile is null.  The profile must be for this kernel's decision lists.
+    */
+   public void setProfile(RuleProfile profile) {
+      this.profile = profile;
+   }
+
+   /**
+    * Records the node that decides each list in getResultMatrix() from now on.
+    */
+   public void setRecordDecidingNodes(boolean recordDecidingNodes) {
+      this.recordDecidingNodes = recordDecidingNodes;
+   }
+
+   /**
+    * Keeps the device allocation between executions (growing it when an execution needs
+    * more) instead of freeing it in cleanup().  release() frees it.
+    */
+   public void setRetainDeviceMemory(boolean retainDeviceMemory) {
+      this.retainDeviceMemory = retainDeviceMemory;
    }
    
    @Override
    public int getNumBlocks() {
-      return (int)Math.ceil((float)numExpressions/512);
+      return (numExpressions + 511) / 512;
    }
 
    @Override
@@ -47,65 +120,155 @@ public class DecisionListKernel extends KernelEngine {
 
    @Override
    public String getKernelFunctionName() {
-      return "processDecisionLists";
+      return "processEncodedDecisionLists";
    }
 
    @Override
    public Pointer setupKernelParams() {
-      System.out.println("Encoding data...");
+      if (verbose)
+         System.out.println("Encoding data...");
       
-      // Encode the expressions for transmission to the GPU
-      ArrayList<String> encodedExpressions = new ArrayList<String>();
-      for (DecisionListExpression dl : decisionLists)
-         encodedExpressions.addAll(dl.encode2());
-
-      numExpressions = encodedExpressions.size();
+      // Encode the expressions for transmission to the GPU.  See WireFormat for the layout.
+      stagingBuffers.release(encodedLists);
+      if (batch != null)
+         encodedLists = WireFormat.encode(decisionLists, batch, stagingBuffers);
+      else
+         encodedLists = WireFormat.encode(decisionLists, context, stagingBuffers);
+      numExpressions = WireFormat.getNumNodes(encodedLists);
+      int size = WireFormat.getSize(encodedLists);
       
-      System.out.println("Copying data to device...");
-
-      // Allocate device memory for the string for each expression
-      dExpressions = new CUdeviceptr[numExpressions];
-      for (int i = 0; i < numExpressions; i++) {
-         byte[] expr = encodedExpressions.get(i).getBytes();
-         dExpressions[i] = new CUdeviceptr();
-         JCudaDriver.cuMemAlloc(dExpressions[i], (expr.length + 1) * Sizeof.BYTE);
-         JCudaDriver.cuMemsetD8(dExpressions[i], (byte)0, (expr.length + 1));
-         JCudaDriver.cuMemcpyHtoD(dExpressions[i], Pointer.to(expr), expr.length * Sizeof.BYTE);
-      }
-      
-      // We also have to allocate device memory for the *pointers* to the strings
-      dExpressionPointers = new CUdeviceptr();
-      JCudaDriver.cuMemAlloc(dExpressionPointers, numExpressions * Sizeof.POINTER);
-      JCudaDriver.cuMemcpyHtoD(dExpressionPointers, Pointer.to(dExpressions), numExpressions * Sizeof.POINTER);
-
-      // Allocate the output memory on the device
-      dResults = new CUdeviceptr();
-      JCudaDriver.cuMemAlloc(dResults, numExpressions * Sizeof.INT);
+      if (verbose)
+         System.out.println("Copying data to device...");
+
+      // The encoding and the output share one allocation, and the encoding goes over in one piece
+      layout = new PackedLayout();
+      encodedListsRegion = layout.add(size);
+      resultsRegion = layout.add((long)numExpressions * Sizeof.INT);
+      DeviceMemory deviceMemory = getDeviceMemory();
+      if (dBuffer != null && dBuffer.getSize() < layout.getSize())
+         freeDeviceMemory();
+      if (dBuffer == null)
+         dBuffer = deviceMemory.allocate(layout.getSize());
+      deviceMemory.copyToDevice(dBuffer, layout.getOffset(encodedListsRegion), encodedLists);
       
       // Wrap values in "Pointers"
+      long encodedListsOffset = layout.getOffset(encodedListsRegion);
       Pointer kernelParams = Pointer.to(
             Pointer.to(new int[]{numExpressions}),
-            Pointer.to(dExpressionPointers),
-            Pointer.to(dResults));
+            Pointer.to(dBuffer.getPointer(encodedListsOffset + WireFormat.HEADER_SIZE)),
+            Pointer.to(dBuffer.getPointer(encodedListsOffset + WireFormat.getStringsOffset(encodedLists))),
+            Pointer.to(dBuffer.getPointer(layout.getOffset(resultsRegion))));
+
+      // On the CPU backend executeThread() works directly on the "device" memory
+      if (deviceMemory instanceof HostDeviceMemory) {
+         HostDeviceMemory hostMemory = (HostDeviceMemory)deviceMemory;
+         hostEncodedLists = hostMemory.getBuffer(dBuffer, encodedListsOffset, size);
+         hostResults = hostMemory.getBuffer(dBuffer, layout.getOffset(resultsRegion), layout.getSize(resultsRegion));
+      }
 
       return kernelParams;
    }
 
+   /**
+    * processEncodedDecisionLists() for one thread: evaluates the thread's node and stores
+    * the DecisionListResult ordinal in the results.
+    */
+   @Override
+   public void executeThread(int blockIdx, int blockDim, int threadIdx) {
+      int node = blockIdx * blockDim + threadIdx;
+      if (node < numExpressions)
+         hostResults.putInt(node * Sizeof.INT, WireFormat.evaluateNode(hostEncodedLists, node));
+   }
+
    @Override
    public void getResults() {
-      System.out.println("Copying results from device...");
-      int[] hExpressionResults = new int[numExpressions];
-      JCudaDriver.cuMemcpyDtoH(Pointer.to(hExpressionResults), dResults, numExpressions * Sizeof.INT);
-      
-      // When we sent the data to the GPU, we separated each decision list into its component
-      // expressions and sent them separately.  Now we have to recombine the results into their
-      // owning decision list.  This is easy because both the decision lists and results are ordered.
+      if (verbose)
+         System.out.println("Copying results from device...");
+      ByteBuffer hResults = stagingBuffers.acquire(numExpressions * Sizeof.INT); // fits: WireFormat caps the nodes at MAX_NODES
+      try {
+         getDeviceMemory().copyFromDevice(dBuffer, layout.getOffset(resultsRegion), hResults);
+
+         // Every record's lists start at the same offsets, so we don't need to walk the lists
+         int numRecords = (batch != null) ? batch.getNumRecords() : 1;
+         int numLists = decisionLists.size();
+         if (resultMatrix == null || resultMatrix.getNumRecords() != numRecords || resultMatrix.hasDecidingNodes() != recordDecidingNodes)
+            resultMatrix = new ResultMatrix(numRecords, numLists, recordDecidingNodes);
+         WireFormat.decodeResults(listOffsets, hResults, resultMatrix, profile);
+         decisionListResults = null;
+      } finally {
+         stagingBuffers.release(hResults);
+      }
+   }
+
+   /**
+    * Returns the results of the last execution record by record: list l of record r is at
+    * r * (number of lists) + l.  The list is only built when asked for.
+    */
+   public ArrayList<Boolean> getDecisionListResults() {
+      if (decisionListResults == null) {
+         int numRecords = resultMatrix.getNumRecords();
+         int numLists = resultMatrix.getNumLists();
+         decisionListResults = new ArrayList<Boolean>(numRecords * numLists);
+         for (int record = 0; record < numRecords; record++)
+            for (int list = 0; list < numLists; list++)
+               decisionListResults.add(resultMatrix.get(record, list));
+      }
+      return decisionListResults;
+   }
+
+   /**
+    * Returns the results of the last execution, one row per record of the batch (or a
+    * single row without one).  The matrix is reused by the next execution.
+    */
+   public ResultMatrix getResultMatrix() {
+      return resultMatrix;
+   }
+
+   /**
+    * Returns the device allocation holding the encoding and the output, or null before
+    * setupKernelParams() and after it's been freed.
+    */
+   public DeviceBuffer getDeviceBuffer() {
+      return dBuffer;
+   }
+
+   public PackedLayout getLayout() {
+      return layout;
+   }
+
+   public int getEncodedListsRegion() {
+      return encodedListsRegion;
+   }
+
+   public int getResultsRegion() {
+      return resultsRegion;
+   }
+
+   public int getNumExpressions() {
+      return numExpressions;
+   }
+
+   /**
+    * Returns the encoding of the decision lists, which goes back to the pool on cleanup().
+    */
+   public ByteBuffer getEncodedLists() {
+      return encodedLists;
+   }
+
+   /**
+    * Recombines per-node results into their owning decision lists by walking the lists.
+    * This is easy because both the decision lists and results are ordered.  Used for results
+    * from the original text encoding; WireFormat.decodeResults() does this from a table of
+    * list offsets, which works for either encoding.
+    */
+   public static ArrayList<Boolean> decodeResults(ArrayList<DecisionListExpression> decisionLists, int[] nodeResults) {
+      ArrayList<Boolean> decisionListResults = new ArrayList<Boolean>();
       int resultIndex = 0;
       for (DecisionListExpression dl : decisionLists) {
          DecisionListExpression node = dl;
          boolean gotResult = false;
          while (node != null) {
-            DecisionListResult nodeResult = DecisionListResult.get(hExpressionResults[resultIndex++]);
+            DecisionListResult nodeResult = DecisionListResult.get(nodeResults[resultIndex++]);
             if (nodeResult == DecisionListResult.ERROR)
                throw new JiminyException("Error returned from kernel");
             else if (!gotResult && nodeResult == DecisionListResult.TRUE) {
@@ -118,12 +281,28 @@ public class DecisionListKernel extends KernelEngine {
             node = node.getNextNode();
          }
       }
+      return decisionListResults;
    }
 
    @Override
    public void cleanup() {
-      for (int i = 0; i < numExpressions; i++)
-         JCudaDriver.cuMemFree(dExpressions[i]);
-      JCudaDriver.cuMemFree(dExpressionPointers);
+      hostEncodedLists = null;
+      hostResults = null;
+      if (!retainDeviceMemory)
+         freeDeviceMemory();
+      stagingBuffers.release(encodedLists);
+      encodedLists = null;
+   }
+
+   @Override
+   public void release() {
+      freeDeviceMemory();
+   }
+
+   private void freeDeviceMemory() {
+      if (dBuffer != null) {
+         getDeviceMemory().free(dBuffer);
+         dBuffer = null;
+      }
    }
 }
@@ -0,0 +1,104 @@
+package org.jiminy.cuda;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import org.jiminy.JiminyException;
+import org.jiminy.domain.EvaluationContext;
+import org.jiminy.domain.RecordBatch;
+import org.jiminy.domain.ResultMatrix;
+import org.jiminy.domain.SymbolTable;
+import org.jiminy.domain.expression.DecisionListExpression;
+
+/**
+ * Evaluates one set of decision lists with the kernel, batch after batch, on any backend.
+ * The backend is set up (and the kernel loaded) once when the session is created, and the
+ * device allocation and staging buffers are kept from one batch to the next, so a batch
+ * only pays for encoding, copying and running.  Each batch is a single launch however many
+ * records it has.
+ *
+ * Batches are evaluated one at a time; concurrent calls wait their turn.
+ */
+public class DecisionListSession {
+   private final ArrayList<DecisionListExpression> decisionLists;
+   private final SymbolTable layout;
+   private final DecisionListKernel kernel;
+   private KernelSession session;
+
+   public DecisionListSession(KernelBackend backend, SymbolTable layout, ArrayList<DecisionListExpression> decisionLists) throws IOException {
+      this(backend, layout, decisionLists, new StagingBufferPool());
+   }
+
+   public DecisionListSession(KernelBackend backend, SymbolTable layout, ArrayList<DecisionListExpression> decisionLists, StagingBufferPool stagingBuffers) throws IOException {
+      this.decisionLists = decisionLists;
+      this.layout = layout;
+      this.kernel = new DecisionListKernel(new EvaluationContext(layout), decisionLists, backend, stagingBuffers);
+      kernel.setRetainDeviceMemory(true);
+      kernel.setVerbose(false);
+      this.session = backend.open(kernel);
+   }
+
+   public int getNumLists() {
+      return decisionLists.size();
+   }
+
+   public synchronized ResultMatrix evaluate(RecordBatch batch) {
+      ResultMatrix results = new ResultMatrix(batch.getNumRecords(), decisionLists.size());
+      evaluate(batch, results);
+      return results;
+   }
+
+   public synchronized void evaluate(RecordBatch batch, ResultMatrix results) {
+      checkOpen();
+      checkLayout(batch.getLayout());
+      if (results.getNumRecords() != batch.getNumRecords() || results.getNumLists() != decisionLists.size())
+         throw new JiminyException("Result matrix doesn't match batch: " + results);
+
+      kernel.setInputs(batch);
+      session.launch(kernel);
+
+      results.copyFrom(kernel.getResultMatrix());
+   }
+
+   /**
+    * Evaluates every list against the current values in a symbol table, storing the result
+    * for list l in results[l].
+    */
+   public synchronized void evaluate(SymbolTable symbolTable, boolean[] results) {
+      checkOpen();
+      checkLayout(symbolTable);
+      if (results.length < decisionLists.size())
+         throw new JiminyException("Results array has " + results.length + " entries for " + decisionLists.size() + " lists");
+      kernel.setInputs(new EvaluationContext(symbolTable));
+      session.launch(kernel);
+      ResultMatrix resultMatrix = kernel.getResultMatrix();
+      for (int list = 0; list < decisionLists.size(); list++)
+         results[list] = resultMatrix.get(0, list);
+   }
+
+   /**
+    * Frees the device memory and tears down the backend.  The session can't be used again.
+    */
+   public synchronized void close() {
+      if (session == null)
+         return;
+      try {
+         kernel.release();
+      } finally {
+         session.close();
+         session = null;
+      }
+   }
+
+   private void checkLayout(SymbolTable symbolTable) {
+      if (symbolTable.size() != layout.size())
+         throw new JiminyException("Got " + symbolTable.size() + " variables but the session's layout has " + layout.size());
+      for (int slot = 0; slot < layout.size(); slot++)
+         if (symbolTable.getType(slot) != layout.getType(slot) || !symbolTable.getName(slot).equals(layout.getName(slot)))
+            throw new JiminyException("Layout doesn't match session at slot " + slot + ": " + symbolTable.getName(slot));
+   }
+
+   private void checkOpen() {
+      if (session == null)
+         throw new JiminyException("Session is closed");
+   }
+}
@@ -0,0 +1,15 @@
+package org.jiminy.cuda;
+
+import jcuda.Pointer;
+
+/**
+ * A single allocation made by a DeviceMemory.
+ */
+public interface DeviceBuffer {
+   public long getSize();
+
+   /**
+    * Returns a pointer into the buffer suitable for passing as a kernel parameter.
+    */
+   public Pointer getPointer(long offset);
+}
@@ -0,0 +1,18 @@
+package org.jiminy.cuda;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Memory on whatever a KernelEngine runs its kernel on.  CudaDeviceMemory is the real thing;
+ * HostDeviceMemory stands in for it with off-heap host memory so that kernels can be set up,
+ * staged and torn down on machines without a GPU.
+ *
+ * Copies move the remaining bytes of the host buffer (position to limit) to or from the given
+ * byte offset within the device buffer, and don't change the host buffer's position.
+ */
+public interface DeviceMemory {
+   public DeviceBuffer allocate(long size);
+   public void copyToDevice(DeviceBuffer buffer, long offset, ByteBuffer source);
+   public void copyFromDevice(DeviceBuffer buffer, long offset, ByteBuffer destination);
+   public void free(DeviceBuffer buffer);
+}
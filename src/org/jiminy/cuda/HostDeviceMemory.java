@@ -0,0 +1,144 @@
+package org.jiminy.cuda;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.jiminy.JiminyException;
+import jcuda.Pointer;
+
+/**
+ * Stands in for device memory with direct (off-heap) byte buffers, so kernel setup and
+ * teardown can run without a GPU.  Keeps count of allocations and transfers, so callers can
+ * check that nothing leaks and how much copying a kernel does.
+ *
+ * Buffers are little-endian, matching WireFormat and the GPU.  They come from a
+ * StagingBufferPool and go back to it when freed, so repeated runs reuse the same memory;
+ * like real device memory, a new allocation isn't cleared.
+ */
+public class HostDeviceMemory implements DeviceMemory {
+   private final StagingBufferPool pool;
+   private int numAllocations = 0;
+   private int numLiveAllocations = 0;
+   private int numTransfers = 0;
+   private long bytesTransferred = 0;
+
+   public HostDeviceMemory() {
+      this(new StagingBufferPool());
+   }
+
+   public HostDeviceMemory(StagingBufferPool pool) {
+      this.pool = pool;
+   }
+
+   @Override
+   public DeviceBuffer allocate(long size) {
+      if (size < 0 || size > Integer.MAX_VALUE)
+         throw new JiminyException("Can't allocate " + size + " bytes of host memory");
+      HostBuffer buffer = new HostBuffer(pool.acquire((int)size));
+      synchronized (this) {
+         numAllocations++;
+         numLiveAllocations++;
+      }
+      return buffer;
+   }
+
+   @Override
+   public void copyToDevice(DeviceBuffer buffer, long offset, ByteBuffer source) {
+      ByteBuffer target = slice(buffer, offset, source.remaining());
+      target.put(source.duplicate());
+      countTransfer(source.remaining());
+   }
+
+   @Override
+   public void copyFromDevice(DeviceBuffer buffer, long offset, ByteBuffer destination) {
+      ByteBuffer source = slice(buffer, offset, destination.remaining());
+      destination.duplicate().put(source);
+      countTransfer(destination.remaining());
+   }
+
+   @Override
+   public void free(DeviceBuffer buffer) {
+      HostBuffer hostBuffer = check(buffer);
+      ByteBuffer memory = hostBuffer.memory;
+      hostBuffer.memory = null;
+      pool.release(memory);
+      synchronized (this) {
+         numLiveAllocations--;
+      }
+   }
+
+   /**
+    * Returns the memory behind the buffer, for code standing in for the kernel.
+    */
+   public ByteBuffer getBuffer(DeviceBuffer buffer) {
+      return check(buffer).memory.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+   }
+
+   /**
+    * Returns part of the memory behind the buffer, starting at position 0 of the result.
+    */
+   public ByteBuffer getBuffer(DeviceBuffer buffer, long offset, long length) {
+      if (length < 0 || length > Integer.MAX_VALUE)
+         throw new JiminyException("Access of " + length + " bytes is outside device buffer");
+      return slice(buffer, offset, (int)length).slice().order(ByteOrder.LITTLE_ENDIAN);
+   }
+
+   public synchronized int getNumAllocations() {
+      return numAllocations;
+   }
+
+   public synchronized int getNumLiveAllocations() {
+      return numLiveAllocations;
+   }
+
+   public synchronized int getNumTransfers() {
+      return numTransfers;
+   }
+
+   public synchronized long getBytesTransferred() {
+      return bytesTransferred;
+   }
+
+   private synchronized void countTransfer(int length) {
+      numTransfers++;
+      bytesTransferred += length;
+   }
+
+   private static ByteBuffer slice(DeviceBuffer buffer, long offset, int length) {
+      HostBuffer hostBuffer = check(buffer);
+      ByteBuffer memory = hostBuffer.memory.duplicate();
+      if (offset < 0 || offset + length > hostBuffer.size)
+         throw new JiminyException("Access of " + length + " bytes at " + offset + " is outside device buffer of " + hostBuffer.size + " bytes");
+      memory.position((int)offset);
+      memory.limit((int)offset + length);
+      return memory;
+   }
+
+   private static HostBuffer check(DeviceBuffer buffer) {
+      if (!(buffer instanceof HostBuffer))
+         throw new JiminyException("Not a host device buffer: " + buffer);
+      HostBuffer hostBuffer = (HostBuffer)buffer;
+      if (hostBuffer.memory == null)
+         throw new JiminyException("Device buffer has been freed");
+      return hostBuffer;
+   }
+
+   private static class HostBuffer implements DeviceBuffer {
+      private ByteBuffer memory;
+      private int size;
+
+      public HostBuffer(ByteBuffer memory) {
+         this.memory = memory;
+         this.size = memory.limit();
+      }
+
+      @Override
+      public long getSize() {
+         return size;
+      }
+
+      @Override
+      public Pointer getPointer(long offset) {
+         return Pointer.to(slice(this, offset, size - (int)offset).slice());
+      }
+   }
+}
@@ -0,0 +1,17 @@
+package org.jiminy.cuda;
+
+import java.io.IOException;
+
+/**
+ * Something that can run a KernelEngine: CudaBackend on a GPU through JCuda, or CpuBackend
+ * in Java on a thread pool.  Either way the engine sees the same sequence of calls:
+ * setupKernelParams(), the kernel itself, getResults(), then cleanup().
+ *
+ * execute() does all of the backend's setup and teardown around a single launch; open()
+ * does the setup once and returns a session for launching as many times as needed.
+ */
+public interface KernelBackend {
+   public DeviceMemory getDeviceMemory();
+   public void execute(KernelEngine engine) throws IOException;
+   public KernelSession open(KernelEngine engine) throws IOException;
+}
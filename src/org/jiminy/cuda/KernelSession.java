@@ -0,0 +1,12 @@
+package org.jiminy.cuda;
+
+/**
+ * A kernel that's been loaded onto a backend and can be launched again and again, so the
+ * setup (driver initialization, context creation, module loading) is paid once rather than
+ * on every execution.  Each launch goes through the engine's usual setupKernelParams(),
+ * getResults() and cleanup().
+ */
+public interface KernelSession {
+   public void launch(KernelEngine engine);
+   public void close();
+}
@@ -0,0 +1,73 @@
+package org.jiminy.cuda;
+
+import java.util.Arrays;
+import org.jiminy.JiminyException;
+
+/**
+ * The offsets table for several regions packed into one device allocation, so a kernel needs
+ * a single allocate and free however many inputs and outputs it has.  Regions are added in
+ * order and each starts on an ALIGNMENT boundary, which covers any type a kernel reads.
+ */
+public class PackedLayout {
+   public static final int ALIGNMENT = 16;
+
+   private long[] offsets = new long[4];
+   private long[] sizes = new long[4];
+   private int numRegions = 0;
+   private long size = 0;
+
+   /**
+    * Adds a region of the given size and returns its index.
+    */
+   public int add(long regionSize) {
+      if (regionSize < 0)
+         throw new JiminyException("Negative region size: " + regionSize);
+      if (numRegions == offsets.length) {
+         offsets = Arrays.copyOf(offsets, numRegions * 2);
+         sizes = Arrays.copyOf(sizes, numRegions * 2);
+      }
+      long offset = (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+      offsets[numRegions] = offset;
+      sizes[numRegions] = regionSize;
+      size = offset + regionSize;
+      return numRegions++;
+   }
+
+   public int getNumRegions() {
+      return numRegions;
+   }
+
+   public long getOffset(int region) {
+      return offsets[checkRegion(region)];
+   }
+
+   public long getSize(int region) {
+      return sizes[checkRegion(region)];
+   }
+
+   /**
+    * Returns the size of the whole allocation.
+    */
+   public long getSize() {
+      return size;
+   }
+
+   private int checkRegion(int region) {
+      if (region < 0 || region >= numRegions)
+         throw new JiminyException("No region " + region + " in layout of " + numRegions);
+      return region;
+   }
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append("{PackedLayout: size: ").append(size).append("; regions: ");
+      for (int i = 0; i < numRegions; i++) {
+         if (i > 0)
+            sb.append(", ");
+         sb.append(offsets[i]).append("+").append(sizes[i]);
+      }
+      sb.append("}");
+      return sb.toString();
+   }
+}
@@ -0,0 +1,88 @@
+package org.jiminy.cuda;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import org.jiminy.JiminyException;
+
+/**
+ * A pool of direct (off-heap) little-endian buffers for staging kernel input and output, so
+ * that running batch after batch doesn't keep allocating large buffers for the garbage
+ * collector to deal with.  New buffers are made as big as the largest request so far, so
+ * once the batches stop growing everything comes from the pool.
+ *
+ * A buffer from acquire() has position 0 and its limit at the requested size, and must be
+ * given back with release() once nothing refers to it.
+ */
+public class StagingBufferPool {
+   private final ArrayList<ByteBuffer> freeBuffers = new ArrayList<ByteBuffer>();
+   private int highWaterMark = 0;
+   private int numAllocations = 0;
+   private int numAcquired = 0;
+
+   public synchronized ByteBuffer acquire(int size) {
+      if (size < 0)
+         throw new JiminyException("Negative buffer size: " + size);
+      if (size > highWaterMark)
+         highWaterMark = size;
+
+      // Take the smallest free buffer that's big enough, and drop any that are now too small
+      // to be worth keeping.  (ByteBuffer.equals() compares contents, so this goes by index.)
+      int best = -1;
+      for (int i = freeBuffers.size() - 1; i >= 0; i--) {
+         int capacity = freeBuffers.get(i).capacity();
+         if (capacity < size) {
+            if (capacity < highWaterMark / 2) {
+               freeBuffers.remove(i);
+               if (best > i)
+                  best--;
+            }
+         } else if (best == -1 || capacity < freeBuffers.get(best).capacity())
+            best = i;
+      }
+
+      ByteBuffer buffer;
+      if (best != -1)
+         buffer = freeBuffers.remove(best);
+      else {
+         buffer = ByteBuffer.allocateDirect(highWaterMark).order(ByteOrder.LITTLE_ENDIAN);
+         numAllocations++;
+      }
+      numAcquired++;
+      buffer.clear();
+      buffer.limit(size);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      return buffer;
+   }
+
+   public synchronized void release(ByteBuffer buffer) {
+      if (buffer == null)
+         return;
+      for (ByteBuffer free : freeBuffers)
+         if (free == buffer)
+            throw new JiminyException("Staging buffer released twice");
+      numAcquired--;
+      freeBuffers.add(buffer);
+   }
+
+   /**
+    * Returns the size of the largest buffer asked for so far.
+    */
+   public synchronized int getHighWaterMark() {
+      return highWaterMark;
+   }
+
+   /**
+    * Returns how many buffers the pool has had to allocate.
+    */
+   public synchronized int getNumAllocations() {
+      return numAllocations;
+   }
+
+   /**
+    * Returns how many buffers are acquired and not yet released.
+    */
+   public synchronized int getNumAcquired() {
+      return numAcquired;
+   }
+}
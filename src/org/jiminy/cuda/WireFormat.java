@@ -0,0 +1,448 @@
+package org.jiminy.cuda;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import org.jiminy.JiminyException;
+import org.jiminy.domain.DataType;
+import org.jiminy.domain.DecisionListResult;
+import org.jiminy.domain.EvaluationContext;
+import org.jiminy.domain.Operator;
+import org.jiminy.domain.RecordBatch;
+import org.jiminy.domain.ResultMatrix;
+import org.jiminy.domain.SymbolTable;
+import org.jiminy.domain.expression.BinaryExpression;
+import org.jiminy.domain.expression.DecisionListExpression;
+import org.jiminy.domain.expression.Expression;
+import org.jiminy.host.Comparisons;
+import org.jiminy.host.Opcode;
+import org.jiminy.host.RuleProfile;
+import org.jiminy.host.StringDictionary;
+
+/**
+ * A fixed-width binary encoding of decision lists for transmission to the GPU, replacing the
+ * text produced by encode2().  Everything is written to one contiguous little-endian buffer:
+ *
+ *    header   int magic, int numNodes, int numLists, int stringsOffset, int stringsLength
+ *    nodes    numNodes x NODE_SIZE bytes, in list order
+ *    strings  null-terminated UTF-8, each distinct string once
+ *
+ * and each node is
+ *
+ *    byte type, byte operator, byte flags, byte (unused), int operand1, int operand2
+ *
+ * Type and operator use the codes of the DataType and Operator enums in the kernel (one more
+ * than the ordinal of the Java enum, leaving 0 as "undefined").  Operands hold ints directly,
+ * floats as their raw bits, booleans as 0 or 1 and strings as the offset of the string from
+ * the start of the strings section.  As with the text encoding, variables are looked up on
+ * this end and sent as constants.  A node whose condition is a plain boolean (like the
+ * default node) has FLAG_CONSTANT set and its value in operand1.
+ *
+ * The encoder doesn't actually send strings: a string comparison goes as an int comparison
+ * of the two strings' codes in a StringDictionary of every string in the encoding, which
+ * sort the way the strings do.  So the kernel handles every string operator with an int
+ * compare, and the strings section is empty.  String nodes are still understood here.
+ *
+ * The evaluate methods are the reference for what the kernel computes.
+ */
+public class WireFormat {
+   public static final int MAGIC = 0x594E4D4A; // "JMNY"
+   public static final int HEADER_SIZE = 20;
+   public static final int NODE_SIZE = 12;
+
+   /**
+    * The most nodes one encoding can hold, so that its size in bytes fits an int.  That also
+    * keeps the results (an int per node) and the kernel's node indices in an int.
+    */
+   public static final int MAX_NODES = (Integer.MAX_VALUE - HEADER_SIZE) / NODE_SIZE;
+
+   public static final int NUM_NODES_OFFSET = 4;
+   public static final int NUM_LISTS_OFFSET = 8;
+   public static final int STRINGS_OFFSET_OFFSET = 12;
+   public static final int STRINGS_LENGTH_OFFSET = 16;
+
+   public static final byte FLAG_TRUE = 0x01;      // the list's value if this node's condition holds
+   public static final byte FLAG_CONSTANT = 0x02;  // the condition is the boolean in operand1
+   public static final byte FLAG_LAST = 0x04;      // the last node of its decision list
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   private WireFormat() {}
+
+   /**
+    * Encodes the decision lists into a new direct buffer.
+    */
+   public static ByteBuffer encode(ArrayList<DecisionListExpression> decisionLists, EvaluationContext context) {
+      Encoder encoder = new Encoder(context);
+      encoder.measure(decisionLists);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(encoder.getSize()).order(ByteOrder.LITTLE_ENDIAN);
+      encoder.write(decisionLists, buffer);
+      buffer.flip();
+      return buffer;
+   }
+
+   /**
+    * Encodes the decision lists into a buffer from the pool, which the caller releases.
+    */
+   public static ByteBuffer encode(ArrayList<DecisionListExpression> decisionLists, EvaluationContext context, StagingBufferPool pool) {
+      Encoder encoder = new Encoder(context);
+      encoder.measure(decisionLists);
+      ByteBuffer buffer = pool.acquire(encoder.getSize());
+      encoder.write(decisionLists, buffer);
+      buffer.flip();
+      return buffer;
+   }
+
+   /**
+    * Encodes the decision lists once for each record of the batch, one after the other, into
+    * a buffer from the pool.  To the kernel it's just more lists: list l of record r is list
+    * r * decisionLists.size() + l of the encoding.  Throws if that comes to more than
+    * MAX_NODES nodes; such a batch has to be evaluated in smaller pieces.
+    */
+   public static ByteBuffer encode(ArrayList<DecisionListExpression> decisionLists, RecordBatch batch, StagingBufferPool pool) {
+      SymbolTable record = batch.getLayout().copy();
+      Encoder encoder = new Encoder(new EvaluationContext(record));
+      for (int r = 0; r < batch.getNumRecords(); r++) {
+         batch.getRecord(r, record);
+         encoder.measure(decisionLists);
+      }
+
+      ByteBuffer buffer = pool.acquire(encoder.getSize());
+      encoder.writeHeader(buffer);
+      for (int r = 0; r < batch.getNumRecords(); r++) {
+         batch.getRecord(r, record);
+         encoder.writeNodes(decisionLists, buffer);
+      }
+      buffer.flip();
+      return buffer;
+   }
+
+   public static int getNumNodes(ByteBuffer buffer) {
+      return checkHeader(buffer).getInt(NUM_NODES_OFFSET);
+   }
+
+   public static int getNumLists(ByteBuffer buffer) {
+      return checkHeader(buffer).getInt(NUM_LISTS_OFFSET);
+   }
+
+   public static int getStringsOffset(ByteBuffer buffer) {
+      return checkHeader(buffer).getInt(STRINGS_OFFSET_OFFSET);
+   }
+
+   public static int getSize(ByteBuffer buffer) {
+      buffer = checkHeader(buffer);
+      return buffer.getInt(STRINGS_OFFSET_OFFSET) + buffer.getInt(STRINGS_LENGTH_OFFSET);
+   }
+
+   /**
+    * Evaluates a single node the way the kernel does, returning the ordinal of a
+    * DecisionListResult: TRUE or FALSE if the node's condition holds, IGNORE if it doesn't
+    * and ERROR if the node can't be evaluated.
+    */
+   public static int evaluateNode(ByteBuffer buffer, int node) {
+      buffer = checkHeader(buffer);
+      return evaluateNode(buffer, HEADER_SIZE + node * NODE_SIZE, buffer.getInt(STRINGS_OFFSET_OFFSET));
+   }
+
+   /**
+    * Evaluates every node, storing the result for node n in nodeResults[n].
+    */
+   public static void evaluateNodes(ByteBuffer buffer, int[] nodeResults) {
+      buffer = checkHeader(buffer);
+      int numNodes = buffer.getInt(NUM_NODES_OFFSET);
+      int stringsOffset = buffer.getInt(STRINGS_OFFSET_OFFSET);
+      for (int node = 0; node < numNodes; node++)
+         nodeResults[node] = evaluateNode(buffer, HEADER_SIZE + node * NODE_SIZE, stringsOffset);
+   }
+
+   /**
+    * Evaluates every decision list in the buffer.
+    */
+   public static boolean[] evaluate(ByteBuffer buffer) {
+      int[] nodeResults = new int[getNumNodes(buffer)];
+      evaluateNodes(buffer, nodeResults);
+      return decodeResults(buffer, nodeResults);
+   }
+
+   /**
+    * Turns per-node results (from the kernel or evaluateNodes()) into one result per list.
+    * The list boundaries come from the nodes' FLAG_LAST, so we don't need the decision lists
+    * themselves.
+    */
+   public static boolean[] decodeResults(ByteBuffer buffer, int[] nodeResults) {
+      boolean[] results = new boolean[getNumLists(buffer)];
+      decodeResults(buffer, IntBuffer.wrap(nodeResults), results, null);
+      return results;
+   }
+
+   /**
+    * Decodes per-node results straight out of a little-endian buffer of ints, as copied back
+    * from the device, into results[0..getNumLists()-1].
+    */
+   public static void decodeResults(ByteBuffer buffer, ByteBuffer nodeResults, boolean[] results) {
+      decodeResults(buffer, nodeResults, results, null);
+   }
+
+   /**
+    * As above, also recording the node that decided each list in a profile (if it isn't
+    * null).  An encoding of a batch holds the lists once per record, so list l of every
+    * record counts towards list l of the profile.
+    */
+   public static void decodeResults(ByteBuffer buffer, ByteBuffer nodeResults, boolean[] results, RuleProfile profile) {
+      if (nodeResults.order() != ByteOrder.LITTLE_ENDIAN)
+         nodeResults = nodeResults.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      decodeResults(buffer, nodeResults.asIntBuffer(), results, profile);
+   }
+
+   private static void decodeResults(ByteBuffer buffer, IntBuffer nodeResults, boolean[] results, RuleProfile profile) {
+      buffer = checkHeader(buffer);
+      int numNodes = buffer.getInt(NUM_NODES_OFFSET);
+      if (results.length < buffer.getInt(NUM_LISTS_OFFSET))
+         throw new JiminyException("Results array too small for " + buffer.getInt(NUM_LISTS_OFFSET) + " decision lists");
+      if (nodeResults.limit() < numNodes)
+         throw new JiminyException("Missing results for " + (numNodes - nodeResults.limit()) + " nodes");
+
+      int list = 0;
+      int position = 0;
+      boolean gotResult = false;
+      for (int node = 0; node < numNodes; node++) {
+         DecisionListResult nodeResult = DecisionListResult.get(nodeResults.get(node));
+         if (nodeResult == DecisionListResult.ERROR)
+            throw new JiminyException("Error returned from kernel");
+         if (!gotResult && nodeResult != DecisionListResult.IGNORE) {
+            results[list] = (nodeResult == DecisionListResult.TRUE);
+            gotResult = true;
+            if (profile != null)
+               profile.record(list % profile.getNumLists(), position);
+         }
+         position++;
+         if ((buffer.get(HEADER_SIZE + node * NODE_SIZE + 2) & FLAG_LAST) != 0) {
+            if (!gotResult)
+               throw new JiminyException("Decision list lacks default node");
+            list++;
+            position = 0;
+            gotResult = false;
+         }
+      }
+   }
+
+   /**
+    * Decodes per-node results into a matrix using a table of list offsets (node i of list l
+    * is listOffsets[l] + i), as for an encoding of a batch: record r's copy of the lists
+    * starts at node r * listOffsets[numLists].  Each list's first deciding node is found by
+    * scanning from its offset, and the rest of its nodes aren't read at all, nor is the
+    * encoding.  The deciding node is stored in the matrix and the profile (either of which
+    * may not record them) numbered as in the table.
+    */
+   public static void decodeResults(int[] listOffsets, ByteBuffer nodeResults, ResultMatrix results, RuleProfile profile) {
+      if (nodeResults.order() != ByteOrder.LITTLE_ENDIAN)
+         nodeResults = nodeResults.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      decodeResults(listOffsets, nodeResults.asIntBuffer(), results, profile);
+   }
+
+   public static void decodeResults(int[] listOffsets, int[] nodeResults, ResultMatrix results) {
+      decodeResults(listOffsets, IntBuffer.wrap(nodeResults), results, null);
+   }
+
+   private static void decodeResults(int[] listOffsets, IntBuffer nodeResults, ResultMatrix results, RuleProfile profile) {
+      int numLists = listOffsets.length - 1;
+      int nodesPerRecord = listOffsets[numLists];
+      if (results.getNumLists() != numLists)
+         throw new JiminyException("Result matrix doesn't match " + numLists + " decision lists: " + results);
+      if (nodeResults.limit() < (long)nodesPerRecord * results.getNumRecords())
+         throw new JiminyException("Missing results for " + ((long)nodesPerRecord * results.getNumRecords() - nodeResults.limit()) + " nodes");
+
+      for (int record = 0; record < results.getNumRecords(); record++) {
+         int base = record * nodesPerRecord;
+         for (int list = 0; list < numLists; list++) {
+            int end = listOffsets[list + 1];
+            int node = listOffsets[list];
+            DecisionListResult nodeResult = DecisionListResult.IGNORE;
+            for (; node < end; node++) {
+               nodeResult = DecisionListResult.get(nodeResults.get(base + node));
+               if (nodeResult != DecisionListResult.IGNORE)
+                  break;
+            }
+            if (nodeResult == DecisionListResult.ERROR)
+               throw new JiminyException("Error returned from kernel");
+            if (node == end)
+               throw new JiminyException("Decision list lacks default node");
+            results.set(record, list, nodeResult == DecisionListResult.TRUE, node);
+            if (profile != null)
+               profile.record(node);
+         }
+      }
+   }
+
+   private static int evaluateNode(ByteBuffer buffer, int position, int stringsOffset) {
+      int typeCode = buffer.get(position);
+      int operatorCode = buffer.get(position + 1);
+      int flags = buffer.get(position + 2);
+      int operand1 = buffer.getInt(position + 4);
+      int operand2 = buffer.getInt(position + 8);
+
+      boolean condition;
+      if ((flags & FLAG_CONSTANT) != 0)
+         condition = (operand1 != 0);
+      else {
+         if (typeCode < 1 || typeCode > DataType.values().length || operatorCode < 1 || operatorCode > Operator.values().length)
+            return DecisionListResult.ERROR.ordinal();
+         byte opcode = Opcode.get(DataType.values()[typeCode - 1], Operator.values()[operatorCode - 1]);
+
+         switch (opcode & Opcode.TYPE_MASK) {
+            case Opcode.INT_TYPE:      condition = Comparisons.test(opcode, operand1, operand2); break;
+            case Opcode.FLOAT_TYPE:    condition = Comparisons.test(opcode, Float.intBitsToFloat(operand1), Float.intBitsToFloat(operand2)); break;
+            case Opcode.STRING_TYPE:   condition = Comparisons.test(opcode, readString(buffer, stringsOffset + operand1), readString(buffer, stringsOffset + operand2)); break;
+            case Opcode.BOOLEAN_TYPE:  condition = Comparisons.test(opcode, operand1 != 0, operand2 != 0); break;
+            default:
+               return DecisionListResult.ERROR.ordinal();
+         }
+      }
+
+      if (!condition)
+         return DecisionListResult.IGNORE.ordinal();
+      return ((flags & FLAG_TRUE) != 0) ? DecisionListResult.TRUE.ordinal() : DecisionListResult.FALSE.ordinal();
+   }
+
+   private static String readString(ByteBuffer buffer, int position) {
+      int end = position;
+      while (buffer.get(end) != 0)
+         end++;
+      byte[] bytes = new byte[end - position];
+      for (int i = 0; i < bytes.length; i++)
+         bytes[i] = buffer.get(position + i);
+      return new String(bytes, UTF8);
+   }
+
+   /**
+    * Checks the buffer starts with a header, and returns a view of it we can read ints from.
+    */
+   private static ByteBuffer checkHeader(ByteBuffer buffer) {
+      if (buffer.order() != ByteOrder.LITTLE_ENDIAN)
+         buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+         throw new JiminyException("Buffer does not contain encoded decision lists");
+      return buffer;
+   }
+
+   static byte encodeType(DataType type) {
+      return (byte)(type.ordinal() + 1);
+   }
+
+   static byte encodeOperator(Operator operator) {
+      return (byte)(operator.ordinal() + 1);
+   }
+
+   /**
+    * Encoding takes two passes over the decision lists: one to count the nodes and gather up
+    * the strings, so we know how big the buffer has to be and can code the strings, and one
+    * to write it.  Measuring the same lists more than once (with different values in the
+    * context) appends them.
+    */
+   private static class Encoder {
+      private final EvaluationContext context;
+      private final HashSet<String> strings = new HashSet<String>();
+      private StringDictionary dictionary = null;
+      private int numNodes = 0;
+      private int numLists = 0;
+
+      Encoder(EvaluationContext context) {
+         this.context = context;
+      }
+
+      // measure() keeps numNodes to MAX_NODES, so this can't overflow
+      int getSize() {
+         return HEADER_SIZE + numNodes * NODE_SIZE;
+      }
+
+      void measure(ArrayList<DecisionListExpression> decisionLists) {
+         for (DecisionListExpression dl : decisionLists) {
+            for (DecisionListExpression node = dl; node != null; node = node.getNextNode()) {
+               Expression condition = node.getCondition();
+               if (condition instanceof BinaryExpression) {
+                  addString(((BinaryExpression)condition).getOperand1());
+                  addString(((BinaryExpression)condition).getOperand2());
+               }
+               numNodes++;
+            }
+            numLists++;
+            if (numNodes > MAX_NODES)
+               throw new JiminyException("Too many nodes for one launch: more than " + MAX_NODES);
+         }
+      }
+
+      void write(ArrayList<DecisionListExpression> decisionLists, ByteBuffer buffer) {
+         writeHeader(buffer);
+         writeNodes(decisionLists, buffer);
+      }
+
+      void writeHeader(ByteBuffer buffer) {
+         int stringsOffset = getSize();
+         buffer.putInt(MAGIC).putInt(numNodes).putInt(numLists).putInt(stringsOffset).putInt(0);
+      }
+
+      void writeNodes(ArrayList<DecisionListExpression> decisionLists, ByteBuffer buffer) {
+         for (DecisionListExpression dl : decisionLists)
+            for (DecisionListExpression node = dl; node != null; node = node.getNextNode())
+               writeNode(node, buffer);
+      }
+
+      private void writeNode(DecisionListExpression node, ByteBuffer buffer) {
+         Expression condition = node.getCondition();
+         if (condition == null)
+            throw new JiminyException("DL condition is null");
+
+         byte flags = node.getNodeTrueValue() ? FLAG_TRUE : 0;
+         if (node.getNextNode() == null)
+            flags |= FLAG_LAST;
+
+         if (condition instanceof BinaryExpression) {
+            BinaryExpression expression = (BinaryExpression)condition;
+            DataType type1 = expression.getOperand1().getDataType(context);
+            DataType type2 = expression.getOperand2().getDataType(context);
+            if (type1 != type2)
+               throw new JiminyException("Type mismatch: attempting to compare value of type " + type1 + " to value of type " + type2 + ".");
+            Opcode.get(type1, expression.getOperator()); // throws if the operator doesn't apply to the type
+
+            buffer.put(encodeType(type1 == DataType.STRING ? DataType.INT : type1)).put(encodeOperator(expression.getOperator())).put(flags).put((byte)0);
+            buffer.putInt(encodeOperand(expression.getOperand1(), type1));
+            buffer.putInt(encodeOperand(expression.getOperand2(), type1));
+         } else {
+            DataType type = condition.getDataType(context);
+            if (type != DataType.BOOLEAN)
+               throw new JiminyException("Expression evaluates to illegal type (should be boolean): " + type.toString());
+
+            buffer.put(encodeType(DataType.BOOLEAN)).put((byte)0).put((byte)(flags | FLAG_CONSTANT)).put((byte)0);
+            buffer.putInt(condition.evaluateBoolean(context) ? 1 : 0);
+            buffer.putInt(0);
+         }
+      }
+
+      private int encodeOperand(Expression operand, DataType type) {
+         switch (type) {
+            case BOOLEAN:  return operand.evaluateBoolean(context) ? 1 : 0;
+            case FLOAT:    return Float.floatToRawIntBits(operand.evaluateFloat(context));
+            case INT:      return operand.evaluateInt(context);
+            case STRING:   return getDictionary().getCode(operand.evaluateString(context));
+            default:
+               throw new JiminyException("Unknown data type: " + type); // should never get here
+         }
+      }
+
+      private void addString(Expression operand) {
+         if (operand.getDataType(context) != DataType.STRING)
+            return;
+         strings.add(operand.evaluateString(context));
+         dictionary = null;
+      }
+
+      private StringDictionary getDictionary() {
+         if (dictionary == null)
+            dictionary = new StringDictionary(strings);
+         return dictionary;
+      }
+   }
+}
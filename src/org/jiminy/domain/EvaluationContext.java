@@ -0,0 +1,24 @@
+package org.jiminy.domain;
+
+import org.jiminy.JiminyException;
+
+/**
+ * Everything an expression needs to evaluate itself that isn't part of the expression:
+ * for now, just the symbol table holding the values of the variables.  A context is passed
+ * explicitly through every evaluation, so evaluations with different inputs can run side by
+ * side against the same expressions.  Expressions bound to a symbol table must be evaluated
+ * in a context whose table has the same slots (see SymbolTable.copy()).
+ */
+public class EvaluationContext {
+   private final SymbolTable symbolTable;
+
+   public EvaluationContext(SymbolTable symbolTable) {
+      if (symbolTable == null)
+         throw new JiminyException("No symbol table!");
+      this.symbolTable = symbolTable;
+   }
+
+   public SymbolTable getSymbolTable() {
+      return symbolTable;
+   }
+}
@@ -0,0 +1,153 @@
+package org.jiminy.domain;
+
+import org.jiminy.JiminyException;
+
+/**
+ * A batch of input records stored by column: one typed array per variable, indexed by
+ * record.  The variables (and their slots and types) are those of the symbol table the
+ * batch was created from, so a rule set compiled against that table can be evaluated
+ * against every record in the batch.
+ */
+public class RecordBatch {
+   private final SymbolTable layout;
+   private final int numVariables;
+   private final int numRecords;
+   private final int[][] intColumns;
+   private final float[][] floatColumns;
+   private final String[][] stringColumns;
+   private final boolean[][] booleanColumns;
+
+   public RecordBatch(SymbolTable layout, int numRecords) {
+      if (layout == null)
+         throw new JiminyException("No symbol table!");
+      if (numRecords < 0)
+         throw new JiminyException("Invalid number of records: " + numRecords);
+
+      this.layout = layout;
+      this.numVariables = layout.size();
+      this.numRecords = numRecords;
+      intColumns = new int[numVariables][];
+      floatColumns = new float[numVariables][];
+      stringColumns = new String[numVariables][];
+      booleanColumns = new boolean[numVariables][];
+
+      // Only allocate the column for each variable's own type
+      for (int slot = 0; slot < numVariables; slot++) {
+         switch (layout.getType(slot)) {
+            case BOOLEAN:  booleanColumns[slot] = new boolean[numRecords]; break;
+            case FLOAT:    floatColumns[slot] = new float[numRecords]; break;
+            case INT:      intColumns[slot] = new int[numRecords]; break;
+            case STRING:   stringColumns[slot] = new String[numRecords]; break;
+            default:
+         }
+      }
+   }
+
+   public SymbolTable getLayout() {
+      return layout;
+   }
+
+   public int getNumVariables() {
+      return numVariables;
+   }
+
+   public int getNumRecords() {
+      return numRecords;
+   }
+
+   public DataType getType(int slot) {
+      return layout.getType(slot);
+   }
+
+   public int[] getIntColumn(int slot) {
+      return checkColumn(intColumns[slot], slot, DataType.INT);
+   }
+
+   public float[] getFloatColumn(int slot) {
+      return checkColumn(floatColumns[slot], slot, DataType.FLOAT);
+   }
+
+   public String[] getStringColumn(int slot) {
+      return checkColumn(stringColumns[slot], slot, DataType.STRING);
+   }
+
+   public boolean[] getBooleanColumn(int slot) {
+      return checkColumn(booleanColumns[slot], slot, DataType.BOOLEAN);
+   }
+
+   public Value getValue(int record, int slot) {
+      switch (layout.getType(slot)) {
+         case BOOLEAN:  return Value.valueOf(booleanColumns[slot][record]);
+         case FLOAT:    return Value.valueOf(floatColumns[slot][record]);
+         case INT:      return Value.valueOf(intColumns[slot][record]);
+         case STRING:   return Value.valueOf(stringColumns[slot][record]);
+         default:
+            throw new JiminyException("Unknown data type: " + layout.getType(slot)); // should never get here
+      }
+   }
+
+   public void setValue(int record, int slot, Value value) {
+      if (value == null || value.getType() != layout.getType(slot))
+         throw new JiminyException("Type mismatch: variable " + layout.getName(slot) + " has type " + layout.getType(slot) + " but was assigned " + value + ".");
+
+      switch (value.getType()) {
+         case BOOLEAN:  booleanColumns[slot][record] = value.getBooleanValue(); break;
+         case FLOAT:    floatColumns[slot][record] = value.getFloatValue(); break;
+         case INT:      intColumns[slot][record] = value.getIntValue(); break;
+         case STRING:   stringColumns[slot][record] = value.getStringValue(); break;
+         default:
+      }
+   }
+
+   public void setValue(int record, String name, Value value) {
+      setValue(record, layout.resolve(name), value);
+   }
+
+   /**
+    * Copies the current value of every variable in the given symbol table into a record.
+    * The table must have the same slots as the batch's layout.
+    */
+   public void setRecord(int record, SymbolTable symbolTable) {
+      for (int slot = 0; slot < numVariables; slot++) {
+         if (symbolTable.getType(slot) != layout.getType(slot) || !symbolTable.getName(slot).equals(layout.getName(slot)))
+            throw new JiminyException("Symbol table layout doesn't match batch at slot " + slot + ": " + symbolTable.getName(slot));
+
+         switch (layout.getType(slot)) {
+            case BOOLEAN:  booleanColumns[slot][record] = symbolTable.getBooleanValue(slot); break;
+            case FLOAT:    floatColumns[slot][record] = symbolTable.getFloatValue(slot); break;
+            case INT:      intColumns[slot][record] = symbolTable.getIntValue(slot); break;
+            case STRING:   stringColumns[slot][record] = symbolTable.getStringValue(slot); break;
+            default:
+         }
+      }
+   }
+
+   /**
+    * Copies a record into the given symbol table, the reverse of setRecord().  The table must
+    * have the same slots as the batch's layout.
+    */
+   public void getRecord(int record, SymbolTable symbolTable) {
+      for (int slot = 0; slot < numVariables; slot++) {
+         if (symbolTable.getType(slot) != layout.getType(slot) || !symbolTable.getName(slot).equals(layout.getName(slot)))
+            throw new JiminyException("Symbol table layout doesn't match batch at slot " + slot + ": " + symbolTable.getName(slot));
+         symbolTable.setValue(slot, getValue(record, slot));
+      }
+   }
+
+   private <T> T checkColumn(T column, int slot, DataType type) {
+      if (column == null)
+         throw new JiminyException("Variable " + layout.getName(slot) + " has type " + layout.getType(slot) + ", not " + type);
+      return column;
+   }
+
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+      
+      sb.append("{").append(this.getClass().getSimpleName()).append(": ");
+      sb.append("variables: ").append(numVariables);
+      sb.append("; records: ").append(numRecords);
+      sb.append("}");
+      
+      return sb.toString();
+   }
+}
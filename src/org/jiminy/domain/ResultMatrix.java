@@ -0,0 +1,155 @@
+package org.jiminy.domain;
+
+import java.util.Arrays;
+import org.jiminy.JiminyException;
+
+/**
+ * The results of evaluating a set of decision lists against a batch of records: one bit
+ * per (record, list) pair.  The bits are stored list by list, and each list's row starts
+ * on a new 64-bit word, so bit r of a list's row is record r.  Writers working on different
+ * lists, or on ranges of records that start and end on multiples of 64, never touch the
+ * same word and can run at the same time.
+ *
+ * A matrix can also record which node decided each pair, numbered as in CompiledRuleSet
+ * (node i of list l is listOffsets[l] + i).  That costs an int per pair rather than a bit,
+ * so it's only kept when asked for.
+ */
+public class ResultMatrix {
+   private final int numRecords;
+   private final int numLists;
+   private final int wordsPerList;
+   private final long[] bits;
+   private final int[] decidingNodes;
+
+   public ResultMatrix(int numRecords, int numLists) {
+      this(numRecords, numLists, false);
+   }
+
+   public ResultMatrix(int numRecords, int numLists, boolean recordDecidingNodes) {
+      if (numRecords < 0 || numLists < 0)
+         throw new JiminyException("Invalid result matrix size: " + numRecords + " x " + numLists);
+      this.numRecords = numRecords;
+      this.numLists = numLists;
+      this.wordsPerList = (numRecords + 63) >>> 6;
+      this.bits = new long[checkSize((long)wordsPerList * numLists)];
+      this.decidingNodes = recordDecidingNodes ? new int[checkSize((long)numRecords * numLists)] : null;
+   }
+
+   private int checkSize(long size) {
+      if (size > Integer.MAX_VALUE)
+         throw new JiminyException("Result matrix too big: " + numRecords + " x " + numLists);
+      return (int)size;
+   }
+
+   public int getNumRecords() {
+      return numRecords;
+   }
+
+   public int getNumLists() {
+      return numLists;
+   }
+
+   public boolean get(int record, int list) {
+      return ((bits[list * wordsPerList + (record >>> 6)] >>> record) & 1) != 0;
+   }
+
+   public void set(int record, int list, boolean result) {
+      int word = list * wordsPerList + (record >>> 6);
+      if (result)
+         bits[word] |= 1L << record;
+      else
+         bits[word] &= ~(1L << record);
+   }
+
+   /**
+    * Sets a result and, if the matrix records them, the node that decided it.
+    */
+   public void set(int record, int list, boolean result, int node) {
+      set(record, list, result);
+      setDecidingNode(record, list, node);
+   }
+
+   public boolean hasDecidingNodes() {
+      return decidingNodes != null;
+   }
+
+   public int getDecidingNode(int record, int list) {
+      if (decidingNodes == null)
+         throw new JiminyException("Deciding nodes aren't recorded: " + this);
+      return decidingNodes[list * numRecords + record];
+   }
+
+   public void setDecidingNode(int record, int list, int node) {
+      if (decidingNodes != null)
+         decidingNodes[list * numRecords + record] = node;
+   }
+
+   /**
+    * Returns the number of words in each list's row: (numRecords + 63) / 64.
+    */
+   public int getWordsPerList() {
+      return wordsPerList;
+   }
+
+   /**
+    * Returns the results of a list for records [64 * word, 64 * word + 64), record
+    * 64 * word + i in bit i.  Bits past the last record are always clear.
+    */
+   public long getWord(int list, int word) {
+      return bits[list * wordsPerList + word];
+   }
+
+   /**
+    * Replaces the bits of a word that are set in mask with those of results, for writing
+    * up to 64 results of a list at once.  Bits past the last record are ignored.
+    */
+   public void setWord(int list, int word, long results, long mask) {
+      if (word == wordsPerList - 1 && (numRecords & 63) != 0)
+         mask &= (1L << numRecords) - 1;
+      int index = list * wordsPerList + word;
+      bits[index] = (bits[index] & ~mask) | (results & mask);
+   }
+
+   /**
+    * Copies the results (and the deciding nodes, if both matrices record them) of a matrix
+    * of the same size.
+    */
+   public void copyFrom(ResultMatrix other) {
+      if (other.numRecords != numRecords || other.numLists != numLists)
+         throw new JiminyException("Result matrix doesn't match: " + other + " for " + this);
+      System.arraycopy(other.bits, 0, bits, 0, bits.length);
+      if (decidingNodes != null && other.decidingNodes != null)
+         System.arraycopy(other.decidingNodes, 0, decidingNodes, 0, decidingNodes.length);
+   }
+
+   /**
+    * Returns the number of (record, list) pairs that evaluated to true.
+    */
+   public long countTrue() {
+      long count = 0;
+      for (long word : bits)
+         count += Long.bitCount(word);
+      return count;
+   }
+
+   /**
+    * Compares the results only, not the deciding nodes.
+    */
+   public boolean equals(ResultMatrix other) {
+      if (other == null || other.numRecords != numRecords || other.numLists != numLists)
+         return false;
+      return Arrays.equals(bits, other.bits);
+   }
+
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("{").append(this.getClass().getSimpleName()).append(": ");
+      sb.append("records: ").append(numRecords);
+      sb.append("; lists: ").append(numLists);
+      sb.append("; true: ").append(countTrue());
+      sb.append("}");
+
+      return sb.toString();
+   }
+}
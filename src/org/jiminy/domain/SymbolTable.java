@@ -0,0 +1,193 @@
+package org.jiminy.domain;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.jiminy.JiminyException;
+
+/**
+ * A symbol table that assigns each variable an integer slot when it is declared.  Names are
+ * only hashed when an expression is bound to the table (see Expression.bind()); after that,
+ * values are read by slot straight out of the typed array for the variable's data type.
+ * A variable's type is fixed when it is declared.
+ */
+public class SymbolTable {
+   private static final int DEFAULT_CAPACITY = 16;
+
+   private HashMap<String,Integer> slots = new HashMap<String,Integer>();
+   private int size = 0;
+   private String[] names;
+   private DataType[] types;
+   private Value[] values;
+   private int[] intValues;
+   private float[] floatValues;
+   private String[] stringValues;
+   private boolean[] booleanValues;
+
+   public SymbolTable() {
+      this(DEFAULT_CAPACITY);
+   }
+
+   public SymbolTable(int capacity) {
+      allocate(Math.max(capacity, 1));
+   }
+
+   public SymbolTable(HashMap<String,Value> symbolTable) {
+      this(symbolTable.size());
+      for (Map.Entry<String,Value> entry : symbolTable.entrySet())
+         declare(entry.getKey(), entry.getValue());
+   }
+
+   /**
+    * Returns a new table with the same variables in the same slots, and the same values.
+    * Expressions bound to this table can be evaluated against the copy, so this is how to
+    * get a private set of inputs for a concurrent evaluation.
+    */
+   public SymbolTable copy() {
+      SymbolTable copy = new SymbolTable(names.length);
+      copy.slots = new HashMap<String,Integer>(slots);
+      copy.size = size;
+      System.arraycopy(names, 0, copy.names, 0, size);
+      System.arraycopy(types, 0, copy.types, 0, size);
+      System.arraycopy(values, 0, copy.values, 0, size);
+      System.arraycopy(intValues, 0, copy.intValues, 0, size);
+      System.arraycopy(floatValues, 0, copy.floatValues, 0, size);
+      System.arraycopy(stringValues, 0, copy.stringValues, 0, size);
+      System.arraycopy(booleanValues, 0, copy.booleanValues, 0, size);
+      return copy;
+   }
+
+   /**
+    * Adds a new variable to the table and returns its slot.
+    */
+   public int declare(String name, Value value) {
+      if (value == null)
+         throw new JiminyException("Cannot declare variable " + name + " without a value");
+      if (slots.containsKey(name))
+         throw new JiminyException("Variable already declared: " + name);
+
+      if (size == names.length)
+         allocate(size * 2);
+
+      int slot = size++;
+      slots.put(name, slot);
+      names[slot] = name;
+      types[slot] = value.getType();
+      store(slot, value);
+      return slot;
+   }
+
+   /**
+    * Returns the slot of the named variable, or -1 if it hasn't been declared.
+    */
+   public int getSlot(String name) {
+      Integer slot = slots.get(name);
+      return (slot == null) ? -1 : slot;
+   }
+
+   /**
+    * Returns the slot of the named variable, throwing if it hasn't been declared.
+    */
+   public int resolve(String name) {
+      Integer slot = slots.get(name);
+      if (slot == null)
+         throw new JiminyException("Undeclared variable: " + name);
+      return slot;
+   }
+
+   public int size() {
+      return size;
+   }
+
+   public String getName(int slot) {
+      return names[slot];
+   }
+
+   public DataType getType(int slot) {
+      return types[slot];
+   }
+
+   public Value getValue(int slot) {
+      return values[slot];
+   }
+
+   public Value getValue(String name) {
+      return values[resolve(name)];
+   }
+
+   public int getIntValue(int slot) {
+      return intValues[slot];
+   }
+
+   public float getFloatValue(int slot) {
+      return floatValues[slot];
+   }
+
+   public String getStringValue(int slot) {
+      return stringValues[slot];
+   }
+
+   public boolean getBooleanValue(int slot) {
+      return booleanValues[slot];
+   }
+
+   public void setValue(int slot, Value value) {
+      checkValue(slot, value);
+      store(slot, value);
+   }
+
+   /**
+    * Throws if setValue(slot, value) would, without changing anything.
+    */
+   public void checkValue(int slot, Value value) {
+      if (slot < 0 || slot >= size)
+         throw new JiminyException("Invalid slot: " + slot);
+      if (value == null || value.getType() != types[slot])
+         throw new JiminyException("Type mismatch: variable " + names[slot] + " has type " + types[slot] + " but was assigned " + value + ".");
+   }
+
+   public void setValue(String name, Value value) {
+      setValue(resolve(name), value);
+   }
+
+   private void store(int slot, Value value) {
+      values[slot] = value;
+      switch (value.getType()) {
+         case BOOLEAN:  booleanValues[slot] = value.getBooleanValue(); break;
+         case FLOAT:    floatValues[slot] = value.getFloatValue(); break;
+         case INT:      intValues[slot] = value.getIntValue(); break;
+         case STRING:   stringValues[slot] = value.getStringValue(); break;
+         default:
+      }
+   }
+
+   private void allocate(int capacity) {
+      if (names == null) {
+         names = new String[capacity];
+         types = new DataType[capacity];
+         values = new Value[capacity];
+         intValues = new int[capacity];
+         floatValues = new float[capacity];
+         stringValues = new String[capacity];
+         booleanValues = new boolean[capacity];
+      } else {
+         names = Arrays.copyOf(names, capacity);
+         types = Arrays.copyOf(types, capacity);
+         values = Arrays.copyOf(values, capacity);
+         intValues = Arrays.copyOf(intValues, capacity);
+         floatValues = Arrays.copyOf(floatValues, capacity);
+         stringValues = Arrays.copyOf(stringValues, capacity);
+         booleanValues = Arrays.copyOf(booleanValues, capacity);
+      }
+   }
+
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+      
+      sb.append("{").append(this.getClass().getSimpleName()).append(": ");
+      sb.append("size: ").append(size);
+      sb.append("}");
+      
+      return sb.toString();
+   }
+}
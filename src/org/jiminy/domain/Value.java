@@ -3,35 +3,85 @@ package org.jiminy.domain;
 import java.util.Random;
 import org.jiminy.JiminyException;
 
+/**
+ * A typed value.  Values are immutable, so they can be shared: valueOf() returns the same
+ * instance for each boolean and for small ints.  To keep them small a value holds its type,
+ * one int (an int, the raw bits of a float, or 0/1 for a boolean) and a string reference
+ * that's only used by strings, rather than a field for every type.
+ */
 public class Value {
-   private DataType type;
-   private int intValue = 0;
-   private float floatValue = 0;
-   private String stringValue = null;
-   private boolean booleanValue = false;
+   public static final Value TRUE = new Value(true);
+   public static final Value FALSE = new Value(false);
+
+   private static final int MIN_CACHED_INT = -128;
+   private static final int MAX_CACHED_INT = 1023;
+   private static final Value[] intCache = new Value[MAX_CACHED_INT - MIN_CACHED_INT + 1];
+
+   static {
+      for (int i = 0; i < intCache.length; i++)
+         intCache[i] = new Value(MIN_CACHED_INT + i);
+   }
+
+   private final DataType type;
+   private final int bits;
+   private final String stringValue;
    
    public Value(DataType type) {
-      this.type = type;
+      this(type, 0, null);
    }
    
    public Value(int intValue) {
-      this.type = DataType.INT;
-      this.intValue = intValue;
+      this(DataType.INT, intValue, null);
    }
 
    public Value(float floatValue) {
-      this.type = DataType.FLOAT;
-      this.floatValue = floatValue;
+      this(DataType.FLOAT, Float.floatToRawIntBits(floatValue), null);
    }
    
    public Value(String stringValue) {
-      this.type = DataType.STRING;
-      this.stringValue = stringValue;
+      this(DataType.STRING, 0, stringValue);
    }
 
    public Value(boolean booleanValue) {
-      this.type = DataType.BOOLEAN;
-      this.booleanValue = booleanValue;
+      this(DataType.BOOLEAN, booleanValue ? 1 : 0, null);
+   }
+
+   private Value(DataType type, int bits, String stringValue) {
+      this.type = type;
+      this.bits = bits;
+      this.stringValue = stringValue;
+   }
+
+   public static Value valueOf(boolean booleanValue) {
+      return booleanValue ? TRUE : FALSE;
+   }
+
+   public static Value valueOf(int intValue) {
+      if (intValue >= MIN_CACHED_INT && intValue <= MAX_CACHED_INT)
+         return intCache[intValue - MIN_CACHED_INT];
+      return new Value(intValue);
+   }
+
+   public static Value valueOf(float floatValue) {
+      return new Value(floatValue);
+   }
+
+   public static Value valueOf(String stringValue) {
+      return new Value(stringValue);
+   }
+
+   // The typed fields, as they would be if each type had its own
+
+   private int intValue() {
+      return (type == DataType.INT) ? bits : 0;
+   }
+
+   private float floatValue() {
+      return (type == DataType.FLOAT) ? Float.intBitsToFloat(bits) : 0;
+   }
+
+   private boolean booleanValue() {
+      return (type == DataType.BOOLEAN) && bits != 0;
    }
 
    public DataType getType() {
@@ -40,9 +90,9 @@ public class Value {
    
    public int getIntValue() {
       if (type == DataType.INT)
-         return intValue;
+         return intValue();
       else if (type == DataType.FLOAT)
-         return (int)floatValue;
+         return (int)floatValue();
       else if (type == DataType.STRING) {
          try {
             return Integer.valueOf(stringValue);
@@ -56,9 +106,9 @@ public class Value {
 
    public float getFloatValue() {
       if (type == DataType.INT)
-         return (float)intValue;
+         return (float)intValue();
       else if (type == DataType.FLOAT)
-         return floatValue;
+         return floatValue();
       else if (type == DataType.STRING) {
          try {
             return Float.valueOf(stringValue);
@@ -72,13 +122,13 @@ public class Value {
 
    public String getStringValue() {
       if (type == DataType.INT)
-         return String.valueOf(intValue);
+         return String.valueOf(intValue());
       else if (type == DataType.FLOAT)
-         return String.valueOf(floatValue);
+         return String.valueOf(floatValue());
       else if (type == DataType.STRING)
          return stringValue;
       else  { // (type == VariableType.BOOLEAN)
-         return booleanValue ? "T" : "F";
+         return booleanValue() ? "T" : "F";
       }
    }
 
@@ -88,22 +138,17 @@ public class Value {
     */
    public boolean getBooleanValue() {
       if (type == DataType.INT)
-         return (intValue != 0);
+         return (intValue() != 0);
       else if (type == DataType.FLOAT)
-         return (floatValue != 0);
+         return (floatValue() != 0);
       else if (type == DataType.STRING)
          return Boolean.valueOf(stringValue);
       else // (type == VariableType.BOOLEAN)
-         return booleanValue;
+         return booleanValue();
    }
 
    public Value copy() {
-      Value value = new Value(type);
-      value.booleanValue = booleanValue;
-      value.intValue = intValue;
-      value.floatValue = floatValue;
-      value.stringValue = stringValue;
-      return value;
+      return new Value(type, bits, stringValue);
    }
    
    public boolean equals(Value value) {
@@ -125,7 +170,7 @@ public class Value {
          case INT:
             return (value1.getIntValue() == value2.getIntValue());
          case STRING:
-            return (value1.getStringValue() == value2.getStringValue());
+            return value1.getStringValue().equals(value2.getStringValue());
       }
       return false; // should never get here
    }
@@ -162,13 +207,13 @@ public class Value {
    public Value convertTo(DataType type) {
       switch (type) {
          case BOOLEAN:
-            return new Value(getBooleanValue());
+            return valueOf(getBooleanValue());
          case FLOAT:
-            return new Value(getFloatValue());
+            return valueOf(getFloatValue());
          case INT:
-            return new Value(getIntValue());
+            return valueOf(getIntValue());
          case STRING:
-            return new Value(getStringValue());
+            return valueOf(getStringValue());
          default:
             throw new JiminyException("Unknown data type: " + type); // should never get here
       }
@@ -177,7 +222,7 @@ public class Value {
    public static Value generateRandomValue(Random generator, DataType type) {
       switch (type) {
          case BOOLEAN:
-            return new Value(generator.nextBoolean());
+            return valueOf(generator.nextBoolean());
          case FLOAT:
             return new Value(generator.nextFloat());
          case INT:
@@ -194,10 +239,10 @@ public class Value {
       
       sb.append("{").append(this.getClass().getSimpleName()).append(": ");
       sb.append("type: ").append(getType());
-      sb.append("; intValue: ").append(intValue);
-      sb.append("; floatValue: ").append(floatValue);
+      sb.append("; intValue: ").append(intValue());
+      sb.append("; floatValue: ").append(floatValue());
       sb.append("; stringValue: ").append(stringValue);
-      sb.append("; booleanValue: ").append(booleanValue);
+      sb.append("; booleanValue: ").append(booleanValue());
       sb.append("}");
       
       return sb.toString();
@@ -2,7 +2,9 @@ package org.jiminy.domain.expression;
 
 import org.jiminy.JiminyException;
 import org.jiminy.domain.DataType;
+import org.jiminy.domain.EvaluationContext;
 import org.jiminy.domain.Operator;
+import org.jiminy.domain.SymbolTable;
 import org.jiminy.domain.Value;
 
 public class BinaryExpression implements Expression {
@@ -32,50 +34,125 @@ public class BinaryExpression implements Expression {
    }
 
    @Override
-   public void setValue(Value value) {
+   public void setValue(EvaluationContext context, Value value) {
       throw new JiminyException("Cannot assign a value to an expression that is not an l-value");
    }
 
    @Override
-   public Value getValue() {
-      Value value1 = operand1.getValue();
-      Value value2 = operand2.getValue();
+   public Value getValue(EvaluationContext context) {
+      return Value.valueOf(evaluateBoolean(context));
+   }
+
+   @Override
+   public DataType getDataType(EvaluationContext context) {
+      return DataType.BOOLEAN;
+   }
+
+   /**
+    * Compares the operands without boxing them.  The comparisons follow Value.equals() and
+    * Value.compare(): floats use == for equality but Float.compare() for ordering, and true
+    * is greater than false.
+    */
+   @Override
+   public boolean evaluateBoolean(EvaluationContext context) {
+      DataType type1 = operand1.getDataType(context);
+      DataType type2 = operand2.getDataType(context);
       
       // For now we will only allow comparisons of values with the same data type
-      if (value1.getType() != value2.getType())
-         throw new JiminyException("Type mismatch: attempting to compare value of type " + value1.getType() + " to value of type " + value2.getType() + ".");
+      if (type1 != type2)
+         throw new JiminyException("Type mismatch: attempting to compare value of type " + type1 + " to value of type " + type2 + ".");
 
+      switch (type1) {
+         case BOOLEAN: {
+            boolean value1 = operand1.evaluateBoolean(context);
+            boolean value2 = operand2.evaluateBoolean(context);
+            switch (operator) {
+               case EQUAL_TO:       return value1 == value2;
+               case NOT_EQUAL_TO:   return value1 != value2;
+               case LOGICAL_AND:    return value1 && value2;
+               case LOGICAL_OR:     return value1 || value2;
+               default:             return test(Boolean.compare(value1, value2), type1);
+            }
+         }
+         case FLOAT: {
+            float value1 = operand1.evaluateFloat(context);
+            float value2 = operand2.evaluateFloat(context);
+            switch (operator) {
+               case EQUAL_TO:       return value1 == value2;
+               case NOT_EQUAL_TO:   return value1 != value2;
+               default:             return test(Float.compare(value1, value2), type1);
+            }
+         }
+         case INT: {
+            int value1 = operand1.evaluateInt(context);
+            int value2 = operand2.evaluateInt(context);
+            switch (operator) {
+               case EQUAL_TO:       return value1 == value2;
+               case NOT_EQUAL_TO:   return value1 != value2;
+               default:             return test(Integer.compare(value1, value2), type1);
+            }
+         }
+         case STRING: {
+            String value1 = operand1.evaluateString(context);
+            String value2 = operand2.evaluateString(context);
+            switch (operator) {
+               case EQUAL_TO:       return value1.equals(value2);
+               case NOT_EQUAL_TO:   return !value1.equals(value2);
+               default:             return test(value1.compareTo(value2), type1);
+            }
+         }
+         default: // should never happen
+            throw new JiminyException("Unknown data type: " + type1);
+      }
+   }
+
+   /**
+    * Applies an ordering operator to the result of a compare().
+    */
+   private boolean test(int comparison, DataType type) {
       switch (operator) {
-         case EQUAL_TO:
-            return new Value(value1.equals(value2));
-         case GREATER_THAN:
-            return new Value(value1.compareTo(value2) > 0);
-         case GREATER_THAN_OR_EQUAL_TO:
-            return new Value(value1.compareTo(value2) >= 0);
-         case LESS_THAN:
-            return new Value(value1.compareTo(value2) < 0);
-         case LESS_THAN_OR_EQUAL_TO:
-            return new Value(value1.compareTo(value2) <= 0);
+         case GREATER_THAN:               return comparison > 0;
+         case GREATER_THAN_OR_EQUAL_TO:   return comparison >= 0;
+         case LESS_THAN:                  return comparison < 0;
+         case LESS_THAN_OR_EQUAL_TO:      return comparison <= 0;
          case LOGICAL_AND:
          case LOGICAL_OR:
-            if (value1.getType() == DataType.BOOLEAN)
-               return new Value(value1.getBooleanValue() && value2.getBooleanValue());
-            else
-               throw new JiminyException("Invalid operator: " + operator.toString() + " for type: " + value1.getType().toString());
-         case NOT_EQUAL_TO:
-            return new Value(!value1.equals(value2));
+            throw new JiminyException("Invalid operator: " + operator.toString() + " for type: " + type.toString());
          default: // should never happen
             throw new JiminyException("Unknown binary operator: " + operator);
       }
    }
 
+   // A comparison is a boolean, so the other typed getters convert the way Value does
+
+   @Override
+   public int evaluateInt(EvaluationContext context) {
+      return getValue(context).getIntValue();
+   }
+
+   @Override
+   public float evaluateFloat(EvaluationContext context) {
+      return getValue(context).getFloatValue();
+   }
+
+   @Override
+   public String evaluateString(EvaluationContext context) {
+      return evaluateBoolean(context) ? "T" : "F";
+   }
+
+   @Override
+   public void bind(SymbolTable symbolTable) {
+      operand1.bind(symbolTable);
+      operand2.bind(symbolTable);
+   }
+
    @Override
-   public String encode() {
+   public String encode(EvaluationContext context) {
       StringBuilder sb = new StringBuilder();
       sb.append("EB{");
-      sb.append(operand1.encode());
+      sb.append(operand1.encode(context));
       sb.append(Operator.encode(operator));
-      sb.append(operand2.encode());
+      sb.append(operand2.encode(context));
       sb.append("}");
       return sb.toString();
    }
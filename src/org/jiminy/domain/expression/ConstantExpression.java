@@ -1,9 +1,15 @@
 package org.jiminy.domain.expression;
 
 import org.jiminy.JiminyException;
+import org.jiminy.domain.DataType;
+import org.jiminy.domain.EvaluationContext;
+import org.jiminy.domain.SymbolTable;
 import org.jiminy.domain.Value;
 
 public class ConstantExpression implements Expression {
+   public static final ConstantExpression TRUE = new ConstantExpression(Value.TRUE);
+   public static final ConstantExpression FALSE = new ConstantExpression(Value.FALSE);
+
    private Value value;
    
    @SuppressWarnings("unused")
@@ -13,29 +19,69 @@ public class ConstantExpression implements Expression {
       this.value = value;
    }
 
+   /**
+    * Constants can't be changed and don't need binding, so one expression can be shared by
+    * any number of nodes.  Returns the shared expression for a boolean value.
+    */
+   public static ConstantExpression valueOf(Value value) {
+      if (value.getType() == DataType.BOOLEAN)
+         return value.getBooleanValue() ? TRUE : FALSE;
+      return new ConstantExpression(value);
+   }
+
    @Override
-   public void setValue(Value value) {
+   public void setValue(EvaluationContext context, Value value) {
       throw new JiminyException("Cannot assign a value to this expression");
    }    
 
    @Override
-   public Value getValue() {
+   public Value getValue(EvaluationContext context) {
       return value;
    }
 
+   @Override
+   public DataType getDataType(EvaluationContext context) {
+      return value.getType();
+   }
+
+   @Override
+   public boolean evaluateBoolean(EvaluationContext context) {
+      return value.getBooleanValue();
+   }
+
+   @Override
+   public int evaluateInt(EvaluationContext context) {
+      return value.getIntValue();
+   }
+
+   @Override
+   public float evaluateFloat(EvaluationContext context) {
+      return value.getFloatValue();
+   }
+
+   @Override
+   public String evaluateString(EvaluationContext context) {
+      return value.getStringValue();
+   }
+
+   @Override
+   public void bind(SymbolTable symbolTable) {
+      // nothing to resolve
+   }
+
    @Override
    public String toString() {
       StringBuilder sb = new StringBuilder();
       
       sb.append("{").append(this.getClass().getSimpleName()).append(": ");
-      sb.append("value: ").append(getValue());
+      sb.append("value: ").append(value);
       sb.append("}");
       
       return sb.toString();
    }
 
    @Override
-   public String encode() {
+   public String encode(EvaluationContext context) {
       StringBuilder sb = new StringBuilder();
       switch(value.getType()) {
          case BOOLEAN:  sb.append("CB{"); break;
@@ -3,6 +3,8 @@ package org.jiminy.domain.expression;
 import java.util.ArrayList;
 import org.jiminy.JiminyException;
 import org.jiminy.domain.DataType;
+import org.jiminy.domain.EvaluationContext;
+import org.jiminy.domain.SymbolTable;
 import org.jiminy.domain.Value;
 
 public class DecisionListExpression implements Expression {
@@ -19,17 +21,55 @@ public class DecisionListExpression implements Expression {
    }
 
    @Override
-   public void setValue(Value value) {
+   public void setValue(EvaluationContext context, Value value) {
       throw new JiminyException("Cannot assign a value to an expression that is not an l-value");
    }
 
    @Override
-   public Value getValue() {
-      if (condition.getValue().getBooleanValue() == true)
-         return new Value(nodeTrueValue);
-      if (nextNode == null)
-         throw new JiminyException("Decision list lacks a default value");
-      return new Value(nodeTrueValue);
+   public Value getValue(EvaluationContext context) {
+      return Value.valueOf(evaluate(context));
+   }
+
+   @Override
+   public DataType getDataType(EvaluationContext context) {
+      return DataType.BOOLEAN;
+   }
+
+   @Override
+   public boolean evaluateBoolean(EvaluationContext context) {
+      return evaluate(context);
+   }
+
+   @Override
+   public int evaluateInt(EvaluationContext context) {
+      return getValue(context).getIntValue();
+   }
+
+   @Override
+   public float evaluateFloat(EvaluationContext context) {
+      return getValue(context).getFloatValue();
+   }
+
+   @Override
+   public String evaluateString(EvaluationContext context) {
+      return evaluate(context) ? "T" : "F";
+   }
+
+   public Expression getCondition() {
+      return condition;
+   }
+
+   public boolean getNodeTrueValue() {
+      return nodeTrueValue;
+   }
+
+   /**
+    * Binds the condition of this node and every node after it.
+    */
+   @Override
+   public void bind(SymbolTable symbolTable) {
+      for (DecisionListExpression node = this; node != null; node = node.nextNode)
+         node.condition.bind(symbolTable);
    }
 
    public DecisionListExpression getNextNode() {
@@ -40,7 +80,7 @@ public class DecisionListExpression implements Expression {
    }
 
    @Override
-   public String encode() {
+   public String encode(EvaluationContext context) {
       StringBuilder sb = new StringBuilder();
 
       int numNodes = 0;
@@ -50,7 +90,7 @@ public class DecisionListExpression implements Expression {
       sb.append("DL").append(numNodes).append("{");
       
       for (DecisionListExpression node = this; node != null; node = node.nextNode) {
-         sb.append(node.condition.encode());
+         sb.append(node.condition.encode(context));
          sb.append(node.nodeTrueValue ? "T" : "F");
       }
       
@@ -59,25 +99,25 @@ public class DecisionListExpression implements Expression {
       return sb.toString();
    }
    
-   public ArrayList<String> encode2() {
+   public ArrayList<String> encode2(EvaluationContext context) {
       ArrayList<String> expressions = new ArrayList<String>();
       
       for (DecisionListExpression node = this; node != null; node = node.nextNode)
-         expressions.add(node.condition.encode() + (node.nodeTrueValue ? "T" : "F"));
+         expressions.add(node.condition.encode(context) + (node.nodeTrueValue ? "T" : "F"));
       
       return expressions;
    }
    
-   public boolean evaluate() {
-      if (condition == null)
-         throw new JiminyException("DL condition is null");
-      Value value = condition.getValue();
-      if (value.getType() != DataType.BOOLEAN)
-         throw new JiminyException("Expression evaluates to illegal type (should be boolean): " + value.getType().toString());
-      if (value.getBooleanValue())
-         return nodeTrueValue;
-      if (nextNode == null)
-         throw new JiminyException("Decision list lacks default node");
-      return nextNode.evaluate();
+   public boolean evaluate(EvaluationContext context) {
+      for (DecisionListExpression node = this; node != null; node = node.nextNode) {
+         if (node.condition == null)
+            throw new JiminyException("DL condition is null");
+         DataType type = node.condition.getDataType(context);
+         if (type != DataType.BOOLEAN)
+            throw new JiminyException("Expression evaluates to illegal type (should be boolean): " + type.toString());
+         if (node.condition.evaluateBoolean(context))
+            return node.nodeTrueValue;
+      }
+      throw new JiminyException("Decision list lacks default node");
    }
 }
@@ -1,9 +1,33 @@
 package org.jiminy.domain.expression;
 
+import org.jiminy.domain.DataType;
+import org.jiminy.domain.EvaluationContext;
+import org.jiminy.domain.SymbolTable;
 import org.jiminy.domain.Value;
 
 public interface Expression {
-   public void setValue(Value value);
-   public Value getValue();
-   public String encode();
+   public void setValue(EvaluationContext context, Value value);
+   public Value getValue(EvaluationContext context);
+   public String encode(EvaluationContext context);
+
+   /**
+    * Returns the data type getValue() would return, without evaluating the expression.
+    */
+   public DataType getDataType(EvaluationContext context);
+
+   /**
+    * Typed evaluation.  These return the same thing as getValue().getXXXValue(), including
+    * the implicit conversions Value allows, but don't create a Value to do it.
+    */
+   public boolean evaluateBoolean(EvaluationContext context);
+   public int evaluateInt(EvaluationContext context);
+   public float evaluateFloat(EvaluationContext context);
+   public String evaluateString(EvaluationContext context);
+
+   /**
+    * Resolves any variables referenced by this expression to their slots in the given
+    * symbol table.  Once bound, variables are read by slot from the symbol table of the
+    * context they are evaluated in, which must have the same slots as this one.
+    */
+   public void bind(SymbolTable symbolTable);
 }
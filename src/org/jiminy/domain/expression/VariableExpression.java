@@ -1,12 +1,14 @@
 package org.jiminy.domain.expression;
 
-import java.util.HashMap;
 import org.jiminy.JiminyException;
-import org.jiminy.JiminyProgram;
+import org.jiminy.domain.DataType;
+import org.jiminy.domain.EvaluationContext;
+import org.jiminy.domain.SymbolTable;
 import org.jiminy.domain.Value;
 
 public class VariableExpression implements Expression {
    private String name;
+   private int slot = -1;
 
    public VariableExpression(String name) {
       this.name = name;
@@ -18,28 +20,86 @@ public class VariableExpression implements Expression {
 
    public void setName(String name) {
       this.name = name;
+      this.slot = -1;
+   }
+
+   /**
+    * Returns the slot this variable was resolved to by bind(), or -1 if it is unbound.
+    */
+   public int getSlot() {
+      return slot;
    }
 
    @Override
-   public void setValue(Value value) {
-      HashMap<String,Value> symbolTable = JiminyProgram.getInstance().getSymbolTable();
+   public void bind(SymbolTable symbolTable) {
       if (symbolTable == null)
          throw new JiminyException("No symbol table!");
-      value = symbolTable.get(name);
-      if (value == null)
-         throw new JiminyException("Undeclared variable: " + name);
-      symbolTable.put(name,value);
+      slot = symbolTable.resolve(name);
+   }
+
+   /**
+    * Returns the slot to read in the context's symbol table: the bound slot if we have one,
+    * otherwise we have to look the variable up by name.
+    */
+   private int getSlot(SymbolTable symbolTable) {
+      return (slot >= 0) ? slot : symbolTable.resolve(name);
+   }
+
+   @Override
+   public void setValue(EvaluationContext context, Value value) {
+      SymbolTable symbolTable = context.getSymbolTable();
+      symbolTable.setValue(getSlot(symbolTable), value);
    }
    
    @Override
-   public Value getValue() {
-      HashMap<String,Value> symbolTable = JiminyProgram.getInstance().getSymbolTable();
-      if (symbolTable == null)
-         throw new JiminyException("No symbol table!");
-      Value value = symbolTable.get(name);
-      if (value == null)
-         throw new JiminyException("Undeclared variable: " + getName());
-      return value;
+   public Value getValue(EvaluationContext context) {
+      SymbolTable symbolTable = context.getSymbolTable();
+      return symbolTable.getValue(getSlot(symbolTable));
+   }
+
+   @Override
+   public DataType getDataType(EvaluationContext context) {
+      SymbolTable symbolTable = context.getSymbolTable();
+      return symbolTable.getType(getSlot(symbolTable));
+   }
+
+   // The typed getters only read the symbol table's typed arrays directly when the variable
+   // has the requested type; anything else goes through Value so we get the same conversions.
+
+   @Override
+   public boolean evaluateBoolean(EvaluationContext context) {
+      SymbolTable symbolTable = context.getSymbolTable();
+      int index = getSlot(symbolTable);
+      if (symbolTable.getType(index) == DataType.BOOLEAN)
+         return symbolTable.getBooleanValue(index);
+      return symbolTable.getValue(index).getBooleanValue();
+   }
+
+   @Override
+   public int evaluateInt(EvaluationContext context) {
+      SymbolTable symbolTable = context.getSymbolTable();
+      int index = getSlot(symbolTable);
+      if (symbolTable.getType(index) == DataType.INT)
+         return symbolTable.getIntValue(index);
+      return symbolTable.getValue(index).getIntValue();
+   }
+
+   @Override
+   public float evaluateFloat(EvaluationContext context) {
+      SymbolTable symbolTable = context.getSymbolTable();
+      int index = getSlot(symbolTable);
+      if (symbolTable.getType(index) == DataType.FLOAT)
+         return symbolTable.getFloatValue(index);
+      return symbolTable.getValue(index).getFloatValue();
+   }
+
+   @Override
+   public String evaluateString(EvaluationContext context) {
+      SymbolTable symbolTable = context.getSymbolTable();
+      int index = getSlot(symbolTable);
+      if (symbolTable.getType(index) == DataType.STRING)
+         return symbolTable.getStringValue(index);
+      return symbolTable.getValue(index).getStringValue();
    }
 
    @Override
@@ -48,7 +108,7 @@ public class VariableExpression implements Expression {
       
       sb.append("{").append(this.getClass().getSimpleName()).append(": ");
       sb.append("name: ").append(getName());
-      sb.append("; value: ").append(getValue());
+      sb.append("; slot: ").append(getSlot());
       sb.append("}");
       
       return sb.toString();
@@ -57,13 +117,13 @@ public class VariableExpression implements Expression {
    // TODO: Need to write code to send the symbol table to the GPU, and look up variables in the symbol table,
    // before we can send variables to the GPU!  In the mean time, look up the variables on this end instead.
    @Override
-   public String encode() {
+   public String encode(EvaluationContext context) {
       StringBuilder sb = new StringBuilder();
       //sb.append("EV{");
       //sb.append(name);
       //sb.append("}");
 
-      Value value = JiminyProgram.getInstance().getSymbolTable().get(name);
+      Value value = getValue(context);
       switch(value.getType()) {
          case BOOLEAN:  sb.append("CB{"); break;
          case FLOAT:    sb.append("CF{"); break;
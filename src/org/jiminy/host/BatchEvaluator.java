@@ -0,0 +1,160 @@
+package org.jiminy.host;
+
+import org.jiminy.JiminyException;
+import org.jiminy.domain.DataType;
+import org.jiminy.domain.RecordBatch;
+import org.jiminy.domain.ResultMatrix;
+
+/**
+ * Evaluates a CompiledRuleSet against every record in a RecordBatch.  Everything that
+ * depends on the batch rather than on the record (checking the layout, fetching the
+ * columns) is done once per batch, and the lists are evaluated one at a time across all of
+ * the records so each list's nodes stay in cache while we sweep down the columns.
+ */
+public class BatchEvaluator {
+   private final CompiledRuleSet program;
+   private final StringDictionary dictionary;
+   private final int[] stringConstantCodes;
+   private RuleProfile profile = null;
+
+   public BatchEvaluator(CompiledRuleSet program) {
+      this.program = program;
+      this.dictionary = new StringDictionary(program);
+      this.stringConstantCodes = new int[program.stringConstants.length];
+      dictionary.encode(program.stringConstants, stringConstantCodes.length, stringConstantCodes);
+   }
+
+   public CompiledRuleSet getProgram() {
+      return program;
+   }
+
+   /**
+    * Records which node decides each (record, list) evaluated from now on, or stops
+    * recording if profile is null.
+    */
+   public void setProfile(RuleProfile profile) {
+      this.profile = profile;
+   }
+
+   /**
+    * Returns the dictionary of the program's string constants that string columns are coded
+    * with.
+    */
+   public StringDictionary getDictionary() {
+      return dictionary;
+   }
+
+   /**
+    * Returns the dictionary code of a string constant.
+    */
+   int getStringConstantCode(int constant) {
+      return stringConstantCodes[constant];
+   }
+
+   public ResultMatrix evaluate(RecordBatch batch) {
+      ResultMatrix results = new ResultMatrix(batch.getNumRecords(), program.getNumLists());
+      evaluate(batch, results);
+      return results;
+   }
+
+   public void evaluate(RecordBatch batch, ResultMatrix results) {
+      evaluate(batch, batch.getNumRecords(), results);
+   }
+
+   /**
+    * Evaluates the first numRecords records of the batch, for a batch that's only partly
+    * filled.  The rest of the batch isn't read.
+    */
+   public void evaluate(RecordBatch batch, int numRecords, ResultMatrix results) {
+      evaluate(bind(batch, numRecords, results), 0, program.getNumLists(), 0, numRecords, results);
+   }
+
+   Columns bind(RecordBatch batch, ResultMatrix results) {
+      return bind(batch, batch.getNumRecords(), results);
+   }
+
+   /**
+    * Checks that a batch and result matrix fit the program and gathers up the columns of the
+    * first numRecords records of the batch.
+    */
+   Columns bind(RecordBatch batch, int numRecords, ResultMatrix results) {
+      program.checkLayout(batch.getLayout());
+      if (numRecords < 0 || numRecords > batch.getNumRecords())
+         throw new JiminyException("Invalid number of records: " + numRecords + " for " + batch);
+      if (results.getNumRecords() < numRecords || results.getNumLists() < program.getNumLists())
+         throw new JiminyException("Result matrix is too small: " + results + " for " + numRecords + " records and " + program.getNumLists() + " lists");
+      return new Columns(batch, numRecords, program.getNumVariables(), dictionary);
+   }
+
+   /**
+    * Evaluates lists [firstList, lastList) against records [firstRecord, lastRecord).
+    */
+   void evaluate(Columns columns, int firstList, int lastList, int firstRecord, int lastRecord, ResultMatrix results) {
+      for (int list = firstList; list < lastList; list++) {
+         int start = program.listOffsets[list];
+         int end = program.listOffsets[list + 1];
+         for (int record = firstRecord; record < lastRecord; record++) {
+            int node = evaluateList(columns, start, end, record);
+            results.set(record, list, program.outcomes[node], node);
+         }
+      }
+   }
+
+   /**
+    * Returns the node that decides the list.
+    */
+   private int evaluateList(Columns columns, int start, int end, int record) {
+      for (int node = start; node < end; node++)
+         if (test(columns, node, record)) {
+            if (profile != null)
+               profile.record(node);
+            return node;
+         }
+      throw new JiminyException("Decision list lacks default node");
+   }
+
+   private boolean test(Columns columns, int node, int record) {
+      byte opcode = program.opcodes[node];
+      int slot = program.slots[node];
+      int constant = program.constants[node];
+
+      switch (opcode & Opcode.TYPE_MASK) {
+         case Opcode.INT_TYPE:      return Comparisons.test(opcode, columns.intColumns[slot][record], constant);
+         case Opcode.FLOAT_TYPE:    return Comparisons.test(opcode, columns.floatColumns[slot][record], Float.intBitsToFloat(constant));
+         case Opcode.STRING_TYPE:   return Comparisons.test(StringDictionary.toIntOpcode(opcode), columns.stringCodes[slot][record], stringConstantCodes[constant]);
+         case Opcode.BOOLEAN_TYPE:  return Comparisons.test(opcode, columns.booleanColumns[slot][record], constant != 0);
+         default:                   return Comparisons.test(opcode);
+      }
+   }
+
+   /**
+    * The columns of a batch, indexed by slot, fetched once up front.  String columns are
+    * replaced by their dictionary codes, so string comparisons are int comparisons.
+    */
+   static class Columns {
+      final int[][] intColumns;
+      final float[][] floatColumns;
+      final int[][] stringCodes;
+      final boolean[][] booleanColumns;
+
+      Columns(RecordBatch batch, int numRecords, int numVariables, StringDictionary dictionary) {
+         intColumns = new int[numVariables][];
+         floatColumns = new float[numVariables][];
+         stringCodes = new int[numVariables][];
+         booleanColumns = new boolean[numVariables][];
+         for (int slot = 0; slot < numVariables; slot++) {
+            DataType type = batch.getType(slot);
+            if (type == DataType.INT)
+               intColumns[slot] = batch.getIntColumn(slot);
+            else if (type == DataType.FLOAT)
+               floatColumns[slot] = batch.getFloatColumn(slot);
+            else if (type == DataType.STRING) {
+               stringCodes[slot] = new int[numRecords];
+               dictionary.encode(batch.getStringColumn(slot), numRecords, stringCodes[slot]);
+            }
+            else if (type == DataType.BOOLEAN)
+               booleanColumns[slot] = batch.getBooleanColumn(slot);
+         }
+      }
+   }
+}
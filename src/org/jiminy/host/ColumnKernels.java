@@ -0,0 +1,119 @@
+package org.jiminy.host;
+
+import org.jiminy.JiminyException;
+
+/**
+ * Comparisons applied down a column: each method tests up to 64 consecutive rows, starting
+ * at row first, against a constant and returns them as a bitmask (bit i for row first + i).
+ * The semantics are those of Comparisons.
+ *
+ * Int and float columns are compared with the Vector API when the JVM has it (Java 16 and
+ * later, run with --add-modules jdk.incubator.vector): VectorColumnKernels compares a
+ * vector of rows at a time and packs each result mask into bits by blending in each lane's
+ * bit and ORing the lanes together.  It's compiled separately, from vector/src, against
+ * the incubator module, so it's looked up by name rather than linked against.  Without it
+ * the scalar loops here are used.
+ */
+public final class ColumnKernels {
+   private static final VectorKernels VECTOR_KERNELS = loadVectorKernels();
+
+   private ColumnKernels() {}
+
+   /**
+    * The vectorized comparisons, implemented by VectorColumnKernels.
+    */
+   interface VectorKernels {
+      long test(byte opcode, int[] column, int constant, int first, int count);
+      long test(byte opcode, float[] column, float constant, int first, int count);
+   }
+
+   private static VectorKernels loadVectorKernels() {
+      try {
+         Class.forName("jdk.incubator.vector.IntVector");
+         return (VectorKernels)Class.forName("org.jiminy.host.VectorColumnKernels").getDeclaredConstructor().newInstance();
+      } catch (ClassNotFoundException e) {
+         return null; // no Vector API, or the vector kernels weren't built
+      } catch (LinkageError e) {
+         return null;
+      } catch (Exception e) {
+         throw new JiminyException("Unable to load vector kernels", e);
+      }
+   }
+
+   /**
+    * True if int and float columns are compared with the Vector API.
+    */
+   public static boolean isVectorized() {
+      return VECTOR_KERNELS != null;
+   }
+
+   public static long test(byte opcode, int[] column, int constant, int first, int count) {
+      if (VECTOR_KERNELS != null)
+         return VECTOR_KERNELS.test(opcode, column, constant, first, count);
+      return testScalar(opcode, column, constant, first, count);
+   }
+
+   public static long test(byte opcode, float[] column, float constant, int first, int count) {
+      if (VECTOR_KERNELS != null)
+         return VECTOR_KERNELS.test(opcode, column, constant, first, count);
+      return testScalar(opcode, column, constant, first, count);
+   }
+
+   static long testScalar(byte opcode, int[] column, int constant, int first, int count) {
+      long mask = 0;
+      switch (opcode) {
+         case Opcode.INT_EQ:  for (int i = 0; i < count; i++) mask |= (column[first + i] == constant ? 1L : 0L) << i; break;
+         case Opcode.INT_GT:  for (int i = 0; i < count; i++) mask |= (column[first + i] > constant ? 1L : 0L) << i; break;
+         case Opcode.INT_GE:  for (int i = 0; i < count; i++) mask |= (column[first + i] >= constant ? 1L : 0L) << i; break;
+         case Opcode.INT_LT:  for (int i = 0; i < count; i++) mask |= (column[first + i] < constant ? 1L : 0L) << i; break;
+         case Opcode.INT_LE:  for (int i = 0; i < count; i++) mask |= (column[first + i] <= constant ? 1L : 0L) << i; break;
+         case Opcode.INT_NE:  for (int i = 0; i < count; i++) mask |= (column[first + i] != constant ? 1L : 0L) << i; break;
+         default:
+            throw new JiminyException("Unknown opcode: " + opcode);
+      }
+      return mask;
+   }
+
+   static long testScalar(byte opcode, float[] column, float constant, int first, int count) {
+      long mask = 0;
+      switch (opcode) {
+         case Opcode.FLOAT_EQ:  for (int i = 0; i < count; i++) mask |= (column[first + i] == constant ? 1L : 0L) << i; break;
+         case Opcode.FLOAT_GT:  for (int i = 0; i < count; i++) mask |= (Float.compare(column[first + i], constant) > 0 ? 1L : 0L) << i; break;
+         case Opcode.FLOAT_GE:  for (int i = 0; i < count; i++) mask |= (Float.compare(column[first + i], constant) >= 0 ? 1L : 0L) << i; break;
+         case Opcode.FLOAT_LT:  for (int i = 0; i < count; i++) mask |= (Float.compare(column[first + i], constant) < 0 ? 1L : 0L) << i; break;
+         case Opcode.FLOAT_LE:  for (int i = 0; i < count; i++) mask |= (Float.compare(column[first + i], constant) <= 0 ? 1L : 0L) << i; break;
+         case Opcode.FLOAT_NE:  for (int i = 0; i < count; i++) mask |= (column[first + i] != constant ? 1L : 0L) << i; break;
+         default:
+            throw new JiminyException("Unknown opcode: " + opcode);
+      }
+      return mask;
+   }
+
+   public static long test(byte opcode, String[] column, String constant, int first, int count) {
+      long mask = 0;
+      for (int i = 0; i < count; i++)
+         mask |= (Comparisons.test(opcode, column[first + i], constant) ? 1L : 0L) << i;
+      return mask;
+   }
+
+   public static long test(byte opcode, boolean[] column, boolean constant, int first, int count) {
+      long mask = 0;
+      for (int i = 0; i < count; i++)
+         mask |= (Comparisons.test(opcode, column[first + i], constant) ? 1L : 0L) << i;
+      return mask;
+   }
+
+   /**
+    * For the opcodes that don't read a variable.
+    */
+   public static long test(byte opcode, int count) {
+      return Comparisons.test(opcode) ? mask(count) : 0L;
+   }
+
+   /**
+    * Returns a mask with the low count bits set.
+    */
+   public static long mask(int count) {
+      return (count >= 64) ? -1L : (1L << count) - 1;
+   }
+}
@@ -0,0 +1,98 @@
+package org.jiminy.host;
+
+import org.jiminy.JiminyException;
+import org.jiminy.domain.RecordBatch;
+import org.jiminy.domain.ResultMatrix;
+
+/**
+ * Evaluates a CompiledRuleSet against a RecordBatch a column at a time, the way the CUDA
+ * kernel evaluates many nodes at once.  Rows are handled in words of 64: each node's
+ * comparison is applied down its variable's column with ColumnKernels to give a bitmask of
+ * matching rows, and the list's outcome is blended in for the rows that no earlier node of
+ * the list has decided.  Words in which every row is decided are skipped, and a list stops
+ * as soon as all of its rows are.  Strings are compared by their StringDictionary codes.
+ */
+public class ColumnarEvaluator {
+   private final CompiledRuleSet program;
+   private final BatchEvaluator batchEvaluator;
+
+   public ColumnarEvaluator(CompiledRuleSet program) {
+      this.program = program;
+      this.batchEvaluator = new BatchEvaluator(program);
+   }
+
+   public CompiledRuleSet getProgram() {
+      return program;
+   }
+
+   public ResultMatrix evaluate(RecordBatch batch) {
+      ResultMatrix results = new ResultMatrix(batch.getNumRecords(), program.getNumLists());
+      evaluate(batch, results);
+      return results;
+   }
+
+   public void evaluate(RecordBatch batch, ResultMatrix results) {
+      BatchEvaluator.Columns columns = batchEvaluator.bind(batch, results);
+      int numRecords = batch.getNumRecords();
+      int numWords = (numRecords + 63) >>> 6;
+      long[] undecided = new long[numWords];
+      long[] trueRows = new long[numWords];
+
+      for (int list = 0; list < program.getNumLists(); list++) {
+         evaluateList(columns, list, numRecords, undecided, trueRows, results);
+         for (int word = 0; word < numWords; word++)
+            results.setWord(list, word, trueRows[word], ColumnKernels.mask(Math.min(64, numRecords - (word << 6))));
+      }
+   }
+
+   /**
+    * Leaves the rows for which the list is true set in trueRows, and stores the deciding
+    * nodes in the results if they're recorded.
+    */
+   private void evaluateList(BatchEvaluator.Columns columns, int list, int numRecords, long[] undecided, long[] trueRows, ResultMatrix results) {
+      boolean recordDecidingNodes = results.hasDecidingNodes();
+      int numWords = undecided.length;
+      for (int word = 0; word < numWords; word++) {
+         undecided[word] = ColumnKernels.mask(Math.min(64, numRecords - (word << 6)));
+         trueRows[word] = 0;
+      }
+      int numUndecidedWords = numWords;
+
+      int end = program.listOffsets[list + 1];
+      for (int node = program.listOffsets[list]; node < end && numUndecidedWords > 0; node++) {
+         boolean outcome = program.outcomes[node];
+         for (int word = 0; word < numWords; word++) {
+            long open = undecided[word];
+            if (open == 0)
+               continue;
+            int first = word << 6;
+            long hit = test(columns, node, first, Math.min(64, numRecords - first)) & open;
+            if (outcome)
+               trueRows[word] |= hit;
+            if (recordDecidingNodes)
+               for (long rows = hit; rows != 0; rows &= rows - 1)
+                  results.setDecidingNode(first + Long.numberOfTrailingZeros(rows), list, node);
+            open &= ~hit;
+            undecided[word] = open;
+            if (open == 0)
+               numUndecidedWords--;
+         }
+      }
+      if (numUndecidedWords > 0)
+         throw new JiminyException("Decision list lacks default node");
+   }
+
+   private long test(BatchEvaluator.Columns columns, int node, int first, int count) {
+      byte opcode = program.opcodes[node];
+      int slot = program.slots[node];
+      int constant = program.constants[node];
+
+      switch (opcode & Opcode.TYPE_MASK) {
+         case Opcode.INT_TYPE:      return ColumnKernels.test(opcode, columns.intColumns[slot], constant, first, count);
+         case Opcode.FLOAT_TYPE:    return ColumnKernels.test(opcode, columns.floatColumns[slot], Float.intBitsToFloat(constant), first, count);
+         case Opcode.STRING_TYPE:   return ColumnKernels.test(StringDictionary.toIntOpcode(opcode), columns.stringCodes[slot], batchEvaluator.getStringConstantCode(constant), first, count);
+         case Opcode.BOOLEAN_TYPE:  return ColumnKernels.test(opcode, columns.booleanColumns[slot], constant != 0, first, count);
+         default:                   return ColumnKernels.test(opcode, count);
+      }
+   }
+}
@@ -0,0 +1,500 @@
+package org.jiminy.host;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.TreeSet;
+import org.jiminy.JiminyException;
+import org.jiminy.domain.DataType;
+import org.jiminy.domain.RecordBatch;
+import org.jiminy.domain.SymbolTable;
+import org.jiminy.domain.Value;
+
+/**
+ * Input records saved by column, to be read straight out of memory mappings.  The file is
+ * little-endian:
+ *
+ *    header       int magic, int version, int numRecords, int numVariables, int numStrings,
+ *                 int stringDataLength, long (unused)
+ *    stringIndex  int x (numStrings + numVariables + 1), offsets into stringData
+ *    types        byte x numVariables, DataType ordinals
+ *    stringData   UTF-8, the distinct string values in sorted order followed by the
+ *                 variable names
+ *    columns      one per variable in slot order, each starting on an 8 byte boundary:
+ *                 int x numRecords for ints, float x numRecords for floats, byte (0 or 1)
+ *                 x numRecords for booleans, and for strings int x numRecords, the index
+ *                 of each value in the sorted strings
+ *
+ * Each column is mapped separately, so a file can be bigger than one mapping can hold as
+ * long as no single column is.  Since the strings are sorted, their indexes compare the way
+ * the strings do.
+ */
+public class ColumnarRecordFile {
+   public static final int MAGIC = 0x43524D4A; // "JMRC"
+   public static final int VERSION = 1;
+   public static final int HEADER_SIZE = 32;
+
+   private static final int NUM_RECORDS_OFFSET = 8;
+   private static final int NUM_VARIABLES_OFFSET = 12;
+   private static final int NUM_STRINGS_OFFSET = 16;
+   private static final int STRING_DATA_LENGTH_OFFSET = 20;
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   private final int numRecords;
+   private final int numStrings;
+   private final IntBuffer stringIndex;
+   private final ByteBuffer stringData;
+   private final String[] strings;
+   private final String[] variableNames;
+   private final DataType[] variableTypes;
+   private final IntBuffer[] intColumns;
+   private final FloatBuffer[] floatColumns;
+   private final IntBuffer[] stringColumns;
+   private final ByteBuffer[] booleanColumns;
+
+   /**
+    * The index is the file up to the first column.
+    */
+   private ColumnarRecordFile(ByteBuffer index, Layout layout, ByteBuffer[] columns) {
+      index.order(ByteOrder.LITTLE_ENDIAN);
+      numRecords = layout.numRecords;
+      numStrings = layout.numStrings;
+      int numVariables = layout.types.length;
+      stringIndex = slice(index, layout.stringIndex, (numStrings + numVariables + 1L) * 4).asIntBuffer();
+      stringData = slice(index, layout.stringData, layout.stringDataLength);
+      strings = new String[numStrings];
+
+      variableNames = new String[numVariables];
+      variableTypes = layout.types;
+      intColumns = new IntBuffer[numVariables];
+      floatColumns = new FloatBuffer[numVariables];
+      stringColumns = new IntBuffer[numVariables];
+      booleanColumns = new ByteBuffer[numVariables];
+      for (int slot = 0; slot < numVariables; slot++) {
+         variableNames[slot] = readString(numStrings + slot);
+         ByteBuffer column = columns[slot].order(ByteOrder.LITTLE_ENDIAN);
+         switch (variableTypes[slot]) {
+            case BOOLEAN:  booleanColumns[slot] = column; break;
+            case FLOAT:    floatColumns[slot] = column.asFloatBuffer(); break;
+            case INT:      intColumns[slot] = column.asIntBuffer(); break;
+            case STRING:   stringColumns[slot] = column.asIntBuffer(); break;
+            default:
+         }
+      }
+   }
+
+   /**
+    * Maps a record file.  The mappings stay valid after the file is closed, for as long as
+    * the ColumnarRecordFile is reachable.
+    */
+   public static ColumnarRecordFile open(File file) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         FileChannel channel = raf.getChannel();
+         if (channel.size() < HEADER_SIZE)
+            throw new JiminyException("Not a columnar record file: " + file);
+         ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+         long indexSize = Layout.getIndexSize(header.order(ByteOrder.LITTLE_ENDIAN));
+         if (channel.size() < indexSize)
+            throw new JiminyException("Columnar record file is truncated: " + file);
+         ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, indexSize);
+         Layout layout = new Layout(index.order(ByteOrder.LITTLE_ENDIAN));
+         if (channel.size() != layout.size)
+            throw new JiminyException("Columnar record file is " + channel.size() + " bytes, expected " + layout.size);
+
+         ByteBuffer[] columns = new ByteBuffer[layout.types.length];
+         for (int slot = 0; slot < columns.length; slot++)
+            columns[slot] = channel.map(FileChannel.MapMode.READ_ONLY, layout.columns[slot], layout.getColumnSize(slot));
+         return new ColumnarRecordFile(index, layout, columns);
+      } finally {
+         raf.close();
+      }
+   }
+
+   /**
+    * Wraps a record file that's already in memory.
+    */
+   public static ColumnarRecordFile wrap(ByteBuffer buffer) {
+      buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+      if (buffer.limit() < HEADER_SIZE)
+         throw new JiminyException("Not a columnar record file");
+      long indexSize = Layout.getIndexSize(buffer);
+      if (buffer.limit() < indexSize)
+         throw new JiminyException("Columnar record file is truncated");
+      Layout layout = new Layout(buffer);
+      if (buffer.limit() != layout.size)
+         throw new JiminyException("Columnar record file is " + buffer.limit() + " bytes, expected " + layout.size);
+
+      ByteBuffer[] columns = new ByteBuffer[layout.types.length];
+      for (int slot = 0; slot < columns.length; slot++)
+         columns[slot] = slice(buffer, layout.columns[slot], layout.getColumnSize(slot));
+      return new ColumnarRecordFile(slice(buffer, 0, indexSize), layout, columns);
+   }
+
+   /**
+    * Writes the first numRecords records of a batch to a record file, replacing anything
+    * already there.
+    */
+   public static void write(RecordBatch batch, int numRecords, File file) throws IOException {
+      if (numRecords < 0 || numRecords > batch.getNumRecords())
+         throw new JiminyException("Invalid number of records: " + numRecords + " for " + batch);
+
+      // Gather up the distinct strings; the index of each in sorted order is its code
+      TreeSet<String> stringSet = new TreeSet<String>();
+      for (int slot = 0; slot < batch.getNumVariables(); slot++) {
+         if (batch.getType(slot) != DataType.STRING)
+            continue;
+         String[] column = batch.getStringColumn(slot);
+         for (int record = 0; record < numRecords; record++) {
+            if (column[record] == null)
+               throw new JiminyException("Record " + record + " has no value for " + batch.getLayout().getName(slot));
+            stringSet.add(column[record]);
+         }
+      }
+      String[] sortedStrings = stringSet.toArray(new String[stringSet.size()]);
+      byte[][] strings = new byte[sortedStrings.length + batch.getNumVariables()][];
+      int stringDataLength = 0;
+      for (int i = 0; i < strings.length; i++) {
+         String string = (i < sortedStrings.length) ? sortedStrings[i] : batch.getLayout().getName(i - sortedStrings.length);
+         strings[i] = string.getBytes(UTF8);
+         stringDataLength += strings[i].length;
+      }
+      DataType[] types = new DataType[batch.getNumVariables()];
+      for (int slot = 0; slot < types.length; slot++)
+         types[slot] = batch.getType(slot);
+      Layout layout = new Layout(numRecords, sortedStrings.length, stringDataLength, types);
+
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+         raf.setLength(0);
+         FileChannel channel = raf.getChannel();
+
+         ByteBuffer index = ByteBuffer.allocate((int)layout.columnsStart).order(ByteOrder.LITTLE_ENDIAN);
+         index.putInt(MAGIC).putInt(VERSION).putInt(numRecords).putInt(types.length);
+         index.putInt(sortedStrings.length).putInt(stringDataLength).putLong(0);
+         int stringOffset = 0;
+         for (byte[] string : strings) {
+            index.putInt(stringOffset);
+            stringOffset += string.length;
+         }
+         index.putInt(stringOffset);
+         for (DataType type : types)
+            index.put((byte)type.ordinal());
+         for (byte[] string : strings)
+            index.put(string);
+         index.rewind();
+         writeFully(channel, index, 0);
+
+         for (int slot = 0; slot < types.length; slot++)
+            writeColumn(channel, batch, slot, numRecords, sortedStrings, layout.columns[slot]);
+         raf.setLength(layout.size);
+      } finally {
+         raf.close();
+      }
+   }
+
+   public static void write(RecordBatch batch, File file) throws IOException {
+      write(batch, batch.getNumRecords(), file);
+   }
+
+   /**
+    * Writes a column a chunk at a time, so writing doesn't need a second copy of it.
+    */
+   private static void writeColumn(FileChannel channel, RecordBatch batch, int slot, int numRecords, String[] sortedStrings, long offset) throws IOException {
+      final int chunkSize = 1 << 14;
+      ByteBuffer chunk = ByteBuffer.allocate(chunkSize * 4).order(ByteOrder.LITTLE_ENDIAN);
+      DataType type = batch.getType(slot);
+      for (int first = 0; first < numRecords; first += chunkSize) {
+         int last = Math.min(first + chunkSize, numRecords);
+         chunk.clear();
+         switch (type) {
+            case BOOLEAN: {
+               boolean[] column = batch.getBooleanColumn(slot);
+               for (int record = first; record < last; record++)
+                  chunk.put(column[record] ? (byte)1 : (byte)0);
+               break;
+            }
+            case FLOAT: {
+               float[] column = batch.getFloatColumn(slot);
+               for (int record = first; record < last; record++)
+                  chunk.putFloat(column[record]);
+               break;
+            }
+            case INT: {
+               int[] column = batch.getIntColumn(slot);
+               for (int record = first; record < last; record++)
+                  chunk.putInt(column[record]);
+               break;
+            }
+            case STRING: {
+               String[] column = batch.getStringColumn(slot);
+               for (int record = first; record < last; record++)
+                  chunk.putInt(Arrays.binarySearch(sortedStrings, column[record]));
+               break;
+            }
+            default:
+         }
+         chunk.flip();
+         offset += writeFully(channel, chunk, offset);
+      }
+   }
+
+   private static int writeFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+      int length = buffer.remaining();
+      while (buffer.hasRemaining())
+         offset += channel.write(buffer, offset);
+      return length;
+   }
+
+   public int getNumRecords() {
+      return numRecords;
+   }
+
+   public int getNumVariables() {
+      return variableNames.length;
+   }
+
+   public String getVariableName(int slot) {
+      return variableNames[slot];
+   }
+
+   public DataType getVariableType(int slot) {
+      return variableTypes[slot];
+   }
+
+   /**
+    * Returns a symbol table with the file's variables in the file's slots (and default
+    * values), to compile rule sets against and to create batches to read into.
+    */
+   public SymbolTable getLayout() {
+      SymbolTable layout = new SymbolTable(variableNames.length);
+      for (int slot = 0; slot < variableNames.length; slot++)
+         layout.declare(variableNames[slot], variableTypes[slot] == DataType.STRING ? Value.valueOf("") : new Value(variableTypes[slot]));
+      return layout;
+   }
+
+   public int getNumStrings() {
+      return numStrings;
+   }
+
+   /**
+    * Returns the string with the given index in the sorted strings.  Strings are decoded the
+    * first time they're asked for; threads racing to decode the same one just do the work
+    * twice.
+    */
+   public String getString(int index) {
+      String string = strings[index];
+      if (string == null) {
+         string = readString(index);
+         strings[index] = string;
+      }
+      return string;
+   }
+
+   /**
+    * The column views are shared, so use absolute gets or duplicate() them.
+    */
+   public IntBuffer getIntColumn(int slot) {
+      return checkColumn(intColumns[slot], slot, DataType.INT);
+   }
+
+   public FloatBuffer getFloatColumn(int slot) {
+      return checkColumn(floatColumns[slot], slot, DataType.FLOAT);
+   }
+
+   /**
+    * Returns the indexes of a string column's values in the sorted strings.
+    */
+   public IntBuffer getStringColumn(int slot) {
+      return checkColumn(stringColumns[slot], slot, DataType.STRING);
+   }
+
+   public ByteBuffer getBooleanColumn(int slot) {
+      return checkColumn(booleanColumns[slot], slot, DataType.BOOLEAN);
+   }
+
+   /**
+    * Returns a reader that copies the records into batches in order, from the first.  Each
+    * reader has its own position; the file isn't closed by closing one.
+    */
+   public RecordReader newReader() {
+      return new RecordReader() {
+         private int position = 0;
+
+         @Override
+         public int read(RecordBatch batch) {
+            checkLayout(batch);
+            int count = Math.min(batch.getNumRecords(), numRecords - position);
+            for (int slot = 0; slot < variableNames.length; slot++)
+               copyColumn(batch, slot, position, count);
+            position += count;
+            return count;
+         }
+
+         @Override
+         public void close() {
+         }
+      };
+   }
+
+   private void copyColumn(RecordBatch batch, int slot, int first, int count) {
+      switch (variableTypes[slot]) {
+         case BOOLEAN: {
+            boolean[] column = batch.getBooleanColumn(slot);
+            ByteBuffer source = booleanColumns[slot];
+            for (int i = 0; i < count; i++)
+               column[i] = source.get(first + i) != 0;
+            break;
+         }
+         case FLOAT:
+            floatColumns[slot].duplicate().position(first).get(batch.getFloatColumn(slot), 0, count);
+            break;
+         case INT:
+            intColumns[slot].duplicate().position(first).get(batch.getIntColumn(slot), 0, count);
+            break;
+         case STRING: {
+            String[] column = batch.getStringColumn(slot);
+            IntBuffer source = stringColumns[slot];
+            for (int i = 0; i < count; i++)
+               column[i] = getString(source.get(first + i));
+            break;
+         }
+         default:
+      }
+   }
+
+   private void checkLayout(RecordBatch batch) {
+      if (batch.getNumVariables() != variableNames.length)
+         throw new JiminyException("Batch has " + batch.getNumVariables() + " variables, record file has " + variableNames.length);
+      for (int slot = 0; slot < variableNames.length; slot++)
+         if (batch.getType(slot) != variableTypes[slot] || !batch.getLayout().getName(slot).equals(variableNames[slot]))
+            throw new JiminyException("Batch layout doesn't match record file at slot " + slot + ": " + batch.getLayout().getName(slot));
+   }
+
+   private <T> T checkColumn(T column, int slot, DataType type) {
+      if (column == null)
+         throw new JiminyException("Variable " + variableNames[slot] + " has type " + variableTypes[slot] + ", not " + type);
+      return column;
+   }
+
+   private String readString(int index) {
+      int start = stringIndex.get(index);
+      int end = stringIndex.get(index + 1);
+      byte[] bytes = new byte[end - start];
+      for (int i = 0; i < bytes.length; i++)
+         bytes[i] = stringData.get(start + i);
+      return new String(bytes, UTF8);
+   }
+
+   private static ByteBuffer slice(ByteBuffer buffer, long offset, long length) {
+      ByteBuffer view = buffer.duplicate();
+      view.position((int)offset);
+      view.limit((int)(offset + length));
+      return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+   }
+
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("{").append(this.getClass().getSimpleName()).append(": ");
+      sb.append("records: ").append(numRecords);
+      sb.append("; variables: ").append(getNumVariables());
+      sb.append("; strings: ").append(numStrings);
+      sb.append("}");
+
+      return sb.toString();
+   }
+
+   /**
+    * Where each section starts, given the counts from the header and the variables' types.
+    */
+   private static class Layout {
+      final int numRecords;
+      final int numStrings;
+      final int stringDataLength;
+      final DataType[] types;
+      final long stringIndex;
+      final long typesOffset;
+      final long stringData;
+      final long columnsStart;
+      final long[] columns;
+      final long size;
+
+      /**
+       * Reads the layout from the start of a file, which must hold at least getIndexSize()
+       * bytes.
+       */
+      Layout(ByteBuffer index) {
+         this(index.getInt(NUM_RECORDS_OFFSET), index.getInt(NUM_STRINGS_OFFSET), index.getInt(STRING_DATA_LENGTH_OFFSET),
+               readTypes(index));
+      }
+
+      Layout(int numRecords, int numStrings, int stringDataLength, DataType[] types) {
+         if (numRecords < 0 || numStrings < 0 || stringDataLength < 0)
+            throw new JiminyException("Invalid columnar record file header");
+         this.numRecords = numRecords;
+         this.numStrings = numStrings;
+         this.stringDataLength = stringDataLength;
+         this.types = types;
+         stringIndex = HEADER_SIZE;
+         typesOffset = stringIndex + (numStrings + types.length + 1L) * 4;
+         stringData = typesOffset + types.length;
+         columnsStart = align(stringData + stringDataLength);
+         if (columnsStart > Integer.MAX_VALUE)
+            throw new JiminyException("Columnar record file index too large: " + columnsStart + " bytes");
+
+         columns = new long[types.length];
+         long offset = columnsStart;
+         for (int slot = 0; slot < types.length; slot++) {
+            columns[slot] = offset;
+            offset = align(offset + getColumnSize(slot));
+         }
+         size = offset;
+      }
+
+      long getColumnSize(int slot) {
+         return (long)numRecords * ((types[slot] == DataType.BOOLEAN) ? 1 : 4);
+      }
+
+      /**
+       * Returns the size of everything before the columns, from the header.
+       */
+      static long getIndexSize(ByteBuffer header) {
+         if (header.getInt(0) != MAGIC)
+            throw new JiminyException("Not a columnar record file");
+         if (header.getInt(4) != VERSION)
+            throw new JiminyException("Unsupported columnar record file version: " + header.getInt(4));
+         int numVariables = header.getInt(NUM_VARIABLES_OFFSET);
+         int numStrings = header.getInt(NUM_STRINGS_OFFSET);
+         int stringDataLength = header.getInt(STRING_DATA_LENGTH_OFFSET);
+         if (numVariables < 0 || numStrings < 0 || stringDataLength < 0)
+            throw new JiminyException("Invalid columnar record file header");
+         return align(HEADER_SIZE + (numStrings + numVariables + 1L) * 4 + numVariables + stringDataLength);
+      }
+
+      private static DataType[] readTypes(ByteBuffer index) {
+         int numVariables = index.getInt(NUM_VARIABLES_OFFSET);
+         long typesOffset = HEADER_SIZE + (index.getInt(NUM_STRINGS_OFFSET) + numVariables + 1L) * 4;
+         DataType[] types = new DataType[numVariables];
+         for (int slot = 0; slot < numVariables; slot++) {
+            int type = index.get((int)typesOffset + slot);
+            if (type < 0 || type >= DataType.values().length)
+               throw new JiminyException("Invalid type for slot " + slot + ": " + type);
+            types[slot] = DataType.values()[type];
+         }
+         return types;
+      }
+
+      private static long align(long offset) {
+         return (offset + 7) & ~7L;
+      }
+   }
+}
@@ -0,0 +1,78 @@
+package org.jiminy.host;
+
+import org.jiminy.JiminyException;
+
+/**
+ * The comparison semantics shared by the evaluators of a CompiledRuleSet, one method per
+ * operand type.  These follow Value.equals() and Value.compare(), i.e. floats use == for
+ * equality but Float.compare() for ordering, and true is greater than false.
+ */
+public final class Comparisons {
+   private Comparisons() {}
+
+   public static boolean test(byte opcode, int value, int constant) {
+      switch (opcode) {
+         case Opcode.INT_EQ:        return value == constant;
+         case Opcode.INT_GT:        return value > constant;
+         case Opcode.INT_GE:        return value >= constant;
+         case Opcode.INT_LT:        return value < constant;
+         case Opcode.INT_LE:        return value <= constant;
+         case Opcode.INT_NE:        return value != constant;
+         default:
+            throw new JiminyException("Unknown opcode: " + opcode);
+      }
+   }
+
+   public static boolean test(byte opcode, float value, float constant) {
+      switch (opcode) {
+         case Opcode.FLOAT_EQ:      return value == constant;
+         case Opcode.FLOAT_GT:      return Float.compare(value, constant) > 0;
+         case Opcode.FLOAT_GE:      return Float.compare(value, constant) >= 0;
+         case Opcode.FLOAT_LT:      return Float.compare(value, constant) < 0;
+         case Opcode.FLOAT_LE:      return Float.compare(value, constant) <= 0;
+         case Opcode.FLOAT_NE:      return value != constant;
+         default:
+            throw new JiminyException("Unknown opcode: " + opcode);
+      }
+   }
+
+   public static boolean test(byte opcode, String value, String constant) {
+      switch (opcode) {
+         case Opcode.STRING_EQ:     return value.equals(constant);
+         case Opcode.STRING_GT:     return value.compareTo(constant) > 0;
+         case Opcode.STRING_GE:     return value.compareTo(constant) >= 0;
+         case Opcode.STRING_LT:     return value.compareTo(constant) < 0;
+         case Opcode.STRING_LE:     return value.compareTo(constant) <= 0;
+         case Opcode.STRING_NE:     return !value.equals(constant);
+         default:
+            throw new JiminyException("Unknown opcode: " + opcode);
+      }
+   }
+
+   public static boolean test(byte opcode, boolean value, boolean constant) {
+      switch (opcode) {
+         case Opcode.BOOLEAN_EQ:    return value == constant;
+         case Opcode.BOOLEAN_GT:    return value && !constant;
+         case Opcode.BOOLEAN_GE:    return value || !constant;
+         case Opcode.BOOLEAN_LT:    return !value && constant;
+         case Opcode.BOOLEAN_LE:    return !value || constant;
+         case Opcode.BOOLEAN_AND:   return value && constant;
+         case Opcode.BOOLEAN_OR:    return value || constant;
+         case Opcode.BOOLEAN_NE:    return value != constant;
+         default:
+            throw new JiminyException("Unknown opcode: " + opcode);
+      }
+   }
+
+   /**
+    * For the opcodes that don't read a variable.
+    */
+   public static boolean test(byte opcode) {
+      switch (opcode) {
+         case Opcode.ALWAYS:        return true;
+         case Opcode.NEVER:         return false;
+         default:
+            throw new JiminyException("Unknown opcode: " + opcode);
+      }
+   }
+}
@@ -0,0 +1,115 @@
+package org.jiminy.host;
+
+import org.jiminy.JiminyException;
+import org.jiminy.domain.DataType;
+import org.jiminy.domain.SymbolTable;
+
+/**
+ * A set of decision lists lowered into flat primitive arrays.  Node i of decision list l
+ * lives at index listOffsets[l] + i of the node arrays; listOffsets has one extra entry
+ * so that the nodes of list l always end at listOffsets[l+1].
+ *
+ * For each node we keep the opcode, the slot of the variable being tested (-1 if the node
+ * doesn't read a variable), the constant it is compared against and the value the list
+ * takes if the node's condition is true.  Int and boolean constants are stored directly,
+ * floats as their raw int bits, and strings as an index into stringConstants.
+ */
+public class CompiledRuleSet {
+   final int[] listOffsets;
+   final byte[] opcodes;
+   final int[] slots;
+   final int[] constants;
+   final boolean[] outcomes;
+   final String[] stringConstants;
+   final String[] variableNames;
+   final DataType[] variableTypes;
+
+   CompiledRuleSet(int[] listOffsets, byte[] opcodes, int[] slots, int[] constants, boolean[] outcomes,
+         String[] stringConstants, String[] variableNames, DataType[] variableTypes) {
+      this.listOffsets = listOffsets;
+      this.opcodes = opcodes;
+      this.slots = slots;
+      this.constants = constants;
+      this.outcomes = outcomes;
+      this.stringConstants = stringConstants;
+      this.variableNames = variableNames;
+      this.variableTypes = variableTypes;
+   }
+
+   public int getNumLists() {
+      return listOffsets.length - 1;
+   }
+
+   public int getNumNodes() {
+      return opcodes.length;
+   }
+
+   public int getNumVariables() {
+      return variableNames.length;
+   }
+
+   public int getListOffset(int list) {
+      return listOffsets[list];
+   }
+
+   public int getListLength(int list) {
+      return listOffsets[list + 1] - listOffsets[list];
+   }
+
+   public byte getOpcode(int node) {
+      return opcodes[node];
+   }
+
+   public int getSlot(int node) {
+      return slots[node];
+   }
+
+   public int getConstant(int node) {
+      return constants[node];
+   }
+
+   public String getStringConstant(int node) {
+      return stringConstants[constants[node]];
+   }
+
+   public boolean getOutcome(int node) {
+      return outcomes[node];
+   }
+
+   public String getVariableName(int slot) {
+      return variableNames[slot];
+   }
+
+   public DataType getVariableType(int slot) {
+      return variableTypes[slot];
+   }
+
+   /**
+    * Throws if the given symbol table doesn't have the slots this program was compiled
+    * against.  Tables with extra variables declared after the program's are fine.
+    */
+   public void checkLayout(SymbolTable symbolTable) {
+      if (symbolTable == null)
+         throw new JiminyException("No symbol table!");
+      if (symbolTable.size() < variableNames.length)
+         throw new JiminyException("Symbol table has " + symbolTable.size() + " variables, program expects " + variableNames.length);
+
+      for (int slot = 0; slot < variableNames.length; slot++) {
+         if (!variableNames[slot].equals(symbolTable.getName(slot)) || variableTypes[slot] != symbolTable.getType(slot))
+            throw new JiminyException("Symbol table layout doesn't match program at slot " + slot + ": " + symbolTable.getName(slot));
+      }
+   }
+
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+      
+      sb.append("{").append(this.getClass().getSimpleName()).append(": ");
+      sb.append("lists: ").append(getNumLists());
+      sb.append("; nodes: ").append(getNumNodes());
+      sb.append("; variables: ").append(getNumVariables());
+      sb.append("; string constants: ").append(stringConstants.length);
+      sb.append("}");
+      
+      return sb.toString();
+   }
+}
@@ -0,0 +1,150 @@
+package org.jiminy.host;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import org.jiminy.JiminyException;
+import org.jiminy.domain.RecordBatch;
+import org.jiminy.domain.SymbolTable;
+
+/**
+ * Reads records from delimited text, one record per line.  The first line names the
+ * variables, and every variable of the layout must be named exactly once; the columns can
+ * be in any order.  Ints and floats are in Java's syntax, booleans are T or F (or true or
+ * false) and strings are taken as they are, so they can't contain the delimiter.
+ */
+public class DelimitedRecordReader implements RecordReader {
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   private final BufferedReader reader;
+   private final SymbolTable layout;
+   private final char delimiter;
+   private final int[] columnSlots;
+   private final String[] fields;
+   private long lineNumber = 0;
+
+   public DelimitedRecordReader(File file, SymbolTable layout) throws IOException {
+      this(new FileInputStream(file), layout, ',');
+   }
+
+   public DelimitedRecordReader(InputStream in, SymbolTable layout, char delimiter) throws IOException {
+      this.reader = new BufferedReader(new InputStreamReader(in, UTF8), 1 << 16);
+      this.layout = layout;
+      this.delimiter = delimiter;
+      this.fields = new String[layout.size()];
+
+      String header = readLine();
+      if (header == null)
+         throw new JiminyException("Input has no header");
+      if (split(header) != layout.size())
+         throw new JiminyException("Header names " + countFields(header) + " variables, expected " + layout.size());
+      columnSlots = new int[layout.size()];
+      boolean[] seen = new boolean[layout.size()];
+      for (int column = 0; column < columnSlots.length; column++) {
+         int slot = layout.getSlot(fields[column]);
+         if (slot < 0)
+            throw new JiminyException("Unknown variable in header: " + fields[column]);
+         if (seen[slot])
+            throw new JiminyException("Variable named twice in header: " + fields[column]);
+         seen[slot] = true;
+         columnSlots[column] = slot;
+      }
+   }
+
+   public SymbolTable getLayout() {
+      return layout;
+   }
+
+   @Override
+   public int read(RecordBatch batch) throws IOException {
+      checkLayout(batch);
+      int record = 0;
+      while (record < batch.getNumRecords()) {
+         String line = readLine();
+         if (line == null)
+            break;
+         if (line.isEmpty())
+            continue;
+         if (split(line) != fields.length)
+            throw new JiminyException("Line " + lineNumber + " has " + countFields(line) + " fields, expected " + fields.length);
+         for (int column = 0; column < fields.length; column++)
+            setField(batch, record, columnSlots[column], fields[column]);
+         record++;
+      }
+      return record;
+   }
+
+   private void checkLayout(RecordBatch batch) {
+      if (batch.getNumVariables() != layout.size())
+         throw new JiminyException("Batch doesn't have the reader's layout: " + batch);
+      for (int slot = 0; slot < layout.size(); slot++)
+         if (batch.getType(slot) != layout.getType(slot) || !batch.getLayout().getName(slot).equals(layout.getName(slot)))
+            throw new JiminyException("Batch layout doesn't match reader at slot " + slot + ": " + batch.getLayout().getName(slot));
+   }
+
+   private void setField(RecordBatch batch, int record, int slot, String field) {
+      try {
+         switch (layout.getType(slot)) {
+            case BOOLEAN:  batch.getBooleanColumn(slot)[record] = parseBoolean(field); break;
+            case FLOAT:    batch.getFloatColumn(slot)[record] = Float.parseFloat(field); break;
+            case INT:      batch.getIntColumn(slot)[record] = Integer.parseInt(field); break;
+            case STRING:   batch.getStringColumn(slot)[record] = field; break;
+            default:
+         }
+      } catch (NumberFormatException e) {
+         throw new JiminyException("Line " + lineNumber + ": bad " + layout.getType(slot) + " for " + layout.getName(slot) + ": " + field, e);
+      }
+   }
+
+   private boolean parseBoolean(String field) {
+      if (field.equals("T") || field.equalsIgnoreCase("true"))
+         return true;
+      if (field.equals("F") || field.equalsIgnoreCase("false"))
+         return false;
+      throw new NumberFormatException(field);
+   }
+
+   /**
+    * Splits a line into fields and returns how many there were, storing at most
+    * fields.length of them.
+    */
+   private int split(String line) {
+      int count = 0;
+      int start = 0;
+      while (true) {
+         int end = line.indexOf(delimiter, start);
+         if (end < 0)
+            end = line.length();
+         if (count < fields.length)
+            fields[count] = line.substring(start, end);
+         count++;
+         if (end == line.length())
+            return count;
+         start = end + 1;
+      }
+   }
+
+   private int countFields(String line) {
+      int count = 1;
+      for (int i = 0; i < line.length(); i++)
+         if (line.charAt(i) == delimiter)
+            count++;
+      return count;
+   }
+
+   private String readLine() throws IOException {
+      String line = reader.readLine();
+      if (line != null)
+         lineNumber++;
+      return line;
+   }
+
+   @Override
+   public void close() throws IOException {
+      reader.close();
+   }
+}
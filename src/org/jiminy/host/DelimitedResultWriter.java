@@ -0,0 +1,43 @@
+package org.jiminy.host;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.jiminy.domain.ResultMatrix;
+
+/**
+ * Writes results as text, one line per record holding a T or F for each list in order.
+ */
+public class DelimitedResultWriter implements ResultWriter {
+   private final OutputStream out;
+   private byte[] line = new byte[0];
+
+   public DelimitedResultWriter(File file) throws IOException {
+      this(new FileOutputStream(file));
+   }
+
+   public DelimitedResultWriter(OutputStream out) {
+      this.out = new BufferedOutputStream(out, 1 << 16);
+   }
+
+   @Override
+   public void write(ResultMatrix results, int numRecords) throws IOException {
+      int numLists = results.getNumLists();
+      if (line.length != numLists + 1) {
+         line = new byte[numLists + 1];
+         line[numLists] = '\n';
+      }
+      for (int record = 0; record < numRecords; record++) {
+         for (int list = 0; list < numLists; list++)
+            line[list] = results.get(record, list) ? (byte)'T' : (byte)'F';
+         out.write(line);
+      }
+   }
+
+   @Override
+   public void close() throws IOException {
+      out.close();
+   }
+}
@@ -0,0 +1,87 @@
+package org.jiminy.host;
+
+import java.util.Arrays;
+
+/**
+ * For each variable of a CompiledRuleSet, the decision lists that read it.  Stored like the
+ * program's own node arrays: the lists reading slot s are lists[slotOffsets[s]] up to (but
+ * not including) lists[slotOffsets[s+1]], in increasing order and each list once.
+ */
+public class DependencyIndex {
+   private final int[] slotOffsets;
+   private final int[] lists;
+
+   public DependencyIndex(CompiledRuleSet program) {
+      int numVariables = program.getNumVariables();
+      int numLists = program.getNumLists();
+
+      // lastList[s] is the last list we counted for slot s, so a list that tests the same
+      // variable twice is only counted once.  Lists are visited in order, so one pass to
+      // count and one to fill give each slot's lists in increasing order.
+      int[] lastList = new int[numVariables];
+      int[] counts = new int[numVariables + 1];
+      Arrays.fill(lastList, -1);
+      for (int list = 0; list < numLists; list++) {
+         for (int node = program.listOffsets[list]; node < program.listOffsets[list + 1]; node++) {
+            int slot = program.slots[node];
+            if (slot >= 0 && lastList[slot] != list) {
+               lastList[slot] = list;
+               counts[slot + 1]++;
+            }
+         }
+      }
+
+      slotOffsets = new int[numVariables + 1];
+      for (int slot = 0; slot < numVariables; slot++)
+         slotOffsets[slot + 1] = slotOffsets[slot] + counts[slot + 1];
+
+      lists = new int[slotOffsets[numVariables]];
+      int[] next = Arrays.copyOf(slotOffsets, numVariables);
+      Arrays.fill(lastList, -1);
+      for (int list = 0; list < numLists; list++) {
+         for (int node = program.listOffsets[list]; node < program.listOffsets[list + 1]; node++) {
+            int slot = program.slots[node];
+            if (slot >= 0 && lastList[slot] != list) {
+               lastList[slot] = list;
+               lists[next[slot]++] = list;
+            }
+         }
+      }
+   }
+
+   public int getNumVariables() {
+      return slotOffsets.length - 1;
+   }
+
+   /**
+    * Returns how many lists read the variable in the given slot.
+    */
+   public int getNumDependents(int slot) {
+      return slotOffsets[slot + 1] - slotOffsets[slot];
+   }
+
+   /**
+    * Returns the i'th list (in increasing order) that reads the variable in the given slot.
+    */
+   public int getDependent(int slot, int i) {
+      return lists[slotOffsets[slot] + i];
+   }
+
+   /**
+    * Returns a copy of the lists that read the variable in the given slot.
+    */
+   public int[] getDependents(int slot) {
+      return Arrays.copyOfRange(lists, slotOffsets[slot], slotOffsets[slot + 1]);
+   }
+
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+      
+      sb.append("{").append(this.getClass().getSimpleName()).append(": ");
+      sb.append("variables: ").append(getNumVariables());
+      sb.append("; dependencies: ").append(lists.length);
+      sb.append("}");
+      
+      return sb.toString();
+   }
+}
@@ -0,0 +1,176 @@
+package org.jiminy.host;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.jiminy.JiminyException;
+import org.jiminy.domain.SymbolTable;
+import org.jiminy.domain.Value;
+
+/**
+ * Keeps the result of every list in a CompiledRuleSet up to date as variables change.  An
+ * update sets the new values in the symbol table and re-evaluates only the lists that read
+ * one of the changed variables (from a DependencyIndex), so its cost depends on how many
+ * lists the change touches rather than on the size of the rule set.
+ *
+ * All changes to the symbol table have to go through update(); if it's changed behind our
+ * back, refresh() re-evaluates everything.  Not thread-safe.
+ */
+public class IncrementalEvaluator {
+   private final CompiledRuleSet program;
+   private final DependencyIndex index;
+   private final SymbolTable symbolTable;
+   private final Interpreter interpreter;
+   private final boolean[] results;
+   private final int[] affected;
+   private final int[] marks;
+   private int epoch = 0;
+   private int numEvaluated = 0;
+
+   public IncrementalEvaluator(CompiledRuleSet program, SymbolTable symbolTable) {
+      this(program, new DependencyIndex(program), symbolTable);
+   }
+
+   public IncrementalEvaluator(CompiledRuleSet program, DependencyIndex index, SymbolTable symbolTable) {
+      if (index.getNumVariables() != program.getNumVariables())
+         throw new JiminyException("Dependency index has " + index.getNumVariables() + " variables, program has " + program.getNumVariables());
+      this.program = program;
+      this.index = index;
+      this.symbolTable = symbolTable;
+      this.interpreter = new Interpreter(program);
+      interpreter.bind(symbolTable);
+      this.results = new boolean[program.getNumLists()];
+      this.affected = new int[program.getNumLists()];
+      this.marks = new int[program.getNumLists()];
+      refresh();
+   }
+
+   public CompiledRuleSet getProgram() {
+      return program;
+   }
+
+   public DependencyIndex getIndex() {
+      return index;
+   }
+
+   public SymbolTable getSymbolTable() {
+      return symbolTable;
+   }
+
+   public boolean getResult(int list) {
+      return results[list];
+   }
+
+   /**
+    * Copies the current result of every list into results.
+    */
+   public void getResults(boolean[] results) {
+      System.arraycopy(this.results, 0, results, 0, this.results.length);
+   }
+
+   /**
+    * Returns how many lists the last update (or refresh) evaluated.
+    */
+   public int getNumEvaluated() {
+      return numEvaluated;
+   }
+
+   /**
+    * Re-evaluates every list.
+    */
+   public void refresh() {
+      interpreter.evaluateAll(results);
+      numEvaluated = results.length;
+   }
+
+   /**
+    * Sets one variable and returns the lists whose result changed, in increasing order.
+    * Their results have flipped, so the new result of each is the opposite of the old one.
+    */
+   public int[] update(int slot, Value value) {
+      return update(new int[] { slot }, new Value[] { value });
+   }
+
+   public int[] update(HashMap<String,Value> changes) {
+      int[] slots = new int[changes.size()];
+      Value[] values = new Value[changes.size()];
+      int i = 0;
+      for (Map.Entry<String,Value> change : changes.entrySet()) {
+         slots[i] = symbolTable.resolve(change.getKey());
+         values[i++] = change.getValue();
+      }
+      return update(slots, values);
+   }
+
+   /**
+    * Sets slots[i] to values[i] for every i, then re-evaluates the lists that read any
+    * variable whose value actually changed.  Returns the lists whose result changed, in
+    * increasing order.  If any change is invalid, none of them is made.
+    */
+   public int[] update(int[] slots, Value[] values) {
+      if (slots.length != values.length)
+         throw new JiminyException("Got " + slots.length + " slots but " + values.length + " values");
+      for (int i = 0; i < slots.length; i++)
+         symbolTable.checkValue(slots[i], values[i]);
+      nextEpoch();
+
+      // Collect each list that reads a changed variable once
+      int numAffected = 0;
+      for (int i = 0; i < slots.length; i++) {
+         int slot = slots[i];
+         if (isUnchanged(slot, values[i]))
+            continue;
+         symbolTable.setValue(slot, values[i]);
+         if (slot >= index.getNumVariables())
+            continue; // declared after the program was compiled, so nothing reads it
+         for (int j = 0; j < index.getNumDependents(slot); j++) {
+            int list = index.getDependent(slot, j);
+            if (marks[list] != epoch) {
+               marks[list] = epoch;
+               affected[numAffected++] = list;
+            }
+         }
+      }
+
+      // Re-evaluate them, keeping the ones that flipped at the front of affected
+      int numChanged = 0;
+      for (int i = 0; i < numAffected; i++) {
+         int list = affected[i];
+         boolean result = interpreter.evaluate(list);
+         if (result != results[list]) {
+            results[list] = result;
+            affected[numChanged++] = list;
+         }
+      }
+      numEvaluated = numAffected;
+
+      int[] changed = Arrays.copyOf(affected, numChanged);
+      Arrays.sort(changed);
+      return changed;
+   }
+
+   /**
+    * True if the variable already has exactly this value, which has been checked against
+    * the variable's type.  Floats are compared by their bits, since 0.0 and -0.0 are equal
+    * but don't order the same way.
+    */
+   private boolean isUnchanged(int slot, Value value) {
+      switch (value.getType()) {
+         case BOOLEAN:  return symbolTable.getBooleanValue(slot) == value.getBooleanValue();
+         case FLOAT:    return Float.floatToIntBits(symbolTable.getFloatValue(slot)) == Float.floatToIntBits(value.getFloatValue());
+         case INT:      return symbolTable.getIntValue(slot) == value.getIntValue();
+         case STRING: {
+            String string = value.getStringValue();
+            return (string == null) ? symbolTable.getStringValue(slot) == null : string.equals(symbolTable.getStringValue(slot));
+         }
+         default:       return false;
+      }
+   }
+
+   private void nextEpoch() {
+      if (++epoch == Integer.MAX_VALUE) {
+         Arrays.fill(marks, 0);
+         epoch = 1;
+      }
+   }
+}
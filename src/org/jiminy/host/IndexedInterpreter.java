@@ -0,0 +1,71 @@
+package org.jiminy.host;
+
+import org.jiminy.JiminyException;
+import org.jiminy.domain.SymbolTable;
+
+/**
+ * Evaluates a CompiledRuleSet through a PredicateIndex: every predicate is decided up
+ * front, variable by variable, and walking the lists is then just testing bits.  The up
+ * front work grows with the number of variables (plus a pass over the bitset), not with
+ * the number of nodes.
+ */
+public class IndexedInterpreter {
+   private final CompiledRuleSet program;
+   private final PredicateIndex index;
+   private final int[] nodeBits;
+   private final long[] satisfied;
+   private SymbolTable symbolTable = null;
+
+   public IndexedInterpreter(CompiledRuleSet program) {
+      this(new PredicateIndex(program));
+   }
+
+   public IndexedInterpreter(PredicateIndex index) {
+      this.program = index.getProgram();
+      this.index = index;
+      this.nodeBits = index.getNodeBits();
+      this.satisfied = new long[index.getNumWords()];
+   }
+
+   public CompiledRuleSet getProgram() {
+      return program;
+   }
+
+   public PredicateIndex getIndex() {
+      return index;
+   }
+
+   /**
+    * Binds the interpreter to the table the program reads its variables from, as
+    * Interpreter.bind() does.
+    */
+   public void bind(SymbolTable symbolTable) {
+      program.checkLayout(symbolTable);
+      this.symbolTable = symbolTable;
+   }
+
+   /**
+    * Evaluates every list in the program, storing the result for list l in results[l].
+    */
+   public void evaluateAll(boolean[] results) {
+      if (symbolTable == null)
+         throw new JiminyException("Interpreter is not bound to a symbol table");
+      if (results.length < program.getNumLists())
+         throw new JiminyException("Results array is too small: " + results.length + " < " + program.getNumLists());
+
+      index.evaluate(symbolTable, satisfied);
+      for (int list = 0; list < program.getNumLists(); list++)
+         results[list] = evaluateList(list);
+   }
+
+   private boolean evaluateList(int list) {
+      int end = program.listOffsets[list + 1];
+      for (int node = program.listOffsets[list]; node < end; node++) {
+         int reference = nodeBits[node];
+         int bit = reference >>> 1;
+         if (((satisfied[bit >>> 6] & (1L << bit)) != 0) != ((reference & 1) != 0))
+            return program.outcomes[node];
+      }
+      throw new JiminyException("Decision list lacks default node");
+   }
+}
@@ -0,0 +1,85 @@
+package org.jiminy.host;
+
+import org.jiminy.JiminyException;
+import org.jiminy.domain.SymbolTable;
+
+/**
+ * Evaluates a CompiledRuleSet against a symbol table.  The program's variables were resolved
+ * to slots when it was compiled, so evaluating a list is a loop over the node arrays that
+ * reads values by slot, does no lookups and allocates nothing.
+ */
+public class Interpreter {
+   private final CompiledRuleSet program;
+   private SymbolTable symbolTable = null;
+   private RuleProfile profile = null;
+
+   public Interpreter(CompiledRuleSet program) {
+      this.program = program;
+   }
+
+   public CompiledRuleSet getProgram() {
+      return program;
+   }
+
+   /**
+    * Binds the interpreter to the table the program reads its variables from.  The table
+    * must have the same slots as the one the program was compiled against; values can be
+    * changed afterwards without binding again.
+    */
+   public void bind(SymbolTable symbolTable) {
+      program.checkLayout(symbolTable);
+      this.symbolTable = symbolTable;
+   }
+
+   /**
+    * Records which node decides each list evaluated from now on, or stops recording if
+    * profile is null.
+    */
+   public void setProfile(RuleProfile profile) {
+      this.profile = profile;
+   }
+
+   public boolean evaluate(int list) {
+      if (symbolTable == null)
+         throw new JiminyException("Interpreter is not bound to a symbol table");
+      return evaluateList(list);
+   }
+
+   /**
+    * Evaluates every list in the program, storing the result for list l in results[l].
+    */
+   public void evaluateAll(boolean[] results) {
+      if (symbolTable == null)
+         throw new JiminyException("Interpreter is not bound to a symbol table");
+      if (results.length < program.getNumLists())
+         throw new JiminyException("Results array is too small: " + results.length + " < " + program.getNumLists());
+
+      for (int list = 0; list < program.getNumLists(); list++)
+         results[list] = evaluateList(list);
+   }
+
+   private boolean evaluateList(int list) {
+      int end = program.listOffsets[list + 1];
+      for (int node = program.listOffsets[list]; node < end; node++)
+         if (test(node)) {
+            if (profile != null)
+               profile.record(node);
+            return program.outcomes[node];
+         }
+      throw new JiminyException("Decision list lacks default node");
+   }
+
+   private boolean test(int node) {
+      byte opcode = program.opcodes[node];
+      int slot = program.slots[node];
+      int constant = program.constants[node];
+
+      switch (opcode & Opcode.TYPE_MASK) {
+         case Opcode.INT_TYPE:      return Comparisons.test(opcode, symbolTable.getIntValue(slot), constant);
+         case Opcode.FLOAT_TYPE:    return Comparisons.test(opcode, symbolTable.getFloatValue(slot), Float.intBitsToFloat(constant));
+         case Opcode.STRING_TYPE:   return Comparisons.test(opcode, symbolTable.getStringValue(slot), program.stringConstants[constant]);
+         case Opcode.BOOLEAN_TYPE:  return Comparisons.test(opcode, symbolTable.getBooleanValue(slot), constant != 0);
+         default:                   return Comparisons.test(opcode);
+      }
+   }
+}
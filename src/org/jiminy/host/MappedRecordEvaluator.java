@@ -0,0 +1,117 @@
+package org.jiminy.host;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import org.jiminy.JiminyException;
+import org.jiminy.domain.DataType;
+import org.jiminy.domain.ResultMatrix;
+
+/**
+ * Evaluates a CompiledRuleSet against the records of a ColumnarRecordFile, reading values
+ * straight out of the file's column buffers: no batch is filled and no Value or String is
+ * created per record.  String values are compared by their codes in a StringDictionary of
+ * the program's constants, looked up once per distinct string in the file.
+ *
+ * Like BatchEvaluator, the lists are evaluated one at a time across the records.  The
+ * evaluator only reads shared state, so threads can evaluate different ranges of records
+ * at once.
+ */
+public class MappedRecordEvaluator {
+   private final CompiledRuleSet program;
+   private final ColumnarRecordFile records;
+   private final int[] stringConstantCodes;
+   private final int[] stringCodes;
+   private final IntBuffer[] intColumns;
+   private final FloatBuffer[] floatColumns;
+   private final IntBuffer[] stringColumns;
+   private final ByteBuffer[] booleanColumns;
+
+   public MappedRecordEvaluator(CompiledRuleSet program, ColumnarRecordFile records) {
+      program.checkLayout(records.getLayout());
+      this.program = program;
+      this.records = records;
+
+      StringDictionary dictionary = new StringDictionary(program);
+      stringConstantCodes = new int[program.stringConstants.length];
+      dictionary.encode(program.stringConstants, stringConstantCodes.length, stringConstantCodes);
+      stringCodes = new int[records.getNumStrings()];
+      for (int i = 0; i < stringCodes.length; i++)
+         stringCodes[i] = dictionary.getCode(records.getString(i));
+
+      int numVariables = program.getNumVariables();
+      intColumns = new IntBuffer[numVariables];
+      floatColumns = new FloatBuffer[numVariables];
+      stringColumns = new IntBuffer[numVariables];
+      booleanColumns = new ByteBuffer[numVariables];
+      for (int slot = 0; slot < numVariables; slot++) {
+         DataType type = records.getVariableType(slot);
+         if (type == DataType.INT)
+            intColumns[slot] = records.getIntColumn(slot);
+         else if (type == DataType.FLOAT)
+            floatColumns[slot] = records.getFloatColumn(slot);
+         else if (type == DataType.STRING)
+            stringColumns[slot] = records.getStringColumn(slot);
+         else if (type == DataType.BOOLEAN)
+            booleanColumns[slot] = records.getBooleanColumn(slot);
+      }
+   }
+
+   public CompiledRuleSet getProgram() {
+      return program;
+   }
+
+   public ColumnarRecordFile getRecords() {
+      return records;
+   }
+
+   public ResultMatrix evaluate() {
+      ResultMatrix results = new ResultMatrix(records.getNumRecords(), program.getNumLists());
+      evaluate(0, records.getNumRecords(), results);
+      return results;
+   }
+
+   /**
+    * Evaluates records [firstRecord, firstRecord + numRecords), storing the results for
+    * record r in row r - firstRecord of the matrix.
+    */
+   public void evaluate(int firstRecord, int numRecords, ResultMatrix results) {
+      if (firstRecord < 0 || numRecords < 0 || firstRecord + numRecords > records.getNumRecords())
+         throw new JiminyException("Invalid record range: " + firstRecord + " + " + numRecords + " for " + records);
+      if (results.getNumRecords() < numRecords || results.getNumLists() < program.getNumLists())
+         throw new JiminyException("Result matrix is too small: " + results + " for " + numRecords + " records and " + program.getNumLists() + " lists");
+
+      for (int list = 0; list < program.getNumLists(); list++) {
+         int start = program.listOffsets[list];
+         int end = program.listOffsets[list + 1];
+         for (int record = 0; record < numRecords; record++) {
+            int node = evaluateList(start, end, firstRecord + record);
+            results.set(record, list, program.outcomes[node], node);
+         }
+      }
+   }
+
+   /**
+    * Returns the node that decides the list.
+    */
+   private int evaluateList(int start, int end, int record) {
+      for (int node = start; node < end; node++)
+         if (test(node, record))
+            return node;
+      throw new JiminyException("Decision list lacks default node");
+   }
+
+   private boolean test(int node, int record) {
+      byte opcode = program.opcodes[node];
+      int slot = program.slots[node];
+      int constant = program.constants[node];
+
+      switch (opcode & Opcode.TYPE_MASK) {
+         case Opcode.INT_TYPE:      return Comparisons.test(opcode, intColumns[slot].get(record), constant);
+         case Opcode.FLOAT_TYPE:    return Comparisons.test(opcode, floatColumns[slot].get(record), Float.intBitsToFloat(constant));
+         case Opcode.STRING_TYPE:   return Comparisons.test(StringDictionary.toIntOpcode(opcode), stringCodes[stringColumns[slot].get(record)], stringConstantCodes[constant]);
+         case Opcode.BOOLEAN_TYPE:  return Comparisons.test(opcode, booleanColumns[slot].get(record) != 0, constant != 0);
+         default:                   return Comparisons.test(opcode);
+      }
+   }
+}
@@ -0,0 +1,117 @@
+package org.jiminy.host;
+
+import org.jiminy.JiminyException;
+import org.jiminy.domain.DataType;
+import org.jiminy.domain.Operator;
+
+/**
+ * Opcodes for the nodes of a compiled rule set.  A comparison opcode is the ordinal of the
+ * operands' DataType shifted left three bits, or'ed with the ordinal of the Operator, so the
+ * constants below have to be kept in step with the order of those two enums.  Default nodes
+ * (and conditions that fold to a constant at compile time) use ALWAYS or NEVER.
+ */
+public final class Opcode {
+   public static final byte INT_EQ = 0x00;
+   public static final byte INT_GT = 0x01;
+   public static final byte INT_GE = 0x02;
+   public static final byte INT_LT = 0x03;
+   public static final byte INT_LE = 0x04;
+   public static final byte INT_NE = 0x07;
+
+   public static final byte FLOAT_EQ = 0x08;
+   public static final byte FLOAT_GT = 0x09;
+   public static final byte FLOAT_GE = 0x0A;
+   public static final byte FLOAT_LT = 0x0B;
+   public static final byte FLOAT_LE = 0x0C;
+   public static final byte FLOAT_NE = 0x0F;
+
+   public static final byte STRING_EQ = 0x10;
+   public static final byte STRING_GT = 0x11;
+   public static final byte STRING_GE = 0x12;
+   public static final byte STRING_LT = 0x13;
+   public static final byte STRING_LE = 0x14;
+   public static final byte STRING_NE = 0x17;
+
+   public static final byte BOOLEAN_EQ = 0x18;
+   public static final byte BOOLEAN_GT = 0x19;
+   public static final byte BOOLEAN_GE = 0x1A;
+   public static final byte BOOLEAN_LT = 0x1B;
+   public static final byte BOOLEAN_LE = 0x1C;
+   public static final byte BOOLEAN_AND = 0x1D;
+   public static final byte BOOLEAN_OR = 0x1E;
+   public static final byte BOOLEAN_NE = 0x1F;
+
+   public static final byte ALWAYS = 0x40;
+   public static final byte NEVER = 0x41;
+
+   // Mask out the operator to get the "type" of an opcode
+   public static final int TYPE_MASK = 0x78;
+   public static final int INT_TYPE = 0x00;
+   public static final int FLOAT_TYPE = 0x08;
+   public static final int STRING_TYPE = 0x10;
+   public static final int BOOLEAN_TYPE = 0x18;
+   public static final int CONSTANT_TYPE = 0x40;
+
+   private Opcode() {}
+
+   public static byte get(DataType type, Operator operator) {
+      // Same rule as BinaryExpression: the logical operators only apply to booleans
+      if ((operator == Operator.LOGICAL_AND || operator == Operator.LOGICAL_OR) && type != DataType.BOOLEAN)
+         throw new JiminyException("Invalid operator: " + operator + " for type: " + type);
+      return (byte)((type.ordinal() << 3) | operator.ordinal());
+   }
+
+   public static boolean isComparison(byte opcode) {
+      return opcode >= 0 && opcode < ALWAYS;
+   }
+
+   public static DataType getType(byte opcode) {
+      if (!isComparison(opcode))
+         throw new JiminyException("Opcode has no operand type: " + opcode);
+      return DataType.values()[opcode >> 3];
+   }
+
+   public static Operator getOperator(byte opcode) {
+      if (!isComparison(opcode))
+         throw new JiminyException("Opcode has no operator: " + opcode);
+      return Operator.values()[opcode & 0x07];
+   }
+
+   /**
+    * Returns the operator that gives the same result when the operands are swapped,
+    * i.e. (c op v) == (v mirror(op) c).
+    */
+   static Operator mirror(Operator operator) {
+      switch (operator) {
+         case GREATER_THAN:               return Operator.LESS_THAN;
+         case GREATER_THAN_OR_EQUAL_TO:   return Operator.LESS_THAN_OR_EQUAL_TO;
+         case LESS_THAN:                  return Operator.GREATER_THAN;
+         case LESS_THAN_OR_EQUAL_TO:      return Operator.GREATER_THAN_OR_EQUAL_TO;
+         default:
+            return operator;
+      }
+   }
+
+   /**
+    * Returns the opcode whose result is always the opposite of this one's, or -1 if there
+    * isn't one (AND and OR).  This relies on Comparisons ordering every type totally, so
+    * that for instance v > c is exactly !(v <= c) even for NaN.
+    */
+   static int negate(byte opcode) {
+      if (opcode == ALWAYS)
+         return NEVER;
+      if (opcode == NEVER)
+         return ALWAYS;
+      int type = opcode & TYPE_MASK;
+      switch (opcode & 0x07) {
+         case 0x00:  return type | 0x07;  // EQ -> NE
+         case 0x07:  return type;         // NE -> EQ
+         case 0x01:  return type | 0x04;  // GT -> LE
+         case 0x04:  return type | 0x01;  // LE -> GT
+         case 0x02:  return type | 0x03;  // GE -> LT
+         case 0x03:  return type | 0x02;  // LT -> GE
+         default:
+            return -1;
+      }
+   }
+}
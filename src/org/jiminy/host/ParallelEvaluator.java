@@ -0,0 +1,136 @@
+package org.jiminy.host;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.jiminy.domain.RecordBatch;
+import org.jiminy.domain.ResultMatrix;
+import org.jiminy.domain.SymbolTable;
+
+/**
+ * Evaluates a CompiledRuleSet on a fork/join pool.  The (lists x records) space is split
+ * recursively until each piece is cheap enough to run on one thread, where the cost of a
+ * piece is its total number of nodes times its number of records.  Lists are split at the
+ * point that halves the number of nodes rather than the number of lists, so a few long
+ * lists don't end up in one task; once a piece is down to a single list we split on the
+ * records instead, at a multiple of 64 so that no two tasks write to the same word of the
+ * ResultMatrix.  Every (record, list) result is written by exactly one task, so the output
+ * is the same as the serial evaluators'.
+ */
+public class ParallelEvaluator {
+   public static final long DEFAULT_GRAIN = 16384;
+
+   private final CompiledRuleSet program;
+   private final BatchEvaluator evaluator;
+   private final ForkJoinPool pool;
+   private final long grain;
+
+   public ParallelEvaluator(CompiledRuleSet program) {
+      this(program, ForkJoinPool.commonPool(), DEFAULT_GRAIN);
+   }
+
+   public ParallelEvaluator(CompiledRuleSet program, ForkJoinPool pool, long grain) {
+      this.program = program;
+      this.evaluator = new BatchEvaluator(program);
+      this.pool = pool;
+      this.grain = Math.max(grain, 1);
+   }
+
+   public CompiledRuleSet getProgram() {
+      return program;
+   }
+
+   /**
+    * Records which node decides each (record, list) evaluated from now on, or stops
+    * recording if profile is null.  The tasks count on their own threads' stripes.
+    */
+   public void setProfile(RuleProfile profile) {
+      evaluator.setProfile(profile);
+   }
+
+   public ResultMatrix evaluate(RecordBatch batch) {
+      ResultMatrix results = new ResultMatrix(batch.getNumRecords(), program.getNumLists());
+      evaluate(batch, results);
+      return results;
+   }
+
+   public void evaluate(RecordBatch batch, ResultMatrix results) {
+      evaluate(batch, batch.getNumRecords(), results);
+   }
+
+   /**
+    * Evaluates the first numRecords records of the batch, for a batch that's only partly
+    * filled.  The rest of the batch isn't read.
+    */
+   public void evaluate(RecordBatch batch, int numRecords, ResultMatrix results) {
+      BatchEvaluator.Columns columns = evaluator.bind(batch, numRecords, results);
+      pool.invoke(new EvaluationTask(columns, 0, program.getNumLists(), 0, numRecords, results));
+   }
+
+   /**
+    * Evaluates every list against the current values in a symbol table, storing the result
+    * for list l in results[l].
+    */
+   public void evaluate(SymbolTable symbolTable, boolean[] results) {
+      RecordBatch batch = new RecordBatch(symbolTable, 1);
+      batch.setRecord(0, symbolTable);
+      ResultMatrix matrix = evaluate(batch);
+      for (int list = 0; list < program.getNumLists(); list++)
+         results[list] = matrix.get(0, list);
+   }
+
+   private class EvaluationTask extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+
+      private final BatchEvaluator.Columns columns;
+      private final int firstList;
+      private final int lastList;
+      private final int firstRecord;
+      private final int lastRecord;
+      private final ResultMatrix results;
+
+      EvaluationTask(BatchEvaluator.Columns columns, int firstList, int lastList, int firstRecord, int lastRecord, ResultMatrix results) {
+         this.columns = columns;
+         this.firstList = firstList;
+         this.lastList = lastList;
+         this.firstRecord = firstRecord;
+         this.lastRecord = lastRecord;
+         this.results = results;
+      }
+
+      @Override
+      protected void compute() {
+         int[] listOffsets = program.listOffsets;
+         long numNodes = listOffsets[lastList] - listOffsets[firstList];
+         int numRecords = lastRecord - firstRecord;
+
+         if (numNodes * numRecords <= grain || (lastList - firstList <= 1 && numRecords <= 64)) {
+            evaluator.evaluate(columns, firstList, lastList, firstRecord, lastRecord, results);
+            return;
+         }
+
+         if (lastList - firstList > 1) {
+            int middle = splitByCost(listOffsets);
+            invokeAll(new EvaluationTask(columns, firstList, middle, firstRecord, lastRecord, results),
+                      new EvaluationTask(columns, middle, lastList, firstRecord, lastRecord, results));
+         } else {
+            // firstRecord is a multiple of 64, and so is the split
+            int middle = firstRecord + ((numRecords / 2 + 63) & ~63);
+            invokeAll(new EvaluationTask(columns, firstList, lastList, firstRecord, middle, results),
+                      new EvaluationTask(columns, firstList, lastList, middle, lastRecord, results));
+         }
+      }
+
+      /**
+       * Returns the list that divides [firstList, lastList) into two halves with roughly
+       * the same number of nodes.  Always leaves at least one list on each side.
+       */
+      private int splitByCost(int[] listOffsets) {
+         int target = listOffsets[firstList] + (listOffsets[lastList] - listOffsets[firstList]) / 2;
+         int index = Arrays.binarySearch(listOffsets, firstList, lastList + 1, target);
+         if (index < 0)
+            index = -index - 1;
+         return Math.min(Math.max(index, firstList + 1), lastList - 1);
+      }
+   }
+}
@@ -0,0 +1,415 @@
+package org.jiminy.host;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import org.jiminy.JiminyException;
+import org.jiminy.domain.DataType;
+import org.jiminy.domain.SymbolTable;
+
+/**
+ * Groups the predicates of a PredicateTable by variable, like the alpha network of a Rete
+ * matcher, so that all of a variable's comparisons are decided at once: equality constants
+ * go in a hash table, and greater-than and greater-or-equal constants are sorted, so one
+ * probe and two binary searches settle every predicate on the variable.  (The predicate
+ * table has already turned NE, LT and LE into negated EQ, GE and GT.)
+ *
+ * The results go into a bitset with one bit per predicate.  Bits are numbered so that each
+ * variable's range predicates are contiguous and in constant order, which makes the
+ * satisfied ones a run of bits that can be set a word at a time.  The few predicates that
+ * don't fit this scheme (on booleans, AND, OR, ALWAYS and NEVER) are evaluated one by one.
+ *
+ * Ints and strings are ordered as in Comparisons.  Floats are ordered by Float.compare(),
+ * which we get by comparing ints made from their bits; float equality is == as usual, so
+ * 0.0 and -0.0 are equal and NaN equals nothing.
+ */
+public class PredicateIndex {
+   private final PredicateTable predicates;
+   private final CompiledRuleSet program;
+   private final int[] nodeBits;
+   private final VariableIndex[] variables;
+   private final int[] directBits;
+   private final int[] directPredicates;
+   private final int numBits;
+
+   public PredicateIndex(PredicateTable predicates) {
+      this.predicates = predicates;
+      this.program = predicates.getProgram();
+      int numPredicates = predicates.getNumPredicates();
+      int numVariables = program.getNumVariables();
+
+      // Sort the predicates into groups: per-variable equality, greater-than and
+      // greater-or-equal, and everything else
+      int[][] groups = new int[numVariables * 3][];
+      int[] groupSizes = new int[numVariables * 3];
+      int numDirect = 0;
+      for (int p = 0; p < numPredicates; p++) {
+         int group = getGroup(p);
+         if (group < 0)
+            numDirect++;
+         else
+            groupSizes[group]++;
+      }
+      for (int g = 0; g < groups.length; g++)
+         groups[g] = new int[groupSizes[g]];
+      directPredicates = new int[numDirect];
+      Arrays.fill(groupSizes, 0);
+      numDirect = 0;
+      for (int p = 0; p < numPredicates; p++) {
+         int group = getGroup(p);
+         if (group < 0)
+            directPredicates[numDirect++] = p;
+         else
+            groups[group][groupSizes[group]++] = p;
+      }
+
+      // Number the bits group by group
+      int[] predicateBits = new int[numPredicates];
+      variables = new VariableIndex[numVariables];
+      int bit = 0;
+      for (int slot = 0; slot < numVariables; slot++) {
+         int[] equal = groups[slot * 3];
+         int[] greater = groups[slot * 3 + 1];
+         int[] greaterOrEqual = groups[slot * 3 + 2];
+         if (equal.length + greater.length + greaterOrEqual.length == 0)
+            continue;
+         VariableIndex variable = new VariableIndex(slot, program.getVariableType(slot));
+         bit = variable.addEqual(equal, bit, predicateBits);
+         variable.greaterBase = bit;
+         bit = variable.addRange(greater, bit, predicateBits, true);
+         variable.greaterOrEqualBase = bit;
+         bit = variable.addRange(greaterOrEqual, bit, predicateBits, false);
+         variables[slot] = variable;
+      }
+      directBits = new int[numDirect];
+      for (int i = 0; i < numDirect; i++) {
+         directBits[i] = bit;
+         predicateBits[directPredicates[i]] = bit++;
+      }
+      numBits = bit;
+
+      nodeBits = new int[program.getNumNodes()];
+      for (int node = 0; node < nodeBits.length; node++)
+         nodeBits[node] = (predicateBits[predicates.getPredicate(node)] << 1) | (predicates.isNegated(node) ? 1 : 0);
+   }
+
+   public PredicateIndex(CompiledRuleSet program) {
+      this(new PredicateTable(program));
+   }
+
+   public PredicateTable getPredicates() {
+      return predicates;
+   }
+
+   public CompiledRuleSet getProgram() {
+      return program;
+   }
+
+   public int getNumBits() {
+      return numBits;
+   }
+
+   /**
+    * Returns the number of longs in a bitset for evaluate().
+    */
+   public int getNumWords() {
+      return (numBits + 63) >>> 6;
+   }
+
+   /**
+    * Sets the bit of every satisfied predicate in satisfied (and clears the others) for the
+    * values in a symbol table with the program's layout.
+    */
+   public void evaluate(SymbolTable symbolTable, long[] satisfied) {
+      if (satisfied.length < getNumWords())
+         throw new JiminyException("Bitset is too small: " + satisfied.length + " < " + getNumWords() + " words");
+      Arrays.fill(satisfied, 0, getNumWords(), 0L);
+
+      for (VariableIndex variable : variables)
+         if (variable != null)
+            variable.evaluate(symbolTable, satisfied);
+
+      for (int i = 0; i < directPredicates.length; i++)
+         if (test(symbolTable, directPredicates[i]))
+            satisfied[directBits[i] >>> 6] |= 1L << directBits[i];
+   }
+
+   /**
+    * Returns whether a node's condition holds, given the bitset from evaluate().
+    */
+   public boolean test(long[] satisfied, int node) {
+      int reference = nodeBits[node];
+      int bit = reference >>> 1;
+      boolean value = (satisfied[bit >>> 6] & (1L << bit)) != 0;
+      return value != ((reference & 1) != 0);
+   }
+
+   /**
+    * Node n's bit shifted left one, with the negation flag in the low bit.
+    */
+   int[] getNodeBits() {
+      return nodeBits;
+   }
+
+   private int getGroup(int predicate) {
+      byte opcode = predicates.getOpcode(predicate);
+      int type = opcode & Opcode.TYPE_MASK;
+      if (type != Opcode.INT_TYPE && type != Opcode.FLOAT_TYPE && type != Opcode.STRING_TYPE)
+         return -1;
+      int slot = predicates.getSlot(predicate);
+      switch (opcode & 0x07) {
+         case 0x00:  return slot * 3;      // EQ
+         case 0x01:  return slot * 3 + 1;  // GT
+         case 0x02:  return slot * 3 + 2;  // GE
+         default:    return -1;
+      }
+   }
+
+   private boolean test(SymbolTable symbolTable, int predicate) {
+      byte opcode = predicates.getOpcode(predicate);
+      int slot = predicates.getSlot(predicate);
+      int constant = predicates.getConstant(predicate);
+
+      switch (opcode & Opcode.TYPE_MASK) {
+         case Opcode.INT_TYPE:      return Comparisons.test(opcode, symbolTable.getIntValue(slot), constant);
+         case Opcode.FLOAT_TYPE:    return Comparisons.test(opcode, symbolTable.getFloatValue(slot), Float.intBitsToFloat(constant));
+         case Opcode.STRING_TYPE:   return Comparisons.test(opcode, symbolTable.getStringValue(slot), program.stringConstants[constant]);
+         case Opcode.BOOLEAN_TYPE:  return Comparisons.test(opcode, symbolTable.getBooleanValue(slot), constant != 0);
+         default:                   return Comparisons.test(opcode);
+      }
+   }
+
+   /**
+    * Maps a float to an int that orders the same way as Float.compare().
+    */
+   static int sortKey(float value) {
+      int bits = Float.floatToIntBits(value);
+      return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+   }
+
+   /**
+    * Sets bits [from, to).
+    */
+   private static void setBits(long[] bitset, int from, int to) {
+      if (from >= to)
+         return;
+      int firstWord = from >>> 6;
+      int lastWord = (to - 1) >>> 6;
+      long firstMask = -1L << from;
+      long lastMask = -1L >>> -to;
+      if (firstWord == lastWord) {
+         bitset[firstWord] |= firstMask & lastMask;
+         return;
+      }
+      bitset[firstWord] |= firstMask;
+      for (int word = firstWord + 1; word < lastWord; word++)
+         bitset[word] = -1L;
+      bitset[lastWord] |= lastMask;
+   }
+
+   /**
+    * The predicates on one variable.  Int and float constants are held as int keys (floats
+    * by sortKey()), strings as strings.
+    */
+   private class VariableIndex {
+      final int slot;
+      final DataType type;
+      int greaterBase;
+      int greaterOrEqualBase;
+
+      // Equality: an open-addressed table of keys for ints and floats, a map for strings
+      int[] equalKeys;
+      int[] equalBits;
+      int equalMask;
+      HashMap<String,Integer> equalStrings;
+      int[] floatZeroBits = new int[0];
+
+      // Ranges, sorted ascending
+      int[] greaterKeys;
+      String[] greaterStrings;
+      int[] greaterOrEqualKeys;
+      String[] greaterOrEqualStrings;
+
+      VariableIndex(int slot, DataType type) {
+         this.slot = slot;
+         this.type = type;
+      }
+
+      int addEqual(int[] group, int bit, int[] predicateBits) {
+         if (type == DataType.STRING) {
+            equalStrings = new HashMap<String,Integer>(group.length * 2);
+            for (int p : group) {
+               predicateBits[p] = bit;
+               equalStrings.put(program.stringConstants[predicates.getConstant(p)], bit++);
+            }
+            return bit;
+         }
+
+         int capacity = Integer.highestOneBit(Math.max(group.length, 2) * 2) * 2;
+         equalKeys = new int[capacity];
+         equalBits = new int[capacity];
+         Arrays.fill(equalBits, -1);
+         equalMask = capacity - 1;
+         for (int p : group) {
+            predicateBits[p] = bit;
+            int constant = predicates.getConstant(p);
+            if (type == DataType.FLOAT) {
+               float value = Float.intBitsToFloat(constant);
+               if (value != value) {
+                  bit++;
+                  continue; // NaN is never equal to anything, so its bit stays clear
+               }
+               if (value == 0.0f) {
+                  // 0.0 and -0.0 are different predicates but the same for ==
+                  floatZeroBits = Arrays.copyOf(floatZeroBits, floatZeroBits.length + 1);
+                  floatZeroBits[floatZeroBits.length - 1] = bit++;
+                  continue;
+               }
+               constant = sortKey(value);
+            }
+            int bucket = mix(constant) & equalMask;
+            while (equalBits[bucket] != -1)
+               bucket = (bucket + 1) & equalMask;
+            equalKeys[bucket] = constant;
+            equalBits[bucket] = bit++;
+         }
+         return bit;
+      }
+
+      int addRange(int[] group, int bit, int[] predicateBits, boolean greater) {
+         Integer[] order = new Integer[group.length];
+         for (int i = 0; i < group.length; i++)
+            order[i] = group[i];
+
+         if (type == DataType.STRING) {
+            Arrays.sort(order, new Comparator<Integer>() {
+               @Override
+               public int compare(Integer p1, Integer p2) {
+                  return program.stringConstants[predicates.getConstant(p1)].compareTo(program.stringConstants[predicates.getConstant(p2)]);
+               }
+            });
+            String[] strings = new String[group.length];
+            for (int i = 0; i < order.length; i++) {
+               strings[i] = program.stringConstants[predicates.getConstant(order[i])];
+               predicateBits[order[i]] = bit++;
+            }
+            if (greater)
+               greaterStrings = strings;
+            else
+               greaterOrEqualStrings = strings;
+            return bit;
+         }
+
+         Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer p1, Integer p2) {
+               int key1 = getKey(p1);
+               int key2 = getKey(p2);
+               return key1 < key2 ? -1 : (key1 == key2 ? 0 : 1);
+            }
+         });
+         int[] keys = new int[group.length];
+         for (int i = 0; i < order.length; i++) {
+            keys[i] = getKey(order[i]);
+            predicateBits[order[i]] = bit++;
+         }
+         if (greater)
+            greaterKeys = keys;
+         else
+            greaterOrEqualKeys = keys;
+         return bit;
+      }
+
+      void evaluate(SymbolTable symbolTable, long[] satisfied) {
+         if (type == DataType.STRING) {
+            String value = symbolTable.getStringValue(slot);
+            Integer bit = equalStrings.get(value);
+            if (bit != null)
+               satisfied[bit >>> 6] |= 1L << bit;
+            // v > c for every c below v, v >= c for every c up to and including v
+            setBits(satisfied, greaterBase, greaterBase + countBelow(greaterStrings, value, false));
+            setBits(satisfied, greaterOrEqualBase, greaterOrEqualBase + countBelow(greaterOrEqualStrings, value, true));
+            return;
+         }
+
+         int key;
+         if (type == DataType.FLOAT) {
+            float value = symbolTable.getFloatValue(slot);
+            key = sortKey(value);
+            if (value == 0.0f) {
+               for (int bit : floatZeroBits)
+                  satisfied[bit >>> 6] |= 1L << bit;
+            } else if (value == value)
+               probe(key, satisfied);
+         } else {
+            key = symbolTable.getIntValue(slot);
+            probe(key, satisfied);
+         }
+         setBits(satisfied, greaterBase, greaterBase + countBelow(greaterKeys, key, false));
+         setBits(satisfied, greaterOrEqualBase, greaterOrEqualBase + countBelow(greaterOrEqualKeys, key, true));
+      }
+
+      private void probe(int key, long[] satisfied) {
+         int bucket = mix(key) & equalMask;
+         while (equalBits[bucket] != -1) {
+            if (equalKeys[bucket] == key) {
+               int bit = equalBits[bucket];
+               satisfied[bit >>> 6] |= 1L << bit;
+               return;
+            }
+            bucket = (bucket + 1) & equalMask;
+         }
+      }
+
+      private int getKey(int predicate) {
+         int constant = predicates.getConstant(predicate);
+         return (type == DataType.FLOAT) ? sortKey(Float.intBitsToFloat(constant)) : constant;
+      }
+   }
+
+   /**
+    * Returns how many of the sorted keys are below the key (or, if inclusive, not above it).
+    */
+   private static int countBelow(int[] keys, int key, boolean inclusive) {
+      int low = 0;
+      int high = keys.length;
+      while (low < high) {
+         int middle = (low + high) >>> 1;
+         if (keys[middle] < key || (inclusive && keys[middle] == key))
+            low = middle + 1;
+         else
+            high = middle;
+      }
+      return low;
+   }
+
+   private static int countBelow(String[] keys, String key, boolean inclusive) {
+      int low = 0;
+      int high = keys.length;
+      while (low < high) {
+         int middle = (low + high) >>> 1;
+         int comparison = keys[middle].compareTo(key);
+         if (comparison < 0 || (inclusive && comparison == 0))
+            low = middle + 1;
+         else
+            high = middle;
+      }
+      return low;
+   }
+
+   private static int mix(int key) {
+      int h = key * 0x9E3779B9;
+      return h ^ (h >>> 16);
+   }
+
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("{").append(this.getClass().getSimpleName()).append(": ");
+      sb.append("predicates: ").append(numBits);
+      sb.append("; evaluated individually: ").append(directPredicates.length);
+      sb.append("}");
+
+      return sb.toString();
+   }
+}
@@ -0,0 +1,124 @@
+package org.jiminy.host;
+
+import java.util.Arrays;
+
+/**
+ * The distinct predicates of a CompiledRuleSet.  Two nodes share a predicate when they test
+ * the same variable against the same constant with the same opcode, or with opposite ones
+ * (v > c and v <= c, say): the second is then just the negation of the first.  String
+ * constants are already shared by the compiler, so comparing their indexes is enough, and
+ * float constants are compared by their bits.
+ *
+ * Node n refers to predicate getPredicate(n), negated if isNegated(n).  Predicates keep
+ * the node arrays' layout: an opcode, a slot (-1 for ALWAYS and NEVER) and a constant.
+ */
+public class PredicateTable {
+   private final CompiledRuleSet program;
+   private final int[] nodePredicates;
+   private byte[] opcodes;
+   private int[] slots;
+   private int[] constants;
+   private int numPredicates = 0;
+
+   public PredicateTable(CompiledRuleSet program) {
+      this.program = program;
+      int numNodes = program.getNumNodes();
+      nodePredicates = new int[numNodes];
+      opcodes = new byte[16];
+      slots = new int[16];
+      constants = new int[16];
+
+      // Open addressing over predicate indexes, sized to stay under half full
+      int capacity = Integer.highestOneBit(Math.max(numNodes, 8) * 2) * 2;
+      int[] table = new int[capacity];
+      Arrays.fill(table, -1);
+      int mask = capacity - 1;
+
+      for (int node = 0; node < numNodes; node++) {
+         byte opcode = program.opcodes[node];
+         int negated = 0;
+         int complement = Opcode.negate(opcode);
+         if (complement >= 0 && complement < (opcode & 0xFF)) {
+            opcode = (byte)complement;
+            negated = 1;
+         }
+         int slot = program.slots[node];
+         int constant = program.constants[node];
+
+         int bucket = hash(opcode, slot, constant) & mask;
+         while (table[bucket] != -1) {
+            int p = table[bucket];
+            if (opcodes[p] == opcode && slots[p] == slot && constants[p] == constant)
+               break;
+            bucket = (bucket + 1) & mask;
+         }
+         if (table[bucket] == -1)
+            table[bucket] = add(opcode, slot, constant);
+         nodePredicates[node] = (table[bucket] << 1) | negated;
+      }
+   }
+
+   public CompiledRuleSet getProgram() {
+      return program;
+   }
+
+   public int getNumPredicates() {
+      return numPredicates;
+   }
+
+   public int getPredicate(int node) {
+      return nodePredicates[node] >>> 1;
+   }
+
+   public boolean isNegated(int node) {
+      return (nodePredicates[node] & 1) != 0;
+   }
+
+   public byte getOpcode(int predicate) {
+      return opcodes[predicate];
+   }
+
+   public int getSlot(int predicate) {
+      return slots[predicate];
+   }
+
+   public int getConstant(int predicate) {
+      return constants[predicate];
+   }
+
+   /**
+    * Node n's predicate index shifted left one, with the negation flag in the low bit.
+    */
+   int[] getNodePredicates() {
+      return nodePredicates;
+   }
+
+   private int add(byte opcode, int slot, int constant) {
+      if (numPredicates == opcodes.length) {
+         opcodes = Arrays.copyOf(opcodes, numPredicates * 2);
+         slots = Arrays.copyOf(slots, numPredicates * 2);
+         constants = Arrays.copyOf(constants, numPredicates * 2);
+      }
+      opcodes[numPredicates] = opcode;
+      slots[numPredicates] = slot;
+      constants[numPredicates] = constant;
+      return numPredicates++;
+   }
+
+   private static int hash(byte opcode, int slot, int constant) {
+      int h = opcode * 0x9E3779B9 + slot;
+      h = h * 0x85EBCA6B + constant;
+      return h ^ (h >>> 15);
+   }
+
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+      
+      sb.append("{").append(this.getClass().getSimpleName()).append(": ");
+      sb.append("nodes: ").append(nodePredicates.length);
+      sb.append("; predicates: ").append(numPredicates);
+      sb.append("}");
+      
+      return sb.toString();
+   }
+}
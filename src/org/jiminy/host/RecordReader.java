@@ -0,0 +1,18 @@
+package org.jiminy.host;
+
+import java.io.Closeable;
+import java.io.IOException;
+import org.jiminy.domain.RecordBatch;
+
+/**
+ * A source of input records, read a batch at a time.
+ */
+public interface RecordReader extends Closeable {
+
+   /**
+    * Fills the batch with the next records, starting at record 0, and returns how many were
+    * read: fewer than the batch holds only at the end of the input, and 0 once there are no
+    * more.
+    */
+   public int read(RecordBatch batch) throws IOException;
+}
@@ -0,0 +1,17 @@
+package org.jiminy.host;
+
+import java.io.Closeable;
+import java.io.IOException;
+import org.jiminy.domain.ResultMatrix;
+
+/**
+ * A sink for results, written a batch at a time in the order the records were read.
+ */
+public interface ResultWriter extends Closeable {
+
+   /**
+    * Writes the results of the first numRecords records.  The matrix is reused once this
+    * returns, so it mustn't be kept.
+    */
+   public void write(ResultMatrix results, int numRecords) throws IOException;
+}
@@ -0,0 +1,246 @@
+package org.jiminy.host;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.jiminy.JiminyException;
+import org.jiminy.domain.expression.DecisionListExpression;
+
+/**
+ * Counts, for each node of each decision list, how many evaluations of the list it decided.
+ * Nodes are numbered as in CompiledRuleSet: node i of list l is listOffsets[l] + i.
+ *
+ * The evaluators take an optional profile and only touch it once per decided list, so
+ * leaving it unset costs a null check.  Counters are striped by thread: the threads that
+ * record are handed stripes round robin, each increments its own stripe's array, and the
+ * stripes are only summed when the profile is read, so evaluating on several threads
+ * doesn't put every thread on the same cache lines.
+ *
+ * A stripe is a long per node, allocated when a thread is first handed it, so a profile
+ * costs 8 bytes per node for each thread that records into it, up to the number of
+ * stripes: 80 MB a stripe at 10M nodes.  By default there is a stripe per processor, at
+ * most 16; profiling a very large rule set on many threads may want fewer.
+ */
+public class RuleProfile {
+   private static final int MAX_STRIPES = 16;
+
+   private final int[] listOffsets;
+   private final AtomicReferenceArray<AtomicLongArray> stripes;
+   private final AtomicInteger nextStripe = new AtomicInteger();
+   private final ThreadLocal<AtomicLongArray> threadStripe = new ThreadLocal<AtomicLongArray>() {
+      @Override
+      protected AtomicLongArray initialValue() {
+         return getStripe((nextStripe.getAndIncrement() & Integer.MAX_VALUE) % stripes.length());
+      }
+   };
+
+   public RuleProfile(CompiledRuleSet program) {
+      this(program.listOffsets, defaultNumStripes());
+   }
+
+   /**
+    * A profile for the decision lists in their expression form, as evaluated by the kernel.
+    */
+   public RuleProfile(ArrayList<DecisionListExpression> decisionLists) {
+      this(getListOffsets(decisionLists), defaultNumStripes());
+   }
+
+   /**
+    * A profile whose counters are split over at most numStripes stripes.
+    */
+   public RuleProfile(CompiledRuleSet program, int numStripes) {
+      this(program.listOffsets, numStripes);
+   }
+
+   private RuleProfile(int[] listOffsets, int numStripes) {
+      if (numStripes < 1)
+         throw new JiminyException("Bad number of stripes: " + numStripes);
+      this.listOffsets = listOffsets;
+      this.stripes = new AtomicReferenceArray<AtomicLongArray>(numStripes);
+   }
+
+   private static int defaultNumStripes() {
+      return Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPES);
+   }
+
+   /**
+    * Returns the index of the first node of each list when the lists are laid out one after
+    * another, as they are in both encodings, plus one more entry for the total number of
+    * nodes.
+    */
+   public static int[] getListOffsets(ArrayList<DecisionListExpression> decisionLists) {
+      int[] listOffsets = new int[decisionLists.size() + 1];
+      for (int list = 0; list < decisionLists.size(); list++) {
+         int length = 0;
+         for (DecisionListExpression node = decisionLists.get(list); node != null; node = node.getNextNode())
+            length++;
+         listOffsets[list + 1] = listOffsets[list] + length;
+      }
+      return listOffsets;
+   }
+
+   /**
+    * Returns a stripe, allocating it if no thread has been handed it yet.
+    */
+   private AtomicLongArray getStripe(int index) {
+      AtomicLongArray stripe = stripes.get(index);
+      if (stripe == null) {
+         stripes.compareAndSet(index, null, new AtomicLongArray(getNumNodes()));
+         stripe = stripes.get(index);
+      }
+      return stripe;
+   }
+
+   /**
+    * Records that a node decided its list.
+    */
+   public void record(int node) {
+      threadStripe.get().incrementAndGet(node);
+   }
+
+   /**
+    * Records that the node at a position in a list decided the list.
+    */
+   public void record(int list, int position) {
+      record(listOffsets[list] + position);
+   }
+
+   public int getNumLists() {
+      return listOffsets.length - 1;
+   }
+
+   public int getNumNodes() {
+      return listOffsets[listOffsets.length - 1];
+   }
+
+   public int getListOffset(int list) {
+      return listOffsets[list];
+   }
+
+   public int getListLength(int list) {
+      return listOffsets[list + 1] - listOffsets[list];
+   }
+
+   public int getNumStripes() {
+      return stripes.length();
+   }
+
+   /**
+    * Returns the number of times a node decided its list.
+    */
+   public long getHits(int node) {
+      long hits = 0;
+      for (int i = 0; i < stripes.length(); i++) {
+         AtomicLongArray stripe = stripes.get(i);
+         if (stripe != null)
+            hits += stripe.get(node);
+      }
+      return hits;
+   }
+
+   public long getHits(int list, int position) {
+      return getHits(listOffsets[list] + position);
+   }
+
+   /**
+    * Returns the number of times a list was evaluated.
+    */
+   public long getNumEvaluations(int list) {
+      long evaluations = 0;
+      for (int node = listOffsets[list]; node < listOffsets[list + 1]; node++)
+         evaluations += getHits(node);
+      return evaluations;
+   }
+
+   /**
+    * Returns the number of nodes tested per evaluation of a list, on average, or 0 if the
+    * list hasn't been evaluated.  Lists that are evaluated often and decided late are the
+    * ones worth reordering.
+    */
+   public double getMeanDepth(int list) {
+      long evaluations = 0;
+      long nodesTested = 0;
+      for (int position = 0; position < getListLength(list); position++) {
+         long hits = getHits(list, position);
+         evaluations += hits;
+         nodesTested += hits * (position + 1);
+      }
+      return (evaluations == 0) ? 0 : (double)nodesTested / evaluations;
+   }
+
+   /**
+    * Returns the nodes that haven't decided any evaluation of their list, in order.
+    */
+   public int[] getDeadNodes() {
+      int[] deadNodes = new int[getNumNodes()];
+      int numDeadNodes = 0;
+      for (int node = 0; node < getNumNodes(); node++)
+         if (getHits(node) == 0)
+            deadNodes[numDeadNodes++] = node;
+      return Arrays.copyOf(deadNodes, numDeadNodes);
+   }
+
+   /**
+    * Returns up to count lists in decreasing order of the number of nodes tested for them
+    * in total, i.e. evaluations times mean depth.
+    */
+   public int[] getHottestLists(int count) {
+      final long[] cost = new long[getNumLists()];
+      Integer[] lists = new Integer[getNumLists()];
+      for (int list = 0; list < getNumLists(); list++) {
+         for (int position = 0; position < getListLength(list); position++)
+            cost[list] += getHits(list, position) * (position + 1);
+         lists[list] = list;
+      }
+      Arrays.sort(lists, new Comparator<Integer>() {
+         @Override
+         public int compare(Integer a, Integer b) {
+            return (cost[a] != cost[b]) ? Long.compare(cost[b], cost[a]) : a.compareTo(b);
+         }
+      });
+
+      int[] hottest = new int[Math.min(Math.max(count, 0), lists.length)];
+      for (int i = 0; i < hottest.length; i++)
+         hottest[i] = lists[i];
+      return hottest;
+   }
+
+   /**
+    * Clears every counter.  Not atomic with respect to concurrent evaluation.
+    */
+   public void reset() {
+      for (int i = 0; i < stripes.length(); i++) {
+         AtomicLongArray stripe = stripes.get(i);
+         if (stripe != null)
+            for (int node = 0; node < stripe.length(); node++)
+               stripe.set(node, 0);
+      }
+   }
+
+   /**
+    * Writes the profile as CSV, one "list,position,hits" line per node.
+    */
+   public void write(PrintStream out) {
+      out.println("list,position,hits");
+      for (int list = 0; list < getNumLists(); list++)
+         for (int position = 0; position < getListLength(list); position++)
+            out.println(list + "," + position + "," + getHits(list, position));
+   }
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("{").append(this.getClass().getSimpleName()).append(": ");
+      sb.append("lists: ").append(getNumLists());
+      sb.append("; nodes: ").append(getNumNodes());
+      sb.append("; stripes: ").append(stripes.length());
+      sb.append("}");
+
+      return sb.toString();
+   }
+}
@@ -0,0 +1,161 @@
+package org.jiminy.host;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.jiminy.JiminyException;
+import org.jiminy.domain.DataType;
+import org.jiminy.domain.EvaluationContext;
+import org.jiminy.domain.Operator;
+import org.jiminy.domain.SymbolTable;
+import org.jiminy.domain.Value;
+import org.jiminy.domain.expression.BinaryExpression;
+import org.jiminy.domain.expression.ConstantExpression;
+import org.jiminy.domain.expression.DecisionListExpression;
+import org.jiminy.domain.expression.Expression;
+import org.jiminy.domain.expression.VariableExpression;
+
+/**
+ * Lowers a set of decision lists into a CompiledRuleSet, resolving variables to their slots
+ * in the given symbol table.  The conditions we can compile are
+ * the ones DataGenerator produces: a comparison between a variable and a constant (in either
+ * order), a boolean constant (the default node) or a bare boolean variable.  Comparisons of
+ * two constants are folded at compile time.
+ */
+public class RuleSetCompiler {
+   private SymbolTable symbolTable;
+   private EvaluationContext context;
+   private HashMap<String,Integer> stringIndexes = new HashMap<String,Integer>();
+   private ArrayList<String> stringConstants = new ArrayList<String>();
+   private byte[] opcodes;
+   private int[] slots;
+   private int[] constants;
+   private boolean[] outcomes;
+
+   public RuleSetCompiler(SymbolTable symbolTable) {
+      if (symbolTable == null)
+         throw new JiminyException("No symbol table!");
+      this.symbolTable = symbolTable;
+      this.context = new EvaluationContext(symbolTable);
+   }
+
+   public static CompiledRuleSet compile(ArrayList<DecisionListExpression> decisionLists, SymbolTable symbolTable) {
+      return new RuleSetCompiler(symbolTable).compile(decisionLists);
+   }
+
+   public CompiledRuleSet compile(ArrayList<DecisionListExpression> decisionLists) {
+      // Size the node arrays up front so we only allocate them once
+      int[] listOffsets = new int[decisionLists.size() + 1];
+      int numNodes = 0;
+      for (int i = 0; i < decisionLists.size(); i++) {
+         listOffsets[i] = numNodes;
+         for (DecisionListExpression node = decisionLists.get(i); node != null; node = node.getNextNode())
+            numNodes++;
+      }
+      listOffsets[decisionLists.size()] = numNodes;
+
+      opcodes = new byte[numNodes];
+      slots = new int[numNodes];
+      constants = new int[numNodes];
+      outcomes = new boolean[numNodes];
+
+      int index = 0;
+      for (DecisionListExpression dl : decisionLists)
+         for (DecisionListExpression node = dl; node != null; node = node.getNextNode())
+            compileNode(node, index++);
+
+      // Remember the layout of the symbol table so we can check the program is only ever
+      // evaluated against a table with the same slots
+      String[] variableNames = new String[symbolTable.size()];
+      DataType[] variableTypes = new DataType[symbolTable.size()];
+      for (int slot = 0; slot < symbolTable.size(); slot++) {
+         variableNames[slot] = symbolTable.getName(slot);
+         variableTypes[slot] = symbolTable.getType(slot);
+      }
+
+      return new CompiledRuleSet(listOffsets, opcodes, slots, constants, outcomes,
+            stringConstants.toArray(new String[stringConstants.size()]), variableNames, variableTypes);
+   }
+
+   private void compileNode(DecisionListExpression node, int index) {
+      Expression condition = node.getCondition();
+      if (condition == null)
+         throw new JiminyException("DL condition is null");
+
+      outcomes[index] = node.getNodeTrueValue();
+      slots[index] = -1;
+
+      if (condition instanceof ConstantExpression) {
+         Value value = condition.getValue(context);
+         checkBoolean(value.getType());
+         opcodes[index] = value.getBooleanValue() ? Opcode.ALWAYS : Opcode.NEVER;
+      } else if (condition instanceof VariableExpression) {
+         int slot = symbolTable.resolve(((VariableExpression)condition).getName());
+         checkBoolean(symbolTable.getType(slot));
+         opcodes[index] = Opcode.BOOLEAN_EQ;
+         slots[index] = slot;
+         constants[index] = 1;
+      } else if (condition instanceof BinaryExpression) {
+         compileComparison((BinaryExpression)condition, index);
+      } else
+         throw new JiminyException("Cannot compile condition: " + condition);
+   }
+
+   private void compileComparison(BinaryExpression expression, int index) {
+      Expression operand1 = expression.getOperand1();
+      Expression operand2 = expression.getOperand2();
+      Operator operator = expression.getOperator();
+
+      if (operand1 instanceof ConstantExpression && operand2 instanceof ConstantExpression) {
+         opcodes[index] = expression.evaluateBoolean(context) ? Opcode.ALWAYS : Opcode.NEVER;
+         return;
+      }
+
+      // Always put the variable on the left
+      if (operand1 instanceof ConstantExpression && operand2 instanceof VariableExpression) {
+         Expression temp = operand1;
+         operand1 = operand2;
+         operand2 = temp;
+         operator = Opcode.mirror(operator);
+      }
+
+      if (!(operand1 instanceof VariableExpression && operand2 instanceof ConstantExpression))
+         throw new JiminyException("Cannot compile comparison: " + expression.encode(context));
+
+      int slot = symbolTable.resolve(((VariableExpression)operand1).getName());
+      DataType type = symbolTable.getType(slot);
+      Value constant = operand2.getValue(context);
+      if (constant.getType() != type)
+         throw new JiminyException("Type mismatch: attempting to compare value of type " + type + " to value of type " + constant.getType() + ".");
+
+      opcodes[index] = Opcode.get(type, operator);
+      slots[index] = slot;
+      constants[index] = encodeConstant(constant);
+   }
+
+   private int encodeConstant(Value value) {
+      switch (value.getType()) {
+         case BOOLEAN:
+            return value.getBooleanValue() ? 1 : 0;
+         case FLOAT:
+            return Float.floatToRawIntBits(value.getFloatValue());
+         case INT:
+            return value.getIntValue();
+         case STRING:
+            String s = value.getStringValue();
+            Integer stringIndex = stringIndexes.get(s);
+            if (stringIndex == null) {
+               stringIndex = stringConstants.size();
+               stringIndexes.put(s, stringIndex);
+               stringConstants.add(s);
+            }
+            return stringIndex;
+         default:
+            throw new JiminyException("Unknown data type: " + value.getType()); // should never get here
+      }
+   }
+
+   private static void checkBoolean(DataType type) {
+      if (type != DataType.BOOLEAN)
+         throw new JiminyException("Expression evaluates to illegal type (should be boolean): " + type.toString());
+   }
+}
@@ -0,0 +1,607 @@
+package org.jiminy.host;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.jiminy.JiminyException;
+import org.jiminy.domain.DataType;
+import org.jiminy.domain.EvaluationContext;
+import org.jiminy.domain.Operator;
+import org.jiminy.domain.SymbolTable;
+import org.jiminy.domain.Value;
+import org.jiminy.domain.expression.BinaryExpression;
+import org.jiminy.domain.expression.ConstantExpression;
+import org.jiminy.domain.expression.DecisionListExpression;
+import org.jiminy.domain.expression.Expression;
+import org.jiminy.domain.expression.VariableExpression;
+
+/**
+ * Reads decision lists in the text format of DecisionListExpression.encode():
+ *
+ *    DL<number of nodes>{<condition><T or F>...}
+ *
+ * where a condition is a constant, CB{T}, CB{F}, CI{int}, CF{float} or CS{string}, a
+ * comparison EB{<operand><operator><operand>} with the operators of Operator.encode(), or
+ * a variable, EV{name}.  encode() writes variables out as their current values; the EV form
+ * is what RuleSetWriter writes, so that a rule set can be saved and loaded again.  Lists
+ * may be separated by whitespace.  Names and strings run up to the next '}'.
+ *
+ * The parser works straight off the bytes of a buffer, or a mapped file, in one pass.  Ints
+ * and floats are converted as they're read (floats by Float.parseFloat() only in the rare
+ * cases a double can't get exactly right); names and strings are looked up by their bytes,
+ * so a String is only created the first time each distinct one is seen.  It either builds
+ * DecisionListExpressions, a list at a time and with one expression shared by every use of
+ * a variable, string or int, or compiles the lists into a CompiledRuleSet without building
+ * any expressions.
+ */
+public class RuleSetParser {
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   private static final double[] POWERS_OF_TEN = new double[23];
+
+   static {
+      // Every power of ten up to 10^22 is exact as a double
+      POWERS_OF_TEN[0] = 1;
+      for (int i = 1; i < POWERS_OF_TEN.length; i++)
+         POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+   }
+
+   private static final int TAG_CB = ('C' << 8) | 'B';
+   private static final int TAG_CI = ('C' << 8) | 'I';
+   private static final int TAG_CF = ('C' << 8) | 'F';
+   private static final int TAG_CS = ('C' << 8) | 'S';
+   private static final int TAG_EV = ('E' << 8) | 'V';
+   private static final int TAG_EB = ('E' << 8) | 'B';
+
+   private final ByteBuffer buffer;
+   private final int limit;
+   private int position = 0;
+
+   // The distinct names, strings and ints seen so far
+   private final TokenTable names = new TokenTable();
+   private final TokenTable strings = new TokenTable();
+   private final TokenTable ints = new TokenTable();
+   private final ArrayList<String> nameValues = new ArrayList<String>();
+   private final ArrayList<String> stringValues = new ArrayList<String>();
+
+   // The last operand read: its type (null for a variable), the index of its token (-1 for
+   // an int, float or boolean) and its value as stored in a CompiledRuleSet
+   private DataType operandType;
+   private int operandIndex;
+   private int operandValue;
+   private int operandStart;
+   private int operandEnd;
+
+   // The shared expressions, by token index
+   private final ArrayList<VariableExpression> variables = new ArrayList<VariableExpression>();
+   private final ArrayList<ConstantExpression> stringConstants = new ArrayList<ConstantExpression>();
+   private final ArrayList<ConstantExpression> intConstants = new ArrayList<ConstantExpression>();
+
+   public RuleSetParser(ByteBuffer buffer) {
+      this.buffer = buffer.slice();
+      this.limit = this.buffer.limit();
+   }
+
+   /**
+    * Maps a rule set file, which must be under 2GB.
+    */
+   public static RuleSetParser open(File file) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         FileChannel channel = raf.getChannel();
+         if (channel.size() > Integer.MAX_VALUE)
+            throw new JiminyException("Rule set file is too big to map: " + file);
+         return new RuleSetParser(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      } finally {
+         raf.close();
+      }
+   }
+
+   /**
+    * Returns the offset of the next byte to be read.
+    */
+   public int getPosition() {
+      return position;
+   }
+
+   public boolean hasNext() {
+      skipWhitespace();
+      return position < limit;
+   }
+
+   /**
+    * Reads the next decision list.  Its variables aren't bound.
+    */
+   public DecisionListExpression next() {
+      int numNodes = readListHeader();
+      DecisionListExpression first = null;
+      DecisionListExpression last = null;
+      for (int i = 0; i < numNodes; i++) {
+         Expression condition = readExpression();
+         DecisionListExpression node = new DecisionListExpression(condition, readOutcome());
+         if (last == null)
+            first = node;
+         else
+            last.setNextNode(node);
+         last = node;
+      }
+      expect('}');
+      return first;
+   }
+
+   /**
+    * Reads the rest of the decision lists.
+    */
+   public ArrayList<DecisionListExpression> parse() {
+      ArrayList<DecisionListExpression> decisionLists = new ArrayList<DecisionListExpression>();
+      while (hasNext())
+         decisionLists.add(next());
+      return decisionLists;
+   }
+
+   /**
+    * Compiles the rest of the decision lists against a symbol table, with the same rules
+    * as RuleSetCompiler: each condition must be a comparison between a variable and a
+    * constant, a boolean constant or a boolean variable.
+    */
+   public CompiledRuleSet compile(SymbolTable symbolTable) {
+      EvaluationContext context = new EvaluationContext(symbolTable);
+      int[] variableSlots = new int[0];
+      int[] listOffsets = new int[16];
+      byte[] opcodes = new byte[1024];
+      int[] slots = new int[1024];
+      int[] constants = new int[1024];
+      boolean[] outcomes = new boolean[1024];
+      int numLists = 0;
+      int numNodes = 0;
+
+      while (hasNext()) {
+         int listLength = readListHeader();
+         if (numLists + 2 > listOffsets.length)
+            listOffsets = Arrays.copyOf(listOffsets, listOffsets.length * 2);
+         if (numNodes + listLength > opcodes.length) {
+            int capacity = Math.max(opcodes.length * 2, numNodes + listLength);
+            opcodes = Arrays.copyOf(opcodes, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+            constants = Arrays.copyOf(constants, capacity);
+            outcomes = Arrays.copyOf(outcomes, capacity);
+         }
+
+         for (int i = 0; i < listLength; i++, numNodes++) {
+            byte opcode;
+            int slot = -1;
+            int constant = 0;
+
+            if (readOperand()) {
+               // A bare boolean variable or constant
+               if (operandType == null) {
+                  variableSlots = resolve(symbolTable, variableSlots);
+                  slot = variableSlots[operandIndex];
+                  checkBoolean(symbolTable.getType(slot));
+                  opcode = Opcode.BOOLEAN_EQ;
+                  constant = 1;
+               } else {
+                  checkBoolean(operandType);
+                  opcode = (operandValue != 0) ? Opcode.ALWAYS : Opcode.NEVER;
+               }
+            } else {
+               if (!readOperand())
+                  throw error("Cannot compile nested comparison");
+               DataType type1 = operandType;
+               int index1 = operandIndex;
+               int value1 = operandValue;
+               Operator operator = readOperator();
+               if (!readOperand())
+                  throw error("Cannot compile nested comparison");
+               expect('}');
+
+               if (type1 != null && operandType != null) {
+                  Expression expression = new BinaryExpression(ConstantExpression.valueOf(toValue(type1, value1)), operator,
+                        ConstantExpression.valueOf(toValue(operandType, operandValue)));
+                  opcode = expression.evaluateBoolean(context) ? Opcode.ALWAYS : Opcode.NEVER;
+               } else {
+                  // Always put the variable on the left
+                  if (type1 != null) {
+                     operandType = type1;
+                     operandValue = value1;
+                     operator = Opcode.mirror(operator);
+                  } else if (operandType == null)
+                     throw error("Cannot compile comparison of two variables");
+                  else
+                     operandIndex = index1;
+
+                  variableSlots = resolve(symbolTable, variableSlots);
+                  slot = variableSlots[operandIndex];
+                  DataType type = symbolTable.getType(slot);
+                  if (operandType != type)
+                     throw new JiminyException("Type mismatch: attempting to compare value of type " + type + " to value of type " + operandType + ".");
+                  opcode = Opcode.get(type, operator);
+                  constant = operandValue;
+               }
+            }
+
+            opcodes[numNodes] = opcode;
+            slots[numNodes] = slot;
+            constants[numNodes] = constant;
+            outcomes[numNodes] = readOutcome();
+         }
+         expect('}');
+         listOffsets[++numLists] = numNodes;
+      }
+
+      String[] variableNames = new String[symbolTable.size()];
+      DataType[] variableTypes = new DataType[symbolTable.size()];
+      for (int slot = 0; slot < symbolTable.size(); slot++) {
+         variableNames[slot] = symbolTable.getName(slot);
+         variableTypes[slot] = symbolTable.getType(slot);
+      }
+
+      return new CompiledRuleSet(Arrays.copyOf(listOffsets, numLists + 1), Arrays.copyOf(opcodes, numNodes),
+            Arrays.copyOf(slots, numNodes), Arrays.copyOf(constants, numNodes), Arrays.copyOf(outcomes, numNodes),
+            stringValues.toArray(new String[stringValues.size()]), variableNames, variableTypes);
+   }
+
+   /**
+    * Resolves any names not yet in variableSlots, the slot of each name by its index.
+    */
+   private int[] resolve(SymbolTable symbolTable, int[] variableSlots) {
+      if (variableSlots.length == nameValues.size())
+         return variableSlots;
+      int resolved = variableSlots.length;
+      variableSlots = Arrays.copyOf(variableSlots, nameValues.size());
+      for (int name = resolved; name < variableSlots.length; name++)
+         variableSlots[name] = symbolTable.resolve(nameValues.get(name));
+      return variableSlots;
+   }
+
+   private Value toValue(DataType type, int value) {
+      switch (type) {
+         case BOOLEAN:  return Value.valueOf(value != 0);
+         case FLOAT:    return Value.valueOf(Float.intBitsToFloat(value));
+         case INT:      return Value.valueOf(value);
+         case STRING:   return Value.valueOf(stringValues.get(value));
+         default:
+            throw new JiminyException("Unknown data type: " + type); // should never get here
+      }
+   }
+
+   private static void checkBoolean(DataType type) {
+      if (type != DataType.BOOLEAN)
+         throw new JiminyException("Expression evaluates to illegal type (should be boolean): " + type.toString());
+   }
+
+   private Expression readExpression() {
+      if (!readOperand()) {
+         Expression operand1 = readExpression();
+         Operator operator = readOperator();
+         Expression operand2 = readExpression();
+         expect('}');
+         return new BinaryExpression(operand1, operator, operand2);
+      }
+
+      if (operandType == null) {
+         if (operandIndex == variables.size())
+            variables.add(new VariableExpression(nameValues.get(operandIndex)));
+         return variables.get(operandIndex);
+      }
+      switch (operandType) {
+         case BOOLEAN:
+            return (operandValue != 0) ? ConstantExpression.TRUE : ConstantExpression.FALSE;
+         case FLOAT:
+            return ConstantExpression.valueOf(Value.valueOf(Float.intBitsToFloat(operandValue)));
+         case STRING:
+            if (operandIndex == stringConstants.size())
+               stringConstants.add(ConstantExpression.valueOf(Value.valueOf(stringValues.get(operandIndex))));
+            return stringConstants.get(operandIndex);
+         default:
+            int index = ints.add(buffer, operandStart, operandEnd);
+            if (index == intConstants.size())
+               intConstants.add(ConstantExpression.valueOf(Value.valueOf(operandValue)));
+            return intConstants.get(index);
+      }
+   }
+
+   /**
+    * Reads a variable or a constant into the operand fields, or just the tag of a
+    * comparison, in which case it returns false.
+    */
+   private boolean readOperand() {
+      int tag = readTag();
+      if (tag == TAG_EB)
+         return false;
+
+      int start = position;
+      int end = start;
+      while (end < limit && buffer.get(end) != '}')
+         end++;
+      if (end == limit)
+         throw error("Unterminated expression");
+      position = end + 1;
+
+      operandIndex = -1;
+      switch (tag) {
+         case TAG_EV:
+            operandType = null;
+            operandIndex = names.add(buffer, start, end);
+            if (operandIndex == nameValues.size())
+               nameValues.add(decode(start, end));
+            break;
+         case TAG_CB:
+            operandType = DataType.BOOLEAN;
+            if (end - start != 1 || (buffer.get(start) != 'T' && buffer.get(start) != 'F'))
+               throw error("Bad boolean constant");
+            operandValue = (buffer.get(start) == 'T') ? 1 : 0;
+            break;
+         case TAG_CI:
+            operandType = DataType.INT;
+            operandValue = parseInt(start, end);
+            break;
+         case TAG_CF:
+            operandType = DataType.FLOAT;
+            operandValue = Float.floatToRawIntBits(parseFloat(start, end));
+            break;
+         case TAG_CS:
+            operandType = DataType.STRING;
+            operandIndex = strings.add(buffer, start, end);
+            if (operandIndex == stringValues.size())
+               stringValues.add(decode(start, end));
+            operandValue = operandIndex;
+            break;
+         default:
+            throw error("Unknown expression");
+      }
+      operandStart = start;
+      operandEnd = end;
+      return true;
+   }
+
+   private int readTag() {
+      int tag = (read() & 0xff) << 8;
+      tag |= read() & 0xff;
+      expect('{');
+      return tag;
+   }
+
+   private Operator readOperator() {
+      byte first = read();
+      byte second = read();
+      switch (first) {
+         case '=':   if (second == '=') return Operator.EQUAL_TO; break;
+         case '>':   if (second == '>') return Operator.GREATER_THAN; if (second == '=') return Operator.GREATER_THAN_OR_EQUAL_TO; break;
+         case '<':   if (second == '<') return Operator.LESS_THAN; if (second == '=') return Operator.LESS_THAN_OR_EQUAL_TO; break;
+         case '&':   if (second == '&') return Operator.LOGICAL_AND; break;
+         case '|':   if (second == '|') return Operator.LOGICAL_OR; break;
+         case '!':   if (second == '=') return Operator.NOT_EQUAL_TO; break;
+         default:
+      }
+      throw error("Unknown operator");
+   }
+
+   private boolean readOutcome() {
+      byte outcome = read();
+      if (outcome != 'T' && outcome != 'F')
+         throw error("Expected T or F");
+      return outcome == 'T';
+   }
+
+   /**
+    * Reads "DL<n>{" and returns n.
+    */
+   private int readListHeader() {
+      skipWhitespace();
+      expect('D');
+      expect('L');
+      int start = position;
+      while (position < limit && buffer.get(position) != '{')
+         position++;
+      int numNodes = parseInt(start, position);
+      expect('{');
+      if (numNodes < 1)
+         throw error("Decision list lacks default node");
+      return numNodes;
+   }
+
+   private int parseInt(int start, int end) {
+      boolean negative = (start < end && buffer.get(start) == '-');
+      int i = negative ? start + 1 : start;
+      if (i == end)
+         throw error("Bad int constant");
+      long value = 0;
+      for (; i < end; i++) {
+         int digit = buffer.get(i) - '0';
+         if (digit < 0 || digit > 9)
+            throw error("Bad int constant");
+         value = value * 10 + digit;
+         if (value > (long)Integer.MAX_VALUE + 1)
+            throw error("Int constant out of range");
+      }
+      if (negative)
+         value = -value;
+      if (value > Integer.MAX_VALUE)
+         throw error("Int constant out of range");
+      return (int)value;
+   }
+
+   /**
+    * Converts a decimal whose digits fit in a double, like the ones Float.toString() writes,
+    * with one correctly rounded double operation.  Rounding that to a float gives
+    * the correctly rounded float unless the double lands exactly halfway between two floats,
+    * which is left to Float.parseFloat(), as is anything else.
+    */
+   private float parseFloat(int start, int end) {
+      int i = start;
+      boolean negative = (i < end && buffer.get(i) == '-');
+      if (negative)
+         i++;
+      long significand = 0;
+      int numDigits = 0;
+      int exponent = 0;
+      boolean point = false;
+      boolean exact = (i < end);
+      for (; i < end && exact; i++) {
+         byte b = buffer.get(i);
+         if (b >= '0' && b <= '9') {
+            if (significand != 0 || b != '0')
+               numDigits++;
+            significand = significand * 10 + (b - '0');
+            if (point)
+               exponent--;
+         } else if (b == '.' && !point)
+            point = true;
+         else if (b == 'E') {
+            int j = i + 1;
+            boolean negativeExponent = (j < end && buffer.get(j) == '-');
+            if (negativeExponent)
+               j++;
+            exact = (j < end && end - j <= 3);
+            int value = 0;
+            for (; j < end && exact; j++) {
+               int digit = buffer.get(j) - '0';
+               exact = (digit >= 0 && digit <= 9);
+               value = value * 10 + digit;
+            }
+            exponent += negativeExponent ? -value : value;
+            i = end;
+            break;
+         } else
+            exact = false;
+      }
+      exact &= (i == end && numDigits <= 18 && significand < (1L << 53) && Math.abs(exponent) < POWERS_OF_TEN.length);
+
+      if (exact) {
+         double d = (exponent < 0) ? significand / POWERS_OF_TEN[-exponent] : significand * POWERS_OF_TEN[exponent];
+         float f = (float)d;
+         boolean halfway = ((double)f != d && (Double.doubleToRawLongBits(d) & 0x1fffffffL) == 0x10000000L);
+         if (!halfway && (f == 0 ? significand == 0 : Math.abs(f) >= Float.MIN_NORMAL && !Float.isInfinite(f)))
+            return negative ? -f : f;
+      }
+
+      try {
+         return Float.parseFloat(decode(start, end));
+      } catch (NumberFormatException e) {
+         throw error("Bad float constant");
+      }
+   }
+
+   private String decode(int start, int end) {
+      byte[] bytes = new byte[end - start];
+      for (int i = 0; i < bytes.length; i++)
+         bytes[i] = buffer.get(start + i);
+      return new String(bytes, UTF8);
+   }
+
+   private byte read() {
+      if (position >= limit)
+         throw error("Unexpected end of rule set");
+      return buffer.get(position++);
+   }
+
+   private void expect(char c) {
+      if (read() != c)
+         throw error("Expected '" + c + "'");
+   }
+
+   private void skipWhitespace() {
+      while (position < limit) {
+         byte b = buffer.get(position);
+         if (b != ' ' && b != '\n' && b != '\r' && b != '\t')
+            break;
+         position++;
+      }
+   }
+
+   private JiminyException error(String message) {
+      return new JiminyException("Malformed rule set at byte " + Math.max(position - 1, 0) + ": " + message);
+   }
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("{").append(this.getClass().getSimpleName()).append(": ");
+      sb.append("position: ").append(position);
+      sb.append("; size: ").append(limit);
+      sb.append("; variables: ").append(nameValues.size());
+      sb.append("; strings: ").append(stringValues.size());
+      sb.append("}");
+
+      return sb.toString();
+   }
+
+   /**
+    * Numbers the distinct byte sequences it's given in the order it first sees them.  Each
+    * sequence is compared against its first occurrence in the buffer, so nothing is copied.
+    */
+   private static class TokenTable {
+      private int[] table = new int[64];   // one more than the index of a token, 0 if empty
+      private int[] hashes = new int[32];
+      private int[] starts = new int[32];
+      private int[] lengths = new int[32];
+      private int size = 0;
+
+      int size() {
+         return size;
+      }
+
+      /**
+       * Returns the index of the bytes [start, end) of the buffer, adding them if they're new.
+       */
+      int add(ByteBuffer buffer, int start, int end) {
+         int length = end - start;
+         int hash = 0;
+         for (int i = start; i < end; i++)
+            hash = 31 * hash + buffer.get(i);
+
+         int mask = table.length - 1;
+         int slot = spread(hash) & mask;
+         for (int entry; (entry = table[slot] - 1) >= 0; slot = (slot + 1) & mask)
+            if (hashes[entry] == hash && lengths[entry] == length && equal(buffer, starts[entry], start, length))
+               return entry;
+
+         if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+         }
+         hashes[size] = hash;
+         starts[size] = start;
+         lengths[size] = length;
+         table[slot] = size + 1;
+         if (++size * 2 > table.length)
+            rehash();
+         return size - 1;
+      }
+
+      /**
+       * Similar tokens ("str1", "str2", ...) have consecutive hashes, which would fill runs of
+       * slots, so the hash is scrambled before it picks a slot.
+       */
+      private static int spread(int hash) {
+         hash *= 0x9e3779b9;
+         return hash ^ (hash >>> 16);
+      }
+
+      private static boolean equal(ByteBuffer buffer, int start1, int start2, int length) {
+         for (int i = 0; i < length; i++)
+            if (buffer.get(start1 + i) != buffer.get(start2 + i))
+               return false;
+         return true;
+      }
+
+      private void rehash() {
+         table = new int[table.length * 2];
+         int mask = table.length - 1;
+         for (int entry = 0; entry < size; entry++) {
+            int slot = spread(hashes[entry]) & mask;
+            while (table[slot] != 0)
+               slot = (slot + 1) & mask;
+            table[slot] = entry + 1;
+         }
+      }
+   }
+}
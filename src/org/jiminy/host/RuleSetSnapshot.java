@@ -0,0 +1,420 @@
+package org.jiminy.host;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import org.jiminy.JiminyException;
+import org.jiminy.domain.DataType;
+import org.jiminy.domain.SymbolTable;
+
+/**
+ * A CompiledRuleSet saved to a file that is evaluated straight out of a memory mapping, so
+ * opening one costs about the same however many nodes it has: nothing is read until it's
+ * used, and the only objects created up front are the variable names.  The file is
+ * little-endian:
+ *
+ *    header       int magic, int version, int numLists, int numNodes, int numVariables,
+ *                 int numStrings, int stringDataLength, int (unused), long contentHash
+ *    listOffsets  int x (numLists + 1)
+ *    slots        int x numNodes
+ *    constants    int x numNodes
+ *    stringIndex  int x (numStrings + numVariables + 1), offsets into stringData
+ *    opcodes      byte x numNodes
+ *    outcomes     byte x numNodes
+ *    types        byte x numVariables, DataType ordinals
+ *    stringData   UTF-8, the string constants followed by the variable names
+ *
+ * with the node arrays laid out as in CompiledRuleSet.  The content hash covers everything
+ * but itself; it identifies the rule set without reading it, and verify() checks it.
+ */
+public class RuleSetSnapshot {
+   public static final int MAGIC = 0x53524D4A; // "JMRS"
+   public static final int VERSION = 1;
+   public static final int HEADER_SIZE = 40;
+
+   private static final int NUM_LISTS_OFFSET = 8;
+   private static final int NUM_NODES_OFFSET = 12;
+   private static final int NUM_VARIABLES_OFFSET = 16;
+   private static final int NUM_STRINGS_OFFSET = 20;
+   private static final int STRING_DATA_LENGTH_OFFSET = 24;
+   private static final int CONTENT_HASH_OFFSET = 32;
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   private final ByteBuffer buffer;
+   private final int numLists;
+   private final int numNodes;
+   private final int numStrings;
+   private final long contentHash;
+   private final IntBuffer listOffsets;
+   private final IntBuffer slots;
+   private final IntBuffer constants;
+   private final IntBuffer stringIndex;
+   private final ByteBuffer opcodes;
+   private final ByteBuffer outcomes;
+   private final ByteBuffer stringData;
+   private final String[] stringConstants;
+   private final String[] variableNames;
+   private final DataType[] variableTypes;
+
+   private RuleSetSnapshot(ByteBuffer buffer) {
+      this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+      if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+         throw new JiminyException("Not a rule set snapshot");
+      if (buffer.getInt(4) != VERSION)
+         throw new JiminyException("Unsupported rule set snapshot version: " + buffer.getInt(4));
+
+      numLists = buffer.getInt(NUM_LISTS_OFFSET);
+      numNodes = buffer.getInt(NUM_NODES_OFFSET);
+      int numVariables = buffer.getInt(NUM_VARIABLES_OFFSET);
+      numStrings = buffer.getInt(NUM_STRINGS_OFFSET);
+      contentHash = buffer.getLong(CONTENT_HASH_OFFSET);
+      Layout layout = new Layout(numLists, numNodes, numVariables, numStrings, buffer.getInt(STRING_DATA_LENGTH_OFFSET));
+      if (layout.size != buffer.limit())
+         throw new JiminyException("Rule set snapshot is " + buffer.limit() + " bytes, expected " + layout.size);
+
+      listOffsets = slice(layout.listOffsets, (numLists + 1) * 4).asIntBuffer();
+      slots = slice(layout.slots, numNodes * 4).asIntBuffer();
+      constants = slice(layout.constants, numNodes * 4).asIntBuffer();
+      stringIndex = slice(layout.stringIndex, (numStrings + numVariables + 1) * 4).asIntBuffer();
+      opcodes = slice(layout.opcodes, numNodes);
+      outcomes = slice(layout.outcomes, numNodes);
+      stringData = slice(layout.stringData, layout.size - layout.stringData);
+      stringConstants = new String[numStrings];
+
+      variableNames = new String[numVariables];
+      variableTypes = new DataType[numVariables];
+      for (int slot = 0; slot < numVariables; slot++) {
+         variableNames[slot] = readString(numStrings + slot);
+         int type = buffer.get((int)layout.types + slot);
+         if (type < 0 || type >= DataType.values().length)
+            throw new JiminyException("Invalid type for variable " + variableNames[slot] + ": " + type);
+         variableTypes[slot] = DataType.values()[type];
+      }
+   }
+
+   /**
+    * Maps a snapshot file.  The mapping stays valid after the file is closed, for as long as
+    * the snapshot is reachable.
+    */
+   public static RuleSetSnapshot open(File file) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         FileChannel channel = raf.getChannel();
+         return new RuleSetSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      } finally {
+         raf.close();
+      }
+   }
+
+   /**
+    * Wraps a snapshot that's already in memory, for example one read from elsewhere than a
+    * local file.
+    */
+   public static RuleSetSnapshot wrap(ByteBuffer buffer) {
+      return new RuleSetSnapshot(buffer.slice());
+   }
+
+   /**
+    * Writes the program to a snapshot file, replacing anything already there.
+    */
+   public static void write(CompiledRuleSet program, File file) throws IOException {
+      byte[][] strings = encodeStrings(program);
+      Layout layout = getLayout(program, strings);
+
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+         raf.setLength(layout.size);
+         MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, layout.size);
+         write(program, strings, layout, buffer.order(ByteOrder.LITTLE_ENDIAN));
+         buffer.force();
+      } finally {
+         raf.close();
+      }
+   }
+
+   /**
+    * Writes the program to a new heap buffer in snapshot format.
+    */
+   public static ByteBuffer toByteBuffer(CompiledRuleSet program) {
+      byte[][] strings = encodeStrings(program);
+      Layout layout = getLayout(program, strings);
+
+      ByteBuffer buffer = ByteBuffer.allocate((int)layout.size).order(ByteOrder.LITTLE_ENDIAN);
+      write(program, strings, layout, buffer);
+      return buffer;
+   }
+
+   public int getNumLists() {
+      return numLists;
+   }
+
+   public int getNumNodes() {
+      return numNodes;
+   }
+
+   public int getNumVariables() {
+      return variableNames.length;
+   }
+
+   public String getVariableName(int slot) {
+      return variableNames[slot];
+   }
+
+   public DataType getVariableType(int slot) {
+      return variableTypes[slot];
+   }
+
+   public long getContentHash() {
+      return contentHash;
+   }
+
+   /**
+    * Recomputes the content hash, throwing if the snapshot has been corrupted.  This reads
+    * the whole file.
+    */
+   public void verify() {
+      long hash = hash(buffer, buffer.limit());
+      if (hash != contentHash)
+         throw new JiminyException("Rule set snapshot is corrupt: content hash " + Long.toHexString(hash) + ", expected " + Long.toHexString(contentHash));
+   }
+
+   /**
+    * Throws if the given symbol table doesn't have the slots this rule set was compiled
+    * against, as CompiledRuleSet.checkLayout() does.
+    */
+   public void checkLayout(SymbolTable symbolTable) {
+      if (symbolTable == null)
+         throw new JiminyException("No symbol table!");
+      if (symbolTable.size() < variableNames.length)
+         throw new JiminyException("Symbol table has " + symbolTable.size() + " variables, program expects " + variableNames.length);
+
+      for (int slot = 0; slot < variableNames.length; slot++) {
+         if (!variableNames[slot].equals(symbolTable.getName(slot)) || variableTypes[slot] != symbolTable.getType(slot))
+            throw new JiminyException("Symbol table layout doesn't match program at slot " + slot + ": " + symbolTable.getName(slot));
+      }
+   }
+
+   /**
+    * Evaluates a list against the values in a symbol table, which must already have passed
+    * checkLayout().  Safe to call from several threads at once.
+    */
+   public boolean evaluate(SymbolTable symbolTable, int list) {
+      int end = listOffsets.get(list + 1);
+      for (int node = listOffsets.get(list); node < end; node++)
+         if (test(symbolTable, node))
+            return outcomes.get(node) != 0;
+      throw new JiminyException("Decision list lacks default node");
+   }
+
+   /**
+    * Evaluates every list, storing the result for list l in results[l].
+    */
+   public void evaluateAll(SymbolTable symbolTable, boolean[] results) {
+      checkLayout(symbolTable);
+      if (results.length < numLists)
+         throw new JiminyException("Results array is too small: " + results.length + " < " + numLists);
+
+      for (int list = 0; list < numLists; list++)
+         results[list] = evaluate(symbolTable, list);
+   }
+
+   /**
+    * Reads the whole snapshot back into a CompiledRuleSet, for the evaluators that work on
+    * one.
+    */
+   public CompiledRuleSet toCompiledRuleSet() {
+      int[] listOffsetArray = new int[numLists + 1];
+      listOffsets.duplicate().get(listOffsetArray);
+      int[] slotArray = new int[numNodes];
+      slots.duplicate().get(slotArray);
+      int[] constantArray = new int[numNodes];
+      constants.duplicate().get(constantArray);
+      byte[] opcodeArray = new byte[numNodes];
+      opcodes.duplicate().get(opcodeArray);
+      boolean[] outcomeArray = new boolean[numNodes];
+      for (int node = 0; node < numNodes; node++)
+         outcomeArray[node] = outcomes.get(node) != 0;
+      String[] strings = new String[numStrings];
+      for (int i = 0; i < numStrings; i++)
+         strings[i] = getStringConstant(i);
+
+      return new CompiledRuleSet(listOffsetArray, opcodeArray, slotArray, constantArray, outcomeArray,
+            strings, variableNames.clone(), variableTypes.clone());
+   }
+
+   private boolean test(SymbolTable symbolTable, int node) {
+      byte opcode = opcodes.get(node);
+      int slot = slots.get(node);
+      int constant = constants.get(node);
+
+      switch (opcode & Opcode.TYPE_MASK) {
+         case Opcode.INT_TYPE:      return Comparisons.test(opcode, symbolTable.getIntValue(slot), constant);
+         case Opcode.FLOAT_TYPE:    return Comparisons.test(opcode, symbolTable.getFloatValue(slot), Float.intBitsToFloat(constant));
+         case Opcode.STRING_TYPE:   return Comparisons.test(opcode, symbolTable.getStringValue(slot), getStringConstant(constant));
+         case Opcode.BOOLEAN_TYPE:  return Comparisons.test(opcode, symbolTable.getBooleanValue(slot), constant != 0);
+         default:                   return Comparisons.test(opcode);
+      }
+   }
+
+   /**
+    * String constants are decoded the first time they're used.  Threads racing to decode
+    * the same one just do the work twice.
+    */
+   private String getStringConstant(int index) {
+      String string = stringConstants[index];
+      if (string == null) {
+         string = readString(index);
+         stringConstants[index] = string;
+      }
+      return string;
+   }
+
+   private String readString(int index) {
+      int start = stringIndex.get(index);
+      int end = stringIndex.get(index + 1);
+      byte[] bytes = new byte[end - start];
+      for (int i = 0; i < bytes.length; i++)
+         bytes[i] = stringData.get(start + i);
+      return new String(bytes, UTF8);
+   }
+
+   private ByteBuffer slice(long offset, long length) {
+      ByteBuffer view = buffer.duplicate();
+      view.position((int)offset);
+      view.limit((int)(offset + length));
+      return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+   }
+
+   private static byte[][] encodeStrings(CompiledRuleSet program) {
+      int numStrings = program.stringConstants.length;
+      byte[][] strings = new byte[numStrings + program.getNumVariables()][];
+      for (int i = 0; i < numStrings; i++)
+         strings[i] = program.stringConstants[i].getBytes(UTF8);
+      for (int slot = 0; slot < program.getNumVariables(); slot++)
+         strings[numStrings + slot] = program.getVariableName(slot).getBytes(UTF8);
+      return strings;
+   }
+
+   private static Layout getLayout(CompiledRuleSet program, byte[][] strings) {
+      int stringDataLength = 0;
+      for (byte[] string : strings)
+         stringDataLength += string.length;
+      return new Layout(program.getNumLists(), program.getNumNodes(), program.getNumVariables(), program.stringConstants.length, stringDataLength);
+   }
+
+   private static void write(CompiledRuleSet program, byte[][] strings, Layout layout, ByteBuffer buffer) {
+      int numNodes = program.getNumNodes();
+      buffer.putInt(MAGIC).putInt(VERSION).putInt(program.getNumLists()).putInt(numNodes).putInt(program.getNumVariables());
+      buffer.putInt(program.stringConstants.length).putInt((int)(layout.size - layout.stringData)).putInt(0).putLong(0);
+
+      buffer.position((int)layout.listOffsets);
+      buffer.asIntBuffer().put(program.listOffsets);
+      buffer.position((int)layout.slots);
+      buffer.asIntBuffer().put(program.slots);
+      buffer.position((int)layout.constants);
+      buffer.asIntBuffer().put(program.constants);
+
+      buffer.position((int)layout.stringIndex);
+      int stringOffset = 0;
+      for (byte[] string : strings) {
+         buffer.putInt(stringOffset);
+         stringOffset += string.length;
+      }
+      buffer.putInt(stringOffset);
+
+      buffer.put(program.opcodes);
+      for (int node = 0; node < numNodes; node++)
+         buffer.put(program.outcomes[node] ? (byte)1 : (byte)0);
+      for (int slot = 0; slot < program.getNumVariables(); slot++)
+         buffer.put((byte)program.getVariableType(slot).ordinal());
+      for (byte[] string : strings)
+         buffer.put(string);
+
+      buffer.putLong(CONTENT_HASH_OFFSET, hash(buffer, (int)layout.size));
+      buffer.rewind();
+   }
+
+   /**
+    * A 64-bit hash of the snapshot (skipping the hash itself), eight bytes at a time with
+    * the mixing steps of MurmurHash3.  This is for spotting changes, not for security.
+    */
+   private static long hash(ByteBuffer buffer, int size) {
+      long h = 0x4A494D494E59L ^ size;
+      for (int i = 0; i + 8 <= size; i += 8) {
+         if (i == CONTENT_HASH_OFFSET)
+            continue;
+         h = mix(h, buffer.getLong(i));
+      }
+      long tail = 0;
+      for (int i = size & ~7; i < size; i++)
+         tail |= (buffer.get(i) & 0xFFL) << ((i & 7) * 8);
+      h = mix(h, tail);
+
+      h ^= h >>> 33;
+      h *= 0xFF51AFD7ED558CCDL;
+      h ^= h >>> 33;
+      h *= 0xC4CEB9FE1A85EC53L;
+      h ^= h >>> 33;
+      return h;
+   }
+
+   private static long mix(long h, long k) {
+      k *= 0x87C37B91114253D5L;
+      k = Long.rotateLeft(k, 31);
+      k *= 0x4CF5AD432745937FL;
+      h ^= k;
+      return Long.rotateLeft(h, 27) * 5 + 0x52DCE729;
+   }
+
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("{").append(this.getClass().getSimpleName()).append(": ");
+      sb.append("lists: ").append(numLists);
+      sb.append("; nodes: ").append(numNodes);
+      sb.append("; variables: ").append(getNumVariables());
+      sb.append("; string constants: ").append(numStrings);
+      sb.append("; hash: ").append(Long.toHexString(contentHash));
+      sb.append("}");
+
+      return sb.toString();
+   }
+
+   /**
+    * Where each section starts, given the counts from the header.
+    */
+   private static class Layout {
+      final long listOffsets;
+      final long slots;
+      final long constants;
+      final long stringIndex;
+      final long opcodes;
+      final long outcomes;
+      final long types;
+      final long stringData;
+      final long size;
+
+      Layout(int numLists, int numNodes, int numVariables, int numStrings, int stringDataLength) {
+         if (numLists < 0 || numNodes < 0 || numVariables < 0 || numStrings < 0 || stringDataLength < 0)
+            throw new JiminyException("Invalid rule set snapshot header");
+         listOffsets = HEADER_SIZE;
+         slots = listOffsets + (numLists + 1L) * 4;
+         constants = slots + numNodes * 4L;
+         stringIndex = constants + numNodes * 4L;
+         opcodes = stringIndex + (numStrings + numVariables + 1L) * 4;
+         outcomes = opcodes + numNodes;
+         types = outcomes + numNodes;
+         stringData = types + numVariables;
+         size = stringData + stringDataLength;
+         if (size > Integer.MAX_VALUE)
+            throw new JiminyException("Rule set snapshot too large: " + size + " bytes");
+      }
+   }
+}
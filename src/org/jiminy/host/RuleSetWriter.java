@@ -0,0 +1,97 @@
+package org.jiminy.host;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import org.jiminy.JiminyException;
+import org.jiminy.domain.Operator;
+import org.jiminy.domain.Value;
+import org.jiminy.domain.expression.BinaryExpression;
+import org.jiminy.domain.expression.ConstantExpression;
+import org.jiminy.domain.expression.DecisionListExpression;
+import org.jiminy.domain.expression.Expression;
+import org.jiminy.domain.expression.VariableExpression;
+
+/**
+ * Writes decision lists in the format RuleSetParser reads, one list per line.  This is the
+ * format of DecisionListExpression.encode() except that variables are written by name, as
+ * EV{name}, rather than as their current values.
+ */
+public class RuleSetWriter {
+
+   public static void write(ArrayList<DecisionListExpression> decisionLists, File file) throws IOException {
+      write(decisionLists, new FileOutputStream(file));
+   }
+
+   /**
+    * Writes the lists and closes the stream.
+    */
+   public static void write(ArrayList<DecisionListExpression> decisionLists, OutputStream out) throws IOException {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 1 << 16);
+      try {
+         StringBuilder sb = new StringBuilder();
+         for (DecisionListExpression dl : decisionLists) {
+            sb.setLength(0);
+            encode(dl, sb);
+            writer.append(sb).append('\n');
+         }
+      } finally {
+         writer.close();
+      }
+   }
+
+   public static String encode(DecisionListExpression decisionList) {
+      StringBuilder sb = new StringBuilder();
+      encode(decisionList, sb);
+      return sb.toString();
+   }
+
+   private static void encode(DecisionListExpression decisionList, StringBuilder sb) {
+      int numNodes = 0;
+      for (DecisionListExpression node = decisionList; node != null; node = node.getNextNode())
+         numNodes++;
+
+      sb.append("DL").append(numNodes).append("{");
+      for (DecisionListExpression node = decisionList; node != null; node = node.getNextNode()) {
+         encode(node.getCondition(), sb);
+         sb.append(node.getNodeTrueValue() ? "T" : "F");
+      }
+      sb.append("}");
+   }
+
+   private static void encode(Expression expression, StringBuilder sb) {
+      if (expression instanceof VariableExpression) {
+         appendToken("EV{", ((VariableExpression)expression).getName(), sb);
+      } else if (expression instanceof ConstantExpression) {
+         Value value = expression.getValue(null);
+         switch (value.getType()) {
+            case BOOLEAN:  sb.append("CB{"); break;
+            case FLOAT:    sb.append("CF{"); break;
+            case INT:      sb.append("CI{"); break;
+            case STRING:   appendToken("CS{", value.getStringValue(), sb); return;
+            default:
+               throw new JiminyException("Unknown data type: " + value.getType()); // should never get here
+         }
+         sb.append(value.getStringValue()).append("}");
+      } else if (expression instanceof BinaryExpression) {
+         BinaryExpression binary = (BinaryExpression)expression;
+         sb.append("EB{");
+         encode(binary.getOperand1(), sb);
+         sb.append(Operator.encode(binary.getOperator()));
+         encode(binary.getOperand2(), sb);
+         sb.append("}");
+      } else
+         throw new JiminyException("Cannot write expression: " + expression);
+   }
+
+   private static void appendToken(String tag, String token, StringBuilder sb) {
+      if (token.indexOf('}') >= 0)
+         throw new JiminyException("Cannot write " + token + ": names and strings can't contain '}'");
+      sb.append(tag).append(token).append("}");
+   }
+}
@@ -0,0 +1,171 @@
+package org.jiminy.host;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import org.jiminy.JiminyException;
+import org.jiminy.domain.RecordBatch;
+import org.jiminy.domain.ResultMatrix;
+import org.jiminy.domain.SymbolTable;
+
+/**
+ * Scores a stream of records against a CompiledRuleSet in fixed-size batches, so the memory
+ * used doesn't depend on the size of the input.  A reader thread fills batches from a
+ * RecordReader, the calling thread evaluates them with a ParallelEvaluator and a writer
+ * thread passes the results to a ResultWriter, in the order the records were read.
+ *
+ * There is a fixed number of batches (each with its result matrix), and they go round from
+ * the reader to the evaluator to the writer and back.  If one stage falls behind the others
+ * run out of batches and wait for it, so a slow sink holds up reading rather than letting
+ * records pile up.
+ *
+ * If a stage fails the others stop doing any work but keep passing the batches on, so
+ * every thread gets to the end of the stream; run() then throws the first failure.
+ */
+public class ScoringPipeline {
+   public static final int DEFAULT_BATCH_SIZE = 4096;
+   public static final int DEFAULT_NUM_BATCHES = 3;
+
+   private final CompiledRuleSet program;
+   private final SymbolTable layout;
+   private final ParallelEvaluator evaluator;
+   private final int batchSize;
+   private final int numBatches;
+
+   public ScoringPipeline(CompiledRuleSet program, SymbolTable layout) {
+      this(program, layout, new ParallelEvaluator(program), DEFAULT_BATCH_SIZE, DEFAULT_NUM_BATCHES);
+   }
+
+   public ScoringPipeline(CompiledRuleSet program, SymbolTable layout, ParallelEvaluator evaluator, int batchSize, int numBatches) {
+      if (batchSize < 1 || numBatches < 1)
+         throw new JiminyException("Invalid pipeline size: " + numBatches + " batches of " + batchSize);
+      program.checkLayout(layout);
+      this.program = program;
+      this.layout = layout;
+      this.evaluator = evaluator;
+      this.batchSize = batchSize;
+      this.numBatches = numBatches;
+   }
+
+   public CompiledRuleSet getProgram() {
+      return program;
+   }
+
+   /**
+    * Scores every record the reader has and returns the number of records scored.  Neither
+    * the reader nor the writer is closed.
+    */
+   public long run(final RecordReader reader, final ResultWriter writer) throws IOException {
+      // Each queue can hold every batch plus the end of the stream
+      final BlockingQueue<Batch> free = new ArrayBlockingQueue<Batch>(numBatches + 1);
+      final BlockingQueue<Batch> filled = new ArrayBlockingQueue<Batch>(numBatches + 1);
+      final BlockingQueue<Batch> scored = new ArrayBlockingQueue<Batch>(numBatches + 1);
+      final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+      for (int i = 0; i < numBatches; i++)
+         free.add(new Batch(new RecordBatch(layout, batchSize), new ResultMatrix(batchSize, program.getNumLists())));
+
+      Thread readerThread = new Thread("ScoringPipeline reader") {
+         @Override
+         public void run() {
+            try {
+               while (true) {
+                  Batch batch = free.take();
+                  if (failure.get() == null) {
+                     try {
+                        batch.numRecords = reader.read(batch.records);
+                     } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                     }
+                  }
+                  if (failure.get() != null || batch.numRecords == 0) {
+                     batch.numRecords = 0;
+                     filled.put(batch);
+                     filled.put(Batch.END);
+                     return;
+                  }
+                  filled.put(batch);
+               }
+            } catch (InterruptedException e) {
+               failure.compareAndSet(null, e);
+            }
+         }
+      };
+
+      Thread writerThread = new Thread("ScoringPipeline writer") {
+         @Override
+         public void run() {
+            try {
+               while (true) {
+                  Batch batch = scored.take();
+                  if (batch == Batch.END)
+                     return;
+                  if (failure.get() == null && batch.numRecords > 0) {
+                     try {
+                        writer.write(batch.results, batch.numRecords);
+                     } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                     }
+                  }
+                  free.put(batch);
+               }
+            } catch (InterruptedException e) {
+               failure.compareAndSet(null, e);
+            }
+         }
+      };
+
+      readerThread.start();
+      writerThread.start();
+      long numRecords = 0;
+      try {
+         while (true) {
+            Batch batch = filled.take();
+            if (batch != Batch.END && batch.numRecords > 0 && failure.get() == null) {
+               try {
+                  evaluator.evaluate(batch.records, batch.numRecords, batch.results);
+                  numRecords += batch.numRecords;
+               } catch (Throwable e) {
+                  failure.compareAndSet(null, e);
+               }
+            }
+            scored.put(batch);
+            if (batch == Batch.END)
+               break;
+         }
+         readerThread.join();
+         writerThread.join();
+      } catch (InterruptedException e) {
+         readerThread.interrupt();
+         writerThread.interrupt();
+         failure.compareAndSet(null, e);
+      }
+
+      Throwable e = failure.get();
+      if (e instanceof IOException)
+         throw (IOException)e;
+      if (e instanceof Error)
+         throw (Error)e;
+      if (e instanceof RuntimeException)
+         throw (RuntimeException)e;
+      if (e != null)
+         throw new JiminyException("Scoring failed", e);
+      return numRecords;
+   }
+
+   /**
+    * A batch of records and the matrix its results go in.
+    */
+   private static class Batch {
+      static final Batch END = new Batch(null, null);
+
+      final RecordBatch records;
+      final ResultMatrix results;
+      int numRecords = 0;
+
+      Batch(RecordBatch records, ResultMatrix results) {
+         this.records = records;
+         this.results = results;
+      }
+   }
+}
@@ -0,0 +1,114 @@
+package org.jiminy.host;
+
+import java.util.Arrays;
+
+import org.jiminy.JiminyException;
+import org.jiminy.domain.SymbolTable;
+
+/**
+ * Evaluates a CompiledRuleSet like Interpreter, but through a PredicateTable: the first
+ * node to need a predicate evaluates it and every later node with the same (or the
+ * opposite) predicate reuses the result.  Each distinct predicate is therefore evaluated
+ * at most once per pass, and only if some list gets as far as it.
+ *
+ * Results are remembered for one evaluateAll() at a time, so values in the symbol table can
+ * change between calls as with Interpreter.
+ */
+public class SharedPredicateInterpreter {
+   private final CompiledRuleSet program;
+   private final PredicateTable predicates;
+   private final int[] nodePredicates;
+   private final int[] stamps;
+   private final boolean[] values;
+   private int epoch = 0;
+   private int numEvaluated = 0;
+   private SymbolTable symbolTable = null;
+
+   public SharedPredicateInterpreter(CompiledRuleSet program) {
+      this(new PredicateTable(program));
+   }
+
+   public SharedPredicateInterpreter(PredicateTable predicates) {
+      this.program = predicates.getProgram();
+      this.predicates = predicates;
+      this.nodePredicates = predicates.getNodePredicates();
+      this.stamps = new int[predicates.getNumPredicates()];
+      this.values = new boolean[predicates.getNumPredicates()];
+   }
+
+   public CompiledRuleSet getProgram() {
+      return program;
+   }
+
+   public PredicateTable getPredicates() {
+      return predicates;
+   }
+
+   /**
+    * Binds the interpreter to the table the program reads its variables from, as
+    * Interpreter.bind() does.
+    */
+   public void bind(SymbolTable symbolTable) {
+      program.checkLayout(symbolTable);
+      this.symbolTable = symbolTable;
+   }
+
+   /**
+    * Returns how many predicates the last evaluateAll() evaluated.
+    */
+   public int getNumEvaluated() {
+      return numEvaluated;
+   }
+
+   /**
+    * Evaluates every list in the program, storing the result for list l in results[l].
+    */
+   public void evaluateAll(boolean[] results) {
+      if (symbolTable == null)
+         throw new JiminyException("Interpreter is not bound to a symbol table");
+      if (results.length < program.getNumLists())
+         throw new JiminyException("Results array is too small: " + results.length + " < " + program.getNumLists());
+
+      if (++epoch == Integer.MAX_VALUE) {
+         Arrays.fill(stamps, 0);
+         epoch = 1;
+      }
+      numEvaluated = 0;
+      for (int list = 0; list < program.getNumLists(); list++)
+         results[list] = evaluateList(list);
+   }
+
+   private boolean evaluateList(int list) {
+      int end = program.listOffsets[list + 1];
+      for (int node = program.listOffsets[list]; node < end; node++) {
+         int reference = nodePredicates[node];
+         int predicate = reference >>> 1;
+         boolean value;
+         if (stamps[predicate] == epoch)
+            value = values[predicate];
+         else {
+            value = test(predicate);
+            values[predicate] = value;
+            stamps[predicate] = epoch;
+            numEvaluated++;
+         }
+         if (value != ((reference & 1) != 0))
+            return program.outcomes[node];
+      }
+      throw new JiminyException("Decision list lacks default node");
+   }
+
+   private boolean test(int predicate) {
+      byte opcode = predicates.getOpcode(predicate);
+      int slot = predicates.getSlot(predicate);
+      int constant = predicates.getConstant(predicate);
+
+      switch (opcode & Opcode.TYPE_MASK) {
+         case Opcode.INT_TYPE:      return Comparisons.test(opcode, symbolTable.getIntValue(slot), constant);
+         case Opcode.FLOAT_TYPE:    return Comparisons.test(opcode, symbolTable.getFloatValue(slot), Float.intBitsToFloat(constant));
+         case Opcode.STRING_TYPE:   return Comparisons.test(opcode, symbolTable.getStringValue(slot), program.stringConstants[constant]);
+         case Opcode.BOOLEAN_TYPE:  return Comparisons.test(opcode, symbolTable.getBooleanValue(slot), constant != 0);
+         default:                   return Comparisons.test(opcode);
+      }
+   }
+}
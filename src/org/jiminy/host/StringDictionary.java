@@ -0,0 +1,108 @@
+package org.jiminy.host;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.TreeSet;
+import org.jiminy.JiminyException;
+import org.jiminy.domain.DataType;
+import org.jiminy.domain.SymbolTable;
+
+/**
+ * Maps strings to int codes that sort the same way the strings do, so a string comparison
+ * can be done as an int comparison of the codes.
+ *
+ * The strings in the dictionary are sorted and string i gets code 2i.  A string that isn't
+ * in the dictionary gets the odd code between the codes of its neighbours, 2i+1 where i is
+ * the number of dictionary strings less than it.  That keeps every comparison between a
+ * dictionary string and any other string exact: a string not in the dictionary is never
+ * equal to one that is, and it sorts between the right two.  (Two strings that aren't in
+ * the dictionary can share a code, so only one side of a comparison can be such a string;
+ * a dictionary holding a program's string constants covers every comparison it makes.)
+ */
+public class StringDictionary {
+   private final String[] strings;
+   private final HashMap<String,Integer> codes;
+
+   public StringDictionary(Collection<String> strings) {
+      this.strings = new TreeSet<String>(strings).toArray(new String[0]);
+      this.codes = new HashMap<String,Integer>(this.strings.length * 2);
+      for (int i = 0; i < this.strings.length; i++)
+         codes.put(this.strings[i], i << 1);
+   }
+
+   /**
+    * A dictionary of the program's string constants.
+    */
+   public StringDictionary(CompiledRuleSet program) {
+      this(Arrays.asList(program.stringConstants));
+   }
+
+   /**
+    * A dictionary of the program's string constants and the string values in a table.
+    */
+   public StringDictionary(CompiledRuleSet program, SymbolTable symbolTable) {
+      this(getStrings(program, symbolTable));
+   }
+
+   private static TreeSet<String> getStrings(CompiledRuleSet program, SymbolTable symbolTable) {
+      TreeSet<String> strings = new TreeSet<String>(Arrays.asList(program.stringConstants));
+      for (int slot = 0; slot < symbolTable.size(); slot++)
+         if (symbolTable.getType(slot) == DataType.STRING)
+            strings.add(symbolTable.getStringValue(slot));
+      return strings;
+   }
+
+   public int size() {
+      return strings.length;
+   }
+
+   public boolean contains(String string) {
+      return codes.containsKey(string);
+   }
+
+   public int getCode(String string) {
+      Integer code = codes.get(string);
+      if (code != null)
+         return code;
+      int index = Arrays.binarySearch(strings, string);
+      return ((-index - 1) << 1) | 1;
+   }
+
+   /**
+    * Returns the string with an (even) code.
+    */
+   public String getString(int code) {
+      if ((code & 1) != 0 || code < 0 || (code >> 1) >= strings.length)
+         throw new JiminyException("Not a dictionary code: " + code);
+      return strings[code >> 1];
+   }
+
+   /**
+    * Stores the codes of the first count strings of a column in codes.
+    */
+   public void encode(String[] column, int count, int[] codes) {
+      for (int i = 0; i < count; i++)
+         codes[i] = getCode(column[i]);
+   }
+
+   /**
+    * Returns the int opcode that compares codes the way a string opcode compares strings.
+    */
+   public static byte toIntOpcode(byte opcode) {
+      if ((opcode & Opcode.TYPE_MASK) != Opcode.STRING_TYPE)
+         throw new JiminyException("Not a string opcode: " + opcode);
+      return (byte)((opcode & ~Opcode.TYPE_MASK) | Opcode.INT_TYPE);
+   }
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("{").append(this.getClass().getSimpleName()).append(": ");
+      sb.append("strings: ").append(strings.length);
+      sb.append("}");
+
+      return sb.toString();
+   }
+}
@@ -0,0 +1,547 @@
+package org.jiminy.host;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.jiminy.JiminyException;
+import org.jiminy.domain.DataType;
+import org.jiminy.domain.Operator;
+import org.jiminy.domain.RecordBatch;
+import org.jiminy.domain.SymbolTable;
+import org.jiminy.domain.Value;
+import org.jiminy.domain.expression.BinaryExpression;
+import org.jiminy.domain.expression.ConstantExpression;
+import org.jiminy.domain.expression.DecisionListExpression;
+import org.jiminy.domain.expression.Expression;
+import org.jiminy.domain.expression.VariableExpression;
+
+/**
+ * Generates symbol tables, rule sets and record batches for benchmarking, reproducibly and
+ * in parallel.  Unlike DataGenerator the shape of the workload can be set:
+ *
+ *    variable skew        how the nodes pick their variable: the variable of rank r (ranked
+ *                         by name, var1 first) with probability proportional to 1 / r^skew,
+ *                         so 0 is uniform and 1 is Zipf's law
+ *    match probability    the chance that a node's comparison is true for the values in the
+ *                         symbol table
+ *    list lengths         the number of comparisons in a list, from min to max, each one
+ *                         more being decay times as likely (1 is uniform); every list also
+ *                         ends with a default node, as DataGenerator's do
+ *    int range, strings   random ints are drawn from [0, intRange) and random strings from
+ *                         "str1" to "str<numStrings>"
+ *    record similarity    the chance that a generated record has the symbol table's value
+ *                         for a variable rather than a random one
+ *
+ * Lists and records are generated in chunks of CHUNK_SIZE, each from its own
+ * SplittableRandom seeded from the seed and the chunk's index, and the chunks are spread
+ * over a fork/join pool.  So the output depends only on the seed and the settings, not on
+ * the number of threads, and generateDecisionLists() builds the same rules that
+ * generateProgram() compiles.
+ */
+public class WorkloadGenerator {
+   public static final int CHUNK_SIZE = 1024;
+
+   private static final Operator[][] OPERATORS = new Operator[DataType.values().length][];
+   private static final int MAX_SHARED_INTS = 1 << 16;
+
+   // Each kind of output draws from its own streams
+   private static final long VALUES = 1;
+   private static final long LENGTHS = 2;
+   private static final long NODES = 3;
+   private static final long RECORDS = 4;
+
+   static {
+      for (DataType type : DataType.values()) {
+         ArrayList<Operator> operators = new ArrayList<Operator>();
+         for (Operator operator : Operator.values())
+            if (isValidOperator(operator, type))
+               operators.add(operator);
+         OPERATORS[type.ordinal()] = operators.toArray(new Operator[operators.size()]);
+      }
+   }
+
+   private final long seed;
+   private final ForkJoinPool pool;
+   private double variableSkew = 0;
+   private double matchProbability = 0.25;
+   private int minListLength = 1;
+   private int maxListLength = 10;
+   private double listLengthDecay = 1;
+   private int intRange = 10000;
+   private int numStrings = 10000;
+   private double recordSimilarity = 0.5;
+
+   public WorkloadGenerator(long seed) {
+      this(seed, ForkJoinPool.commonPool());
+   }
+
+   public WorkloadGenerator(long seed, ForkJoinPool pool) {
+      this.seed = seed;
+      this.pool = pool;
+   }
+
+   public void setVariableSkew(double variableSkew) {
+      if (!(variableSkew >= 0))
+         throw new JiminyException("Invalid variable skew: " + variableSkew);
+      this.variableSkew = variableSkew;
+   }
+
+   public void setMatchProbability(double matchProbability) {
+      this.matchProbability = checkProbability(matchProbability);
+   }
+
+   public void setListLengths(int minListLength, int maxListLength, double listLengthDecay) {
+      if (minListLength < 0 || maxListLength < minListLength || !(listLengthDecay > 0))
+         throw new JiminyException("Invalid list lengths: " + minListLength + " to " + maxListLength + ", decay " + listLengthDecay);
+      this.minListLength = minListLength;
+      this.maxListLength = maxListLength;
+      this.listLengthDecay = listLengthDecay;
+   }
+
+   public void setIntRange(int intRange) {
+      if (intRange < 1)
+         throw new JiminyException("Invalid int range: " + intRange);
+      this.intRange = intRange;
+   }
+
+   public void setNumStrings(int numStrings) {
+      if (numStrings < 1)
+         throw new JiminyException("Invalid number of strings: " + numStrings);
+      this.numStrings = numStrings;
+   }
+
+   public void setRecordSimilarity(double recordSimilarity) {
+      this.recordSimilarity = checkProbability(recordSimilarity);
+   }
+
+   private static double checkProbability(double probability) {
+      if (!(probability >= 0 && probability <= 1))
+         throw new JiminyException("Invalid probability: " + probability);
+      return probability;
+   }
+
+   /**
+    * Returns variables var1 to var<numVariables>, each of a random type with a random value.
+    */
+   public HashMap<String,Value> generateValues(int numVariables) {
+      DataType[] types = DataType.values();
+      String[] strings = getStrings();
+      SplittableRandom random = random(VALUES, 0);
+      HashMap<String,Value> values = new HashMap<String,Value>(numVariables * 2);
+      for (int i = 1; i <= numVariables; i++) {
+         switch (types[random.nextInt(types.length)]) {
+            case BOOLEAN:  values.put("var" + i, Value.valueOf(random.nextBoolean())); break;
+            case FLOAT:    values.put("var" + i, Value.valueOf(nextFloat(random))); break;
+            case INT:      values.put("var" + i, Value.valueOf(random.nextInt(intRange))); break;
+            case STRING:   values.put("var" + i, Value.valueOf(strings[random.nextInt(numStrings)])); break;
+            default:
+         }
+      }
+      return values;
+   }
+
+   /**
+    * Generates decision lists over the variables of a symbol table.  The lists aren't bound.
+    * Nodes that test the same variable share its expression, as do nodes that compare
+    * against the same string (or int, for int ranges up to 65536).
+    */
+   public ArrayList<DecisionListExpression> generateDecisionLists(SymbolTable symbolTable, int numLists) {
+      final CompiledRuleSet program = generateProgram(symbolTable, numLists);
+
+      final VariableExpression[] variables = new VariableExpression[symbolTable.size()];
+      for (int slot = 0; slot < variables.length; slot++)
+         variables[slot] = new VariableExpression(symbolTable.getName(slot));
+      final ConstantExpression[] strings = new ConstantExpression[program.stringConstants.length];
+      for (int i = 0; i < strings.length; i++)
+         strings[i] = ConstantExpression.valueOf(Value.valueOf(program.stringConstants[i]));
+      final ConstantExpression[] ints = new ConstantExpression[(intRange <= MAX_SHARED_INTS) ? intRange : 0];
+      for (int i = 0; i < ints.length; i++)
+         ints[i] = ConstantExpression.valueOf(Value.valueOf(i));
+
+      final DecisionListExpression[] decisionLists = new DecisionListExpression[numLists];
+      generate(numLists, new Chunk() {
+         @Override
+         public void generate(int firstList, int lastList) {
+            for (int list = firstList; list < lastList; list++) {
+               DecisionListExpression lastNode = null;
+               for (int node = program.listOffsets[list]; node < program.listOffsets[list + 1]; node++) {
+                  DecisionListExpression next = new DecisionListExpression(getCondition(node), program.outcomes[node]);
+                  if (lastNode == null)
+                     decisionLists[list] = next;
+                  else
+                     lastNode.setNextNode(next);
+                  lastNode = next;
+               }
+            }
+         }
+
+         private Expression getCondition(int node) {
+            byte opcode = program.opcodes[node];
+            if (!Opcode.isComparison(opcode))
+               return (opcode == Opcode.ALWAYS) ? ConstantExpression.TRUE : ConstantExpression.FALSE;
+
+            int constant = program.constants[node];
+            Expression operand2;
+            switch (Opcode.getType(opcode)) {
+               case BOOLEAN:  operand2 = (constant != 0) ? ConstantExpression.TRUE : ConstantExpression.FALSE; break;
+               case FLOAT:    operand2 = ConstantExpression.valueOf(Value.valueOf(Float.intBitsToFloat(constant))); break;
+               case STRING:   operand2 = strings[constant]; break;
+               default:
+                  operand2 = (constant >= 0 && constant < ints.length) ? ints[constant] : ConstantExpression.valueOf(Value.valueOf(constant));
+            }
+            return new BinaryExpression(variables[program.slots[node]], Opcode.getOperator(opcode), operand2);
+         }
+      });
+      return new ArrayList<DecisionListExpression>(Arrays.asList(decisionLists));
+   }
+
+   /**
+    * Generates decision lists over the variables of a symbol table, straight into a
+    * CompiledRuleSet.  The string constants are the strings random strings are drawn from
+    * followed by any other string values in the table.
+    */
+   public CompiledRuleSet generateProgram(final SymbolTable symbolTable, int numLists) {
+      if (numLists < 0)
+         throw new JiminyException("Invalid number of decision lists: " + numLists);
+      if (symbolTable.size() == 0 && maxListLength > 0)
+         throw new JiminyException("No variables to generate rules for");
+
+      // Pick each list's length, then lay the lists out
+      final double[] lengthCdf = getLengthCdf();
+      final int[] listOffsets = new int[numLists + 1];
+      generate(numLists, new Chunk() {
+         @Override
+         public void generate(int firstList, int lastList) {
+            SplittableRandom random = random(LENGTHS, firstList / CHUNK_SIZE);
+            for (int list = firstList; list < lastList; list++)
+               listOffsets[list + 1] = minListLength + sample(lengthCdf, random) + 1;
+         }
+      });
+      long numNodes = 0;
+      for (int list = 0; list < numLists; list++) {
+         numNodes += listOffsets[list + 1];
+         if (numNodes > Integer.MAX_VALUE)
+            throw new JiminyException("Too many nodes for a compiled rule set: " + numLists + " lists");
+         listOffsets[list + 1] = (int)numNodes;
+      }
+
+      final int[] variables = rankVariables(symbolTable);
+      final double[] variableCdf = getVariableCdf(variables.length);
+      final String[] strings = getStrings(symbolTable);
+      final HashMap<String,Integer> stringIndexes = new HashMap<String,Integer>(strings.length * 2);
+      for (int i = 0; i < strings.length; i++)
+         stringIndexes.put(strings[i], i);
+
+      final byte[] opcodes = new byte[(int)numNodes];
+      final int[] slots = new int[(int)numNodes];
+      final int[] constants = new int[(int)numNodes];
+      final boolean[] outcomes = new boolean[(int)numNodes];
+      generate(numLists, new Chunk() {
+         @Override
+         public void generate(int firstList, int lastList) {
+            SplittableRandom random = random(NODES, firstList / CHUNK_SIZE);
+            for (int list = firstList; list < lastList; list++) {
+               int defaultNode = listOffsets[list + 1] - 1;
+               for (int node = listOffsets[list]; node < defaultNode; node++) {
+                  int slot = variables[sample(variableCdf, random)];
+                  generateComparison(symbolTable, slot, strings, stringIndexes, random, node, opcodes, constants);
+                  slots[node] = slot;
+                  outcomes[node] = random.nextBoolean();
+               }
+               opcodes[defaultNode] = Opcode.ALWAYS;
+               slots[defaultNode] = -1;
+               outcomes[defaultNode] = random.nextBoolean();
+            }
+         }
+      });
+
+      String[] variableNames = new String[symbolTable.size()];
+      DataType[] variableTypes = new DataType[symbolTable.size()];
+      for (int slot = 0; slot < symbolTable.size(); slot++) {
+         variableNames[slot] = symbolTable.getName(slot);
+         variableTypes[slot] = symbolTable.getType(slot);
+      }
+
+      return new CompiledRuleSet(listOffsets, opcodes, slots, constants, outcomes, strings, variableNames, variableTypes);
+   }
+
+   /**
+    * Picks an operator and a constant for a comparison of a variable, then negates the
+    * operator if need be to make the comparison's result for the variable's value in the
+    * table come out as it should.  Half of the constants are the value itself.
+    */
+   private void generateComparison(SymbolTable symbolTable, int slot, String[] strings, HashMap<String,Integer> stringIndexes,
+         SplittableRandom random, int node, byte[] opcodes, int[] constants) {
+      DataType type = symbolTable.getType(slot);
+      boolean match = random.nextDouble() < matchProbability;
+      Operator[] operators = OPERATORS[type.ordinal()];
+      byte opcode = Opcode.get(type, operators[random.nextInt(operators.length)]);
+      boolean useValue = random.nextBoolean();
+
+      int constant;
+      boolean result;
+      switch (type) {
+         case BOOLEAN: {
+            boolean value = symbolTable.getBooleanValue(slot);
+            boolean c = useValue ? value : random.nextBoolean();
+            constant = c ? 1 : 0;
+            result = Comparisons.test(opcode, value, c);
+            // AND and OR can't be negated, so fall back on EQ or NE
+            if (result != match && Opcode.negate(opcode) < 0) {
+               opcode = (match == (value == c)) ? Opcode.BOOLEAN_EQ : Opcode.BOOLEAN_NE;
+               result = match;
+            }
+            break;
+         }
+         case FLOAT: {
+            float value = symbolTable.getFloatValue(slot);
+            float c = useValue ? value : nextFloat(random);
+            constant = Float.floatToRawIntBits(c);
+            result = Comparisons.test(opcode, value, c);
+            break;
+         }
+         case INT: {
+            int value = symbolTable.getIntValue(slot);
+            constant = useValue ? value : random.nextInt(intRange);
+            result = Comparisons.test(opcode, value, constant);
+            break;
+         }
+         case STRING: {
+            String value = symbolTable.getStringValue(slot);
+            constant = useValue ? stringIndexes.get(value) : random.nextInt(numStrings);
+            result = Comparisons.test(opcode, value, strings[constant]);
+            break;
+         }
+         default:
+            throw new JiminyException("Unknown data type: " + type); // should never get here
+      }
+
+      if (result != match && Opcode.negate(opcode) >= 0)
+         opcode = (byte)Opcode.negate(opcode);
+      opcodes[node] = opcode;
+      constants[node] = constant;
+   }
+
+   /**
+    * Generates records with the layout of a symbol table.
+    */
+   public RecordBatch generateRecords(final SymbolTable symbolTable, int numRecords) {
+      final RecordBatch batch = new RecordBatch(symbolTable, numRecords);
+      final String[] strings = getStrings();
+      generate(numRecords, new Chunk() {
+         @Override
+         public void generate(int firstRecord, int lastRecord) {
+            SplittableRandom random = random(RECORDS, firstRecord / CHUNK_SIZE);
+            for (int slot = 0; slot < symbolTable.size(); slot++) {
+               switch (symbolTable.getType(slot)) {
+                  case BOOLEAN: {
+                     boolean[] column = batch.getBooleanColumn(slot);
+                     boolean value = symbolTable.getBooleanValue(slot);
+                     for (int record = firstRecord; record < lastRecord; record++)
+                        column[record] = (random.nextDouble() < recordSimilarity) ? value : random.nextBoolean();
+                     break;
+                  }
+                  case FLOAT: {
+                     float[] column = batch.getFloatColumn(slot);
+                     float value = symbolTable.getFloatValue(slot);
+                     for (int record = firstRecord; record < lastRecord; record++)
+                        column[record] = (random.nextDouble() < recordSimilarity) ? value : nextFloat(random);
+                     break;
+                  }
+                  case INT: {
+                     int[] column = batch.getIntColumn(slot);
+                     int value = symbolTable.getIntValue(slot);
+                     for (int record = firstRecord; record < lastRecord; record++)
+                        column[record] = (random.nextDouble() < recordSimilarity) ? value : random.nextInt(intRange);
+                     break;
+                  }
+                  case STRING: {
+                     String[] column = batch.getStringColumn(slot);
+                     String value = symbolTable.getStringValue(slot);
+                     for (int record = firstRecord; record < lastRecord; record++)
+                        column[record] = (random.nextDouble() < recordSimilarity) ? value : strings[random.nextInt(numStrings)];
+                     break;
+                  }
+                  default:
+               }
+            }
+         }
+      });
+      return batch;
+   }
+
+   private SplittableRandom random(long stream, int chunk) {
+      return new SplittableRandom(mix(mix(seed + stream * 0x9e3779b97f4a7c15L) + chunk));
+   }
+
+   /**
+    * The SplitMix64 finalizer, so that neighbouring chunks get unrelated seeds.
+    */
+   private static long mix(long z) {
+      z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+      z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+      return z ^ (z >>> 31);
+   }
+
+   private static float nextFloat(SplittableRandom random) {
+      return (random.nextInt() >>> 8) * 0x1.0p-24f;
+   }
+
+   /**
+    * Returns an index into a table of cumulative weights, with probability proportional to
+    * its weight.
+    */
+   private static int sample(double[] cdf, SplittableRandom random) {
+      int index = Arrays.binarySearch(cdf, random.nextDouble() * cdf[cdf.length - 1]);
+      if (index < 0)
+         index = -index - 1;
+      return Math.min(index, cdf.length - 1);
+   }
+
+   private double[] getVariableCdf(int numVariables) {
+      double[] cdf = new double[Math.max(numVariables, 1)];
+      double total = 0;
+      for (int rank = 0; rank < numVariables; rank++) {
+         total += Math.pow(rank + 1, -variableSkew);
+         cdf[rank] = total;
+      }
+      return cdf;
+   }
+
+   private double[] getLengthCdf() {
+      double[] cdf = new double[maxListLength - minListLength + 1];
+      double weight = 1;
+      double total = 0;
+      for (int i = 0; i < cdf.length; i++) {
+         total += weight;
+         cdf[i] = total;
+         weight *= listLengthDecay;
+      }
+      return cdf;
+   }
+
+   /**
+    * Returns the slots of a table's variables, ordered by name with shorter names first, so
+    * that var2 comes before var10.
+    */
+   private static int[] rankVariables(final SymbolTable symbolTable) {
+      Integer[] slots = new Integer[symbolTable.size()];
+      for (int slot = 0; slot < slots.length; slot++)
+         slots[slot] = slot;
+      Arrays.sort(slots, new Comparator<Integer>() {
+         @Override
+         public int compare(Integer a, Integer b) {
+            String nameA = symbolTable.getName(a);
+            String nameB = symbolTable.getName(b);
+            return (nameA.length() != nameB.length()) ? nameA.length() - nameB.length() : nameA.compareTo(nameB);
+         }
+      });
+
+      int[] ranked = new int[slots.length];
+      for (int i = 0; i < ranked.length; i++)
+         ranked[i] = slots[i];
+      return ranked;
+   }
+
+   private String[] getStrings() {
+      String[] strings = new String[numStrings];
+      for (int i = 0; i < numStrings; i++)
+         strings[i] = "str" + (i + 1);
+      return strings;
+   }
+
+   /**
+    * The strings random strings are drawn from, then the table's other string values.
+    */
+   private String[] getStrings(SymbolTable symbolTable) {
+      ArrayList<String> strings = new ArrayList<String>(Arrays.asList(getStrings()));
+      HashMap<String,Integer> indexes = new HashMap<String,Integer>(strings.size() * 2);
+      for (int i = 0; i < strings.size(); i++)
+         indexes.put(strings.get(i), i);
+      for (int slot = 0; slot < symbolTable.size(); slot++) {
+         if (symbolTable.getType(slot) == DataType.STRING && !indexes.containsKey(symbolTable.getStringValue(slot))) {
+            indexes.put(symbolTable.getStringValue(slot), strings.size());
+            strings.add(symbolTable.getStringValue(slot));
+         }
+      }
+      return strings.toArray(new String[strings.size()]);
+   }
+
+   private static boolean isValidOperator(Operator operator, DataType type) {
+      switch (type) {
+         case BOOLEAN:
+            return operator != Operator.GREATER_THAN && operator != Operator.GREATER_THAN_OR_EQUAL_TO &&
+                   operator != Operator.LESS_THAN && operator != Operator.LESS_THAN_OR_EQUAL_TO;
+         case FLOAT:
+         case INT:
+            return operator != Operator.LOGICAL_AND && operator != Operator.LOGICAL_OR;
+         case STRING:
+            return operator == Operator.EQUAL_TO || operator == Operator.NOT_EQUAL_TO;
+         default:
+            return true;
+      }
+   }
+
+   /**
+    * Generates [first, last) of the lists or records, which always starts on a chunk.
+    */
+   private interface Chunk {
+      void generate(int first, int last);
+   }
+
+   /**
+    * Runs count items' chunks on the pool, halving the range of chunks until there's one.
+    */
+   private void generate(int count, Chunk chunk) {
+      pool.invoke(new ChunkTask(chunk, 0, (count + CHUNK_SIZE - 1) / CHUNK_SIZE, count));
+   }
+
+   private static class ChunkTask extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+
+      private final Chunk chunk;
+      private final int firstChunk;
+      private final int lastChunk;
+      private final int count;
+
+      ChunkTask(Chunk chunk, int firstChunk, int lastChunk, int count) {
+         this.chunk = chunk;
+         this.firstChunk = firstChunk;
+         this.lastChunk = lastChunk;
+         this.count = count;
+      }
+
+      @Override
+      protected void compute() {
+         if (lastChunk - firstChunk <= 1) {
+            if (firstChunk < lastChunk)
+               chunk.generate(firstChunk * CHUNK_SIZE, Math.min(lastChunk * CHUNK_SIZE, count));
+            return;
+         }
+         int middle = firstChunk + (lastChunk - firstChunk) / 2;
+         invokeAll(new ChunkTask(chunk, firstChunk, middle, count), new ChunkTask(chunk, middle, lastChunk, count));
+      }
+   }
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("{").append(this.getClass().getSimpleName()).append(": ");
+      sb.append("seed: ").append(seed);
+      sb.append("; variableSkew: ").append(variableSkew);
+      sb.append("; matchProbability: ").append(matchProbability);
+      sb.append("; listLengths: ").append(minListLength).append("-").append(maxListLength);
+      sb.append("; listLengthDecay: ").append(listLengthDecay);
+      sb.append("; intRange: ").append(intRange);
+      sb.append("; numStrings: ").append(numStrings);
+      sb.append("; recordSimilarity: ").append(recordSimilarity);
+      sb.append("}");
+
+      return sb.toString();
+   }
+}
@@ -0,0 +1,184 @@
+package org.jiminy.host;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.jiminy.JiminyException;
+
+/**
+ * ColumnKernels' int and float comparisons on the Vector API: each vector of rows is
+ * compared against the constant in one go, and the lanes of the resulting mask are packed
+ * into the row bitmask.  Rows left over after the last whole vector go through the scalar
+ * loops.
+ *
+ * The mask isn't packed with VectorMask.toLong(), which Java 17 doesn't intrinsify: it boxes
+ * the mask and loops over its lanes, which made the kernels slower than the scalar loops.
+ * Instead each lane's bit is blended in under the mask and the lanes are ORed together,
+ * which stays in vector registers.  Vectors are at most 512 bits, so a mask fits an int.
+ *
+ * GT, GE, LT and LE on floats follow Float.compare(), as Comparisons does, rather than the
+ * IEEE comparisons the vector compares do: both sides are mapped to ints that order the
+ * same way Float.compare() does (NaN above everything, -0.0 below 0.0) and compared as ints.
+ *
+ * Compiled separately from the rest of the tree, with --add-modules jdk.incubator.vector
+ * (Java 16 or later) and src on the classpath; ColumnKernels loads it by name.
+ */
+final class VectorColumnKernels implements ColumnKernels.VectorKernels {
+   private static final VectorSpecies<Integer> INTS = (IntVector.SPECIES_PREFERRED.vectorBitSize() <= 512) ? IntVector.SPECIES_PREFERRED : IntVector.SPECIES_512;
+   private static final VectorSpecies<Float> FLOATS = VectorSpecies.of(float.class, INTS.vectorShape());
+   private static final IntVector LANE_BITS = IntVector.broadcast(INTS, 1).lanewise(VectorOperators.LSHL, IntVector.zero(INTS).addIndex(1));
+   private static final int CANONICAL_NAN = Float.floatToIntBits(Float.NaN);
+
+   // Each operator has its own method, so the comparison is a constant wherever the method
+   // is compiled and the compare is always intrinsified
+
+   @Override
+   public long test(byte opcode, int[] column, int constant, int first, int count) {
+      int bound = INTS.loopBound(count);
+      long mask;
+      switch (opcode) {
+         case Opcode.INT_EQ:  mask = testEq(column, constant, first, bound); break;
+         case Opcode.INT_GT:  mask = testGt(column, constant, first, bound); break;
+         case Opcode.INT_GE:  mask = testGe(column, constant, first, bound); break;
+         case Opcode.INT_LT:  mask = testLt(column, constant, first, bound); break;
+         case Opcode.INT_LE:  mask = testLe(column, constant, first, bound); break;
+         case Opcode.INT_NE:  mask = testNe(column, constant, first, bound); break;
+         default:
+            throw new JiminyException("Unknown opcode: " + opcode);
+      }
+      if (bound < count)
+         mask |= ColumnKernels.testScalar(opcode, column, constant, first + bound, count - bound) << bound;
+      return mask;
+   }
+
+   @Override
+   public long test(byte opcode, float[] column, float constant, int first, int count) {
+      int bound = FLOATS.loopBound(count);
+      long mask;
+      switch (opcode) {
+         case Opcode.FLOAT_EQ:  mask = testEq(column, constant, first, bound); break;
+         case Opcode.FLOAT_GT:  mask = testGt(column, constant, first, bound); break;
+         case Opcode.FLOAT_GE:  mask = testGe(column, constant, first, bound); break;
+         case Opcode.FLOAT_LT:  mask = testLt(column, constant, first, bound); break;
+         case Opcode.FLOAT_LE:  mask = testLe(column, constant, first, bound); break;
+         case Opcode.FLOAT_NE:  mask = testNe(column, constant, first, bound); break;
+         default:
+            throw new JiminyException("Unknown opcode: " + opcode);
+      }
+      if (bound < count)
+         mask |= ColumnKernels.testScalar(opcode, column, constant, first + bound, count - bound) << bound;
+      return mask;
+   }
+
+   // Rows [first, first + count), where count is a multiple of the vector length
+
+   private static long testEq(int[] column, int constant, int first, int count) {
+      long mask = 0;
+      for (int i = 0; i < count; i += INTS.length())
+         mask |= toBits(IntVector.fromArray(INTS, column, first + i).compare(VectorOperators.EQ, constant)) << i;
+      return mask;
+   }
+
+   private static long testGt(int[] column, int constant, int first, int count) {
+      long mask = 0;
+      for (int i = 0; i < count; i += INTS.length())
+         mask |= toBits(IntVector.fromArray(INTS, column, first + i).compare(VectorOperators.GT, constant)) << i;
+      return mask;
+   }
+
+   private static long testGe(int[] column, int constant, int first, int count) {
+      long mask = 0;
+      for (int i = 0; i < count; i += INTS.length())
+         mask |= toBits(IntVector.fromArray(INTS, column, first + i).compare(VectorOperators.GE, constant)) << i;
+      return mask;
+   }
+
+   private static long testLt(int[] column, int constant, int first, int count) {
+      long mask = 0;
+      for (int i = 0; i < count; i += INTS.length())
+         mask |= toBits(IntVector.fromArray(INTS, column, first + i).compare(VectorOperators.LT, constant)) << i;
+      return mask;
+   }
+
+   private static long testLe(int[] column, int constant, int first, int count) {
+      long mask = 0;
+      for (int i = 0; i < count; i += INTS.length())
+         mask |= toBits(IntVector.fromArray(INTS, column, first + i).compare(VectorOperators.LE, constant)) << i;
+      return mask;
+   }
+
+   private static long testNe(int[] column, int constant, int first, int count) {
+      long mask = 0;
+      for (int i = 0; i < count; i += INTS.length())
+         mask |= toBits(IntVector.fromArray(INTS, column, first + i).compare(VectorOperators.NE, constant)) << i;
+      return mask;
+   }
+
+   private static long testEq(float[] column, float constant, int first, int count) {
+      long mask = 0;
+      for (int i = 0; i < count; i += FLOATS.length())
+         mask |= toBits(FloatVector.fromArray(FLOATS, column, first + i).compare(VectorOperators.EQ, constant).cast(INTS)) << i;
+      return mask;
+   }
+
+   private static long testGt(float[] column, float constant, int first, int count) {
+      int constantKey = getOrderKey(Float.floatToIntBits(constant));
+      long mask = 0;
+      for (int i = 0; i < count; i += FLOATS.length())
+         mask |= toBits(getOrderKeys(FloatVector.fromArray(FLOATS, column, first + i)).compare(VectorOperators.GT, constantKey)) << i;
+      return mask;
+   }
+
+   private static long testGe(float[] column, float constant, int first, int count) {
+      int constantKey = getOrderKey(Float.floatToIntBits(constant));
+      long mask = 0;
+      for (int i = 0; i < count; i += FLOATS.length())
+         mask |= toBits(getOrderKeys(FloatVector.fromArray(FLOATS, column, first + i)).compare(VectorOperators.GE, constantKey)) << i;
+      return mask;
+   }
+
+   private static long testLt(float[] column, float constant, int first, int count) {
+      int constantKey = getOrderKey(Float.floatToIntBits(constant));
+      long mask = 0;
+      for (int i = 0; i < count; i += FLOATS.length())
+         mask |= toBits(getOrderKeys(FloatVector.fromArray(FLOATS, column, first + i)).compare(VectorOperators.LT, constantKey)) << i;
+      return mask;
+   }
+
+   private static long testLe(float[] column, float constant, int first, int count) {
+      int constantKey = getOrderKey(Float.floatToIntBits(constant));
+      long mask = 0;
+      for (int i = 0; i < count; i += FLOATS.length())
+         mask |= toBits(getOrderKeys(FloatVector.fromArray(FLOATS, column, first + i)).compare(VectorOperators.LE, constantKey)) << i;
+      return mask;
+   }
+
+   private static long testNe(float[] column, float constant, int first, int count) {
+      long mask = 0;
+      for (int i = 0; i < count; i += FLOATS.length())
+         mask |= toBits(FloatVector.fromArray(FLOATS, column, first + i).compare(VectorOperators.NE, constant).cast(INTS)) << i;
+      return mask;
+   }
+
+   /**
+    * Packs a mask into bits, lane i in bit i.
+    */
+   private static long toBits(VectorMask<Integer> mask) {
+      return IntVector.zero(INTS).blend(LANE_BITS, mask).reduceLanes(VectorOperators.OR) & 0xffffffffL;
+   }
+
+   private static IntVector getOrderKeys(FloatVector values) {
+      IntVector bits = values.reinterpretAsInts().blend(CANONICAL_NAN, values.test(VectorOperators.IS_NAN).cast(INTS));
+      return bits.lanewise(VectorOperators.XOR, bits.lanewise(VectorOperators.ASHR, 31).lanewise(VectorOperators.LSHR, 1));
+   }
+
+   /**
+    * Maps the bits of a float (with NaNs canonical) to an int that orders the way
+    * Float.compare() orders the floats: negative floats have their magnitude bits flipped.
+    */
+   private static int getOrderKey(int bits) {
+      return bits ^ ((bits >> 31) >>> 1);
+   }
+}